@@ -0,0 +1,58 @@
+package co.fusix.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import co.fusix.corpus.Source;
+import co.fusix.utils.Utils;
+
+/**
+ * Analysis of the concatenated sources of a fixture repository.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnalyzeBenchmark {
+
+	@Param({"CODE", "VCS"})
+	public Source source;
+
+	@Param({"200"})
+	public int files;
+
+	private Analyzer analyzer;
+	private String text;
+
+	@Setup
+	public void setUp() throws IOException {
+		analyzer = Utils.getAnalyzer(source);
+		StringBuilder builder = new StringBuilder();
+		for (byte[] bytes : FixtureRepository.sources(FixtureRepository.get(files, 100, 1)).values()) {
+			builder.append(new String(bytes, StandardCharsets.UTF_8));
+		}
+		text = builder.toString();
+	}
+
+	@Benchmark
+	public List<String> preprocessString() {
+		return Utils.preprocessString(text, analyzer);
+	}
+}
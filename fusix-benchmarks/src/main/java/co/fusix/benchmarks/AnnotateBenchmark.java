@@ -0,0 +1,93 @@
+package co.fusix.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.lib.Constants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import co.fusix.component.Component;
+import co.fusix.component.GenericComponent;
+import co.fusix.corpus.Granularity;
+import co.fusix.exceptions.CorpusParserException;
+import co.fusix.exceptions.VersionControlException;
+import co.fusix.parsers.SimpleJavaParser;
+import co.fusix.versioncontrol.GitVersionControl;
+import co.fusix.versioncontrol.Recentness;
+
+/**
+ * Annotating the methods of a fixture repository with commit messages. Each
+ * invocation uses a fresh version control object and fresh components, so no
+ * state carries over between invocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class AnnotateBenchmark {
+
+	@Param({"RECENT", "RECENT_CR", "ALL"})
+	public Recentness recentness;
+
+	@Param({"50"})
+	public int files;
+
+	@Param({"200"})
+	public int commits;
+
+	private Path repo;
+	private Set<Component> parsed;
+	private GitVersionControl vc;
+	private Set<Component> components;
+
+	@Setup
+	public void setUp() throws IOException, CorpusParserException {
+		repo = FixtureRepository.get(files, commits, 1);
+		SimpleJavaParser parser = new SimpleJavaParser(repo);
+		parsed = new HashSet<>();
+		for (Map.Entry<String, byte[]> source : FixtureRepository.sources(repo).entrySet()) {
+			parsed.addAll(parser.parse(new ByteArrayInputStream(source.getValue()), source.getKey(),
+					Granularity.METHOD, false));
+		}
+	}
+
+	@Setup(Level.Invocation)
+	public void setUpInvocation() {
+		vc = new GitVersionControl(repo, Constants.HEAD, false);
+		components = new HashSet<>();
+		for (Component component : parsed) {
+			components.add(new GenericComponent(component.getPath(), "",
+					component.getStartLine(), component.getEndLine()));
+		}
+	}
+
+	@TearDown(Level.Invocation)
+	public void tearDownInvocation() throws IOException {
+		vc.close();
+	}
+
+	@Benchmark
+	public Set<Component> annotateAll() throws VersionControlException {
+		vc.annotateAll(components, recentness, Granularity.METHOD);
+		return components;
+	}
+}
@@ -0,0 +1,185 @@
+package co.fusix.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import co.fusix.component.Component;
+import co.fusix.corpus.Configurations;
+import co.fusix.corpus.Corpus;
+import co.fusix.corpus.Granularity;
+import co.fusix.corpus.Source;
+import co.fusix.versioncontrol.Recentness;
+
+/**
+ * Builds a corpus for every source, granularity and recentness of a
+ * repository and reports build time, index size, query latency percentiles
+ * and retrieval quality against an answer set.
+ * <p>
+ * Arguments are {@code key=value} pairs. By default a fixture repository is
+ * generated from {@code files}, {@code methods}, {@code commits},
+ * {@code merges}, {@code renames} and {@code seed}. With {@code src},
+ * {@code queries} and {@code answers} (and optionally {@code revision}) an
+ * existing repository is evaluated against answer files in the format of
+ * {@code queries_short_ml.txt} and {@code answers_ml.txt}, in which case the
+ * answers are method paths and only METHOD corpora are built.
+ */
+public final class Evaluation {
+
+	private Evaluation() {}
+
+	public static void main(String... args) throws Exception {
+		Map<String, String> options = new HashMap<>();
+		for (String arg : args) {
+			int index = arg.indexOf('=');
+			if (index < 1) throw new IllegalArgumentException("Expected key=value, got " + arg);
+			options.put(arg.substring(0, index), arg.substring(index + 1));
+		}
+
+		Path srcDir;
+		String revision = options.getOrDefault("revision", "HEAD");
+		List<String> queries;
+		Map<Granularity, List<Set<String>>> answers = new EnumMap<>(Granularity.class);
+		if (options.containsKey("src")) {
+			srcDir = Paths.get(options.get("src"));
+			queries = Files.readAllLines(Paths.get(options.get("queries")), StandardCharsets.UTF_8);
+			answers.put(Granularity.METHOD, readAnswers(Paths.get(options.get("answers"))));
+		} else {
+			FixtureRepository fixture = FixtureRepository.builder()
+					.files(Integer.parseInt(options.getOrDefault("files", "50")))
+					.methodsPerFile(Integer.parseInt(options.getOrDefault("methods", "4")))
+					.commits(Integer.parseInt(options.getOrDefault("commits", "100")))
+					.merges(Integer.parseInt(options.getOrDefault("merges", "1")))
+					.renameRate(Double.parseDouble(options.getOrDefault("renames", "0.02")))
+					.seed(Long.parseLong(options.getOrDefault("seed", "1")))
+					.build();
+			srcDir = fixture.dir();
+			queries = fixture.queries();
+			for (Granularity granularity : Granularity.values()) {
+				answers.put(granularity, fixture.answers(granularity));
+			}
+		}
+
+		System.out.println(String.format("%-6s %-7s %-9s %9s %9s %9s %9s %9s %7s %7s",
+				"Source", "Gran.", "Recent.", "Build s", "Index KB", "p50 ms", "p90 ms", "p99 ms", "MAP", "MRR"));
+		Path indexRoot = Files.createTempDirectory("fusix-evaluation");
+		try {
+			for (Source source : Source.values()) {
+				for (Granularity granularity : answers.keySet()) {
+					for (Recentness recentness : Recentness.values()) {
+						Path indexDir = indexRoot.resolve(source + "_" + granularity + "_" + recentness);
+						Result result = evaluate(Configurations.builder()
+								.srcDir(srcDir)
+								.indexDir(indexDir)
+								.revision(revision)
+								.source(source)
+								.granularity(granularity)
+								.recentness(recentness)
+								.build(), indexDir, queries, answers.get(granularity));
+						System.out.println(String.format("%-6s %-7s %-9s %9.2f %9d %9.3f %9.3f %9.3f %7.4f %7.4f",
+								source, granularity, recentness, result.buildSeconds, result.indexBytes / 1024,
+								result.latencies[0], result.latencies[1], result.latencies[2], result.map, result.mrr));
+					}
+				}
+			}
+		} finally {
+			FixtureRepository.delete(indexRoot);
+		}
+	}
+
+	static final class Result {
+		double buildSeconds;
+		long indexBytes;
+		// p50, p90 and p99 search latency in milliseconds
+		double[] latencies;
+		double map;
+		double mrr;
+	}
+
+	static Result evaluate(Corpus<List<String>> corpus, Path indexDir, List<String> queries,
+			List<Set<String>> answers) throws Exception {
+		Result result = new Result();
+		try {
+			long start = System.nanoTime();
+			corpus.create().call();
+			result.buildSeconds = (System.nanoTime() - start) / 1e9;
+			try (Stream<Path> files = Files.walk(indexDir)) {
+				result.indexBytes = files.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum();
+			}
+
+			for (String query : queries) corpus.search(query).call();
+
+			List<Double> latencies = new ArrayList<>();
+			double totalPrecision = 0;
+			double totalReciprocalRank = 0;
+			for (int i = 0; i < queries.size(); i++) {
+				start = System.nanoTime();
+				Set<Component> components = corpus.search(queries.get(i)).call();
+				latencies.add((System.nanoTime() - start) / 1e6);
+
+				List<Integer> positions = new ArrayList<>();
+				for (Component component : components) {
+					if (answers.get(i).contains(component.getPath())) positions.add(component.getSearchPosition());
+				}
+				totalPrecision += averagePrecision(positions, answers.get(i).size());
+				totalReciprocalRank += reciprocalRank(positions);
+			}
+			Collections.sort(latencies);
+			result.latencies = new double[] {percentile(latencies, 50), percentile(latencies, 90), percentile(latencies, 99)};
+			result.map = queries.isEmpty() ? 0 : totalPrecision / queries.size();
+			result.mrr = queries.isEmpty() ? 0 : totalReciprocalRank / queries.size();
+			return result;
+		} finally {
+			corpus.close();
+		}
+	}
+
+	/**
+	 * @param positions 1-based ranks of the relevant components found
+	 * @param relevant number of relevant components, found or not
+	 */
+	public static double averagePrecision(List<Integer> positions, int relevant) {
+		if (relevant == 0) return 0;
+		List<Integer> sorted = new ArrayList<>(positions);
+		Collections.sort(sorted);
+		double sum = 0;
+		for (int i = 0; i < sorted.size(); i++) {
+			sum += (i + 1) / (double) sorted.get(i);
+		}
+		return sum / relevant;
+	}
+
+	/**
+	 * @param positions 1-based ranks of the relevant components found
+	 */
+	public static double reciprocalRank(List<Integer> positions) {
+		return positions.isEmpty() ? 0 : 1.0 / Collections.min(positions);
+	}
+
+	static double percentile(List<Double> sorted, int percentile) {
+		if (sorted.isEmpty()) return 0;
+		int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+		return sorted.get(Math.max(0, index));
+	}
+
+	private static List<Set<String>> readAnswers(Path path) throws IOException {
+		return Files.readAllLines(path, StandardCharsets.UTF_8).stream()
+				.map(line -> line.trim().isEmpty()
+						? Collections.<String>emptySet()
+						: new LinkedHashSet<>(Arrays.asList(line.trim().split("\\s+"))))
+				.collect(Collectors.toList());
+	}
+}
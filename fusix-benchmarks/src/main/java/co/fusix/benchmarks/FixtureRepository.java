@@ -0,0 +1,426 @@
+package co.fusix.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.MergeCommand.FastForwardMode;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.PersonIdent;
+
+import co.fusix.corpus.Granularity;
+import co.fusix.exceptions.VersionControlException;
+import co.fusix.versioncontrol.BlobWalk;
+import co.fusix.versioncontrol.GitVersionControl;
+
+/**
+ * A reproducible git repository of Java files with a commit history shaped
+ * like a real project: functional changes to features, maintenance commits,
+ * merged branches and renamed files, together with the queries and answer
+ * sets of its features.
+ * <p>
+ * Every method implements one feature. Identifiers of a feature's methods
+ * use the feature's code words, while only the messages of commits changing
+ * it use its symptom words, so queries made of both reward annotation with
+ * commit messages. Answers are the feature's method paths, in the format of
+ * {@code answers_ml.txt}.
+ */
+public final class FixtureRepository {
+
+	public static final List<String> WORDS = Collections.unmodifiableList(Arrays.asList(
+			"parser", "token", "stream", "buffer", "render", "layout", "cache", "index", "query", "search",
+			"commit", "branch", "file", "method", "scope", "value", "context", "script", "object", "function",
+			"array", "string", "number", "error", "handle", "event", "listener", "socket", "session", "window",
+			"thread", "lock", "queue", "image", "color", "font", "report", "table", "column", "filter"));
+
+	private static final List<String> SYMPTOMS = Collections.unmodifiableList(Arrays.asList(
+			"crash", "slow", "wrong", "missing", "leak", "freeze", "overflow", "timeout", "duplicate", "stale",
+			"corrupt", "ignored", "broken", "unicode", "negative", "empty", "nested", "truncated", "flicker",
+			"deadlock"));
+
+	private static final String MARKER = "fusix-fixture";
+	private static final String QUERIES = "queries.txt";
+	private static final String ANSWERS = "answers.txt";
+	private static final String[] FUNCTIONAL = {
+			"Fix %3$s %1$s %2$s when %4$s",
+			"%1$s %2$s is %3$s for %4$s input",
+			"Avoid %3$s %1$s in %2$s",
+			"Handle %4$s %2$s without %3$s %1$s"};
+	private static final String[] MAINTENANCE = {
+			"Clean up %s %s", "Format %s %s code", "Update copyright in %s %s"};
+	private static final long HOUR = 3600 * 1000L;
+
+	private final Path dir;
+	private final List<String> queries;
+	private final List<Set<String>> answers;
+
+	private FixtureRepository(Path dir, List<String> queries, List<Set<String>> answers) {
+		this.dir = dir;
+		this.queries = queries;
+		this.answers = answers;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Returns the directory of a repository of {@code files} files with four
+	 * methods each, one merged branch and occasional renames.
+	 */
+	public static Path get(int files, int commits, long seed) throws IOException {
+		return builder().files(files).commits(commits).seed(seed).build().dir();
+	}
+
+	public Path dir() {return dir;}
+
+	public List<String> queries() {return queries;}
+
+	/**
+	 * @return for every query, the paths of the components implementing it
+	 */
+	public List<Set<String>> answers(Granularity granularity) {
+		if (granularity == Granularity.METHOD) return answers;
+		return answers.stream()
+				.map(paths -> paths.stream()
+						.map(path -> path.substring(0, path.indexOf("::")))
+						.collect(Collectors.toCollection(LinkedHashSet::new)))
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * @return contents of the Java files at the head of the repository, keyed
+	 * by path
+	 */
+	public static Map<String, byte[]> sources(Path repo) throws IOException {
+		Map<String, byte[]> sources = new TreeMap<>();
+		try (GitVersionControl vc = new GitVersionControl(repo, Constants.HEAD, false);
+				BlobWalk blobWalk = vc.workingTree()) {
+			while (blobWalk.next()) sources.put(blobWalk.getPathString(), blobWalk.getBlobBytes());
+		} catch (VersionControlException e) {
+			throw new IOException(e);
+		}
+		return sources;
+	}
+
+	static void delete(Path path) throws IOException {
+		if (!Files.exists(path)) return;
+		List<Path> paths = new ArrayList<>();
+		Files.walk(path).forEach(paths::add);
+		Collections.reverse(paths);
+		for (Path p : paths) Files.delete(p);
+	}
+
+	/**
+	 * Repositories are generated in the system temporary directory on first
+	 * use and reused by later builds with the same parameters.
+	 */
+	public static final class Builder {
+
+		private int files = 50;
+		private int methodsPerFile = 4;
+		private int commits = 100;
+		private int merges = 1;
+		private double renameRate = 0.02;
+		private long seed = 1;
+
+		private Builder() {}
+
+		public Builder files(int files) {this.files = files; return this;}
+
+		public Builder methodsPerFile(int methodsPerFile) {this.methodsPerFile = methodsPerFile; return this;}
+
+		public Builder commits(int commits) {this.commits = commits; return this;}
+
+		/**
+		 * @param merges number of branches developed next to the mainline and
+		 * merged back into it
+		 */
+		public Builder merges(int merges) {this.merges = merges; return this;}
+
+		/**
+		 * @param renameRate probability of a mainline commit renaming a file
+		 */
+		public Builder renameRate(double renameRate) {this.renameRate = renameRate; return this;}
+
+		public Builder seed(long seed) {this.seed = seed; return this;}
+
+		public FixtureRepository build() throws IOException {
+			if (files < 2 || methodsPerFile < 1 || commits < 1 || merges < 0 || renameRate < 0 || renameRate > 1) {
+				throw new IllegalStateException("Invalid fixture repository parameters.");
+			}
+			Path dir = Paths.get(System.getProperty("java.io.tmpdir"), MARKER + "-" + files + "-" + methodsPerFile
+					+ "-" + commits + "-" + merges + "-" + renameRate + "-" + seed);
+			Path groundTruth = dir.resolve(Constants.DOT_GIT).resolve(MARKER);
+			if (!Files.exists(groundTruth)) {
+				Path temp = Files.createTempDirectory(MARKER);
+				Generator generator = new Generator(temp, this);
+				try {
+					generator.generate();
+				} catch (GitAPIException e) {
+					throw new IOException(e);
+				}
+				generator.writeGroundTruth(temp.resolve(Constants.DOT_GIT).resolve(MARKER));
+				delete(dir);
+				Files.move(temp, dir, StandardCopyOption.ATOMIC_MOVE);
+			}
+			List<String> queries = Files.readAllLines(groundTruth.resolve(QUERIES), StandardCharsets.UTF_8);
+			List<Set<String>> answers = Files.readAllLines(groundTruth.resolve(ANSWERS), StandardCharsets.UTF_8)
+					.stream()
+					.map(line -> new LinkedHashSet<>(Arrays.asList(line.trim().split(" "))))
+					.collect(Collectors.toList());
+			return new FixtureRepository(dir, queries, answers);
+		}
+	}
+
+	private static final class Feature {
+		final String[] code;
+		final String[] symptoms;
+
+		Feature(String[] code, String[] symptoms) {
+			this.code = code;
+			this.symptoms = symptoms;
+		}
+
+		String query() {
+			return code[0] + " " + code[1] + " " + symptoms[0] + " " + symptoms[1];
+		}
+	}
+
+	private static final class Method {
+		final int feature;
+		final String name;
+		final String body;
+
+		Method(int feature, String name, String body) {
+			this.feature = feature;
+			this.name = name;
+			this.body = body;
+		}
+	}
+
+	private static final class Generator {
+
+		private final Path dir;
+		private final Builder params;
+		private final Random random;
+		private final List<Feature> features = new ArrayList<>();
+		private Map<String, List<Method>> files = new TreeMap<>();
+		private long time = 1400000000000L;
+		private int methodCount;
+		private int renameCount;
+
+		Generator(Path dir, Builder params) {
+			this.dir = dir;
+			this.params = params;
+			this.random = new Random(params.seed);
+		}
+
+		void generate() throws IOException, GitAPIException {
+			int featureCount = Math.max(4, params.files * params.methodsPerFile / 6);
+			for (int i = 0; i < featureCount; i++) {
+				features.add(new Feature(pick(WORDS, 2), pick(SYMPTOMS, 2)));
+			}
+
+			try (Git git = Git.init().setDirectory(dir.toFile()).call()) {
+				for (int i = 0; i < params.files; i++) {
+					List<Method> methods = new ArrayList<>();
+					for (int j = 0; j < params.methodsPerFile; j++) methods.add(method(random.nextInt(featureCount)));
+					files.put("src/pkg" + (i % 5) + "/Type" + i + ".java", methods);
+				}
+				commit(git, "Initial import of " + word() + " and " + word() + " sources");
+
+				// branches start at evenly spaced commits and each takes 2 * length + 1 commits
+				int length = Math.max(1, params.commits / (10 * Math.max(1, params.merges)));
+				int spacing = params.commits / (params.merges + 1);
+				int branches = 0;
+				for (int c = 1; c < params.commits; c++) {
+					if (branches < params.merges && c >= (branches + 1) * spacing
+							&& c + 2 * length < params.commits) {
+						c += branch(git, "branch" + branches++, length) - 1;
+					} else if (random.nextDouble() < params.renameRate) {
+						rename(git);
+					} else {
+						change(git, new ArrayList<>(files.keySet()));
+					}
+				}
+			}
+		}
+
+		/**
+		 * Develops a branch on one half of the files and the mainline on the
+		 * other, then merges the branch.
+		 *
+		 * @return number of commits made
+		 */
+		private int branch(Git git, String name, int length) throws IOException, GitAPIException {
+			List<String> paths = new ArrayList<>(files.keySet());
+			Collections.shuffle(paths, random);
+			List<String> branchFiles = paths.subList(0, paths.size() / 2);
+			List<String> mainlineFiles = paths.subList(paths.size() / 2, paths.size());
+
+			Map<String, List<Method>> mainline = copy(files);
+			git.branchCreate().setName(name).call();
+			git.checkout().setName(name).call();
+			for (int i = 0; i < length; i++) change(git, branchFiles);
+			Map<String, List<Method>> branch = copy(files);
+			git.checkout().setName(Constants.MASTER).call();
+			files = mainline;
+			for (int i = 0; i < length; i++) change(git, mainlineFiles);
+			for (String path : branchFiles) files.put(path, branch.get(path));
+			git.merge().include(git.getRepository().resolve(name))
+					.setFastForward(FastForwardMode.NO_FF)
+					.setCommit(false)
+					.call();
+			commit(git, "Merge branch " + name);
+			return 2 * length + 1;
+		}
+
+		/**
+		 * Changes methods of one feature within the candidate files, or of
+		 * any feature in a maintenance commit.
+		 */
+		private void change(Git git, List<String> candidates) throws IOException, GitAPIException {
+			boolean maintenance = random.nextInt(6) == 0;
+			List<Method> first = files.get(candidates.get(random.nextInt(candidates.size())));
+			int feature = first.get(random.nextInt(first.size())).feature;
+			int touched = 1 + random.nextInt(3);
+			for (int i = 0; i < touched; i++) {
+				List<Method> methods = files.get(candidates.get(random.nextInt(candidates.size())));
+				if (!maintenance && random.nextInt(4) == 0) {
+					methods.add(method(feature));
+					continue;
+				}
+				List<Integer> matching = new ArrayList<>();
+				for (int j = 0; j < methods.size(); j++) {
+					if (maintenance || methods.get(j).feature == feature) matching.add(j);
+				}
+				if (matching.isEmpty()) continue;
+				int index = matching.get(random.nextInt(matching.size()));
+				Method method = methods.get(index);
+				methods.set(index, new Method(method.feature, method.name, body(method.feature)));
+			}
+			if (maintenance) {
+				commit(git, String.format(MAINTENANCE[random.nextInt(MAINTENANCE.length)], word(), word()));
+			} else {
+				Feature f = features.get(feature);
+				commit(git, String.format(FUNCTIONAL[random.nextInt(FUNCTIONAL.length)],
+						f.code[0], f.code[1], f.symptoms[0], f.symptoms[1]));
+			}
+		}
+
+		private void rename(Git git) throws IOException, GitAPIException {
+			List<String> paths = new ArrayList<>(files.keySet());
+			String from = paths.get(random.nextInt(paths.size()));
+			String to = from.substring(0, from.lastIndexOf('/') + 1) + "Renamed" + renameCount++ + ".java";
+			files.put(to, files.remove(from));
+			git.rm().addFilepattern(from).call();
+			commit(git, "Rename " + word() + " " + word() + " type");
+		}
+
+		private void commit(Git git, String message) throws IOException, GitAPIException {
+			for (Map.Entry<String, List<Method>> file : files.entrySet()) {
+				Path path = dir.resolve(file.getKey());
+				Files.createDirectories(path.getParent());
+				Files.write(path, render(file.getKey(), file.getValue()).getBytes(StandardCharsets.UTF_8));
+			}
+			time += HOUR + random.nextInt((int) (24 * HOUR));
+			PersonIdent ident = new PersonIdent("Fixture", "fixture@fusix.co", new Date(time),
+					TimeZone.getTimeZone("UTC"));
+			git.add().addFilepattern(".").call();
+			git.commit().setMessage(message).setAuthor(ident).setCommitter(ident).call();
+		}
+
+		void writeGroundTruth(Path groundTruth) throws IOException {
+			Map<Integer, Set<String>> implementations = new TreeMap<>();
+			files.forEach((path, methods) -> {
+				for (Method method : methods) {
+					implementations.computeIfAbsent(method.feature, f -> new LinkedHashSet<>())
+							.add(path + "::" + type(path) + "_int_" + method.name + "(int,String)");
+				}
+			});
+			List<String> queries = new ArrayList<>();
+			List<String> answers = new ArrayList<>();
+			implementations.forEach((feature, paths) -> {
+				queries.add(features.get(feature).query());
+				answers.add(String.join(" ", paths));
+			});
+			Files.createDirectories(groundTruth);
+			Files.write(groundTruth.resolve(QUERIES), queries, StandardCharsets.UTF_8);
+			Files.write(groundTruth.resolve(ANSWERS), answers, StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * A method named after one or both code words of its feature.
+		 */
+		private Method method(int feature) {
+			String[] code = features.get(feature).code;
+			String name = random.nextBoolean()
+					? code[0] + capitalize(code[1])
+					: code[random.nextInt(2)] + capitalize(word());
+			return new Method(feature, name + methodCount++, body(feature));
+		}
+
+		private String body(int feature) {
+			String[] code = features.get(feature).code;
+			String local = code[random.nextInt(2)] + "Count";
+			return "\t\tint " + local + " = value + " + random.nextInt(1000) + ";\n"
+					+ "\t\t// " + word() + " the " + code[random.nextInt(2)] + " " + word() + "\n"
+					+ "\t\tif (name.isEmpty()) " + local + " += " + word() + capitalize(word()) + "(name);\n"
+					+ "\t\treturn " + local + ";\n";
+		}
+
+		private String[] pick(List<String> words, int count) {
+			List<String> shuffled = new ArrayList<>(words);
+			Collections.shuffle(shuffled, random);
+			return shuffled.subList(0, count).toArray(new String[count]);
+		}
+
+		private String word() {
+			return WORDS.get(random.nextInt(WORDS.size()));
+		}
+	}
+
+	private static String render(String path, List<Method> methods) {
+		StringBuilder source = new StringBuilder();
+		source.append("package ").append(path.substring(path.indexOf('/') + 1, path.lastIndexOf('/'))).append(";\n\n");
+		source.append("public class ").append(type(path)).append(" {\n\n");
+		for (Method method : methods) {
+			source.append("\tpublic int ").append(method.name).append("(int value, String name) {\n")
+					.append(method.body)
+					.append("\t}\n\n");
+		}
+		return source.append("}\n").toString();
+	}
+
+	private static String type(String path) {
+		return path.substring(path.lastIndexOf('/') + 1, path.length() - ".java".length());
+	}
+
+	private static String capitalize(String word) {
+		return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+	}
+
+	private static Map<String, List<Method>> copy(Map<String, List<Method>> files) {
+		Map<String, List<Method>> copy = new TreeMap<>();
+		files.forEach((path, methods) -> copy.put(path, new ArrayList<>(methods)));
+		return copy;
+	}
+}
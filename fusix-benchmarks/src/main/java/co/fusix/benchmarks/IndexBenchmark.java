@@ -0,0 +1,79 @@
+package co.fusix.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import co.fusix.component.Component;
+import co.fusix.corpus.Granularity;
+import co.fusix.corpus.Source;
+import co.fusix.exceptions.CorpusParserException;
+import co.fusix.exceptions.IndexException;
+import co.fusix.index.Index;
+import co.fusix.index.LuceneIndexWrapper;
+import co.fusix.parsers.SimpleJavaParser;
+
+/**
+ * Writing the methods of a fixture repository, with content, to a new index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class IndexBenchmark {
+
+	@Param({"200"})
+	public int files;
+
+	private Set<Component> components;
+	private Path indexDir;
+
+	@Setup
+	public void setUp() throws IOException, CorpusParserException {
+		Path repo = FixtureRepository.get(files, 100, 1);
+		SimpleJavaParser parser = new SimpleJavaParser(repo);
+		components = new HashSet<>();
+		for (Map.Entry<String, byte[]> source : FixtureRepository.sources(repo).entrySet()) {
+			components.addAll(parser.parse(new ByteArrayInputStream(source.getValue()), source.getKey(),
+					Granularity.METHOD, true));
+		}
+	}
+
+	@Setup(Level.Invocation)
+	public void setUpInvocation() throws IOException {
+		indexDir = Files.createTempDirectory("fusix-index");
+	}
+
+	@TearDown(Level.Invocation)
+	public void tearDownInvocation() throws IOException {
+		FixtureRepository.delete(indexDir);
+	}
+
+	@Benchmark
+	public void writeAll() throws IndexException, IOException {
+		try (Index index = LuceneIndexWrapper.newWriteableInstance(indexDir, Source.CODE)) {
+			index.writeAll(components);
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package co.fusix.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import co.fusix.corpus.Granularity;
+import co.fusix.exceptions.CorpusParserException;
+import co.fusix.parsers.Parser;
+import co.fusix.parsers.SimpleJavaParser;
+
+/**
+ * Parsing every source file of a fixture repository, with content.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+	@Param({"FILE", "METHOD"})
+	public Granularity granularity;
+
+	@Param({"200"})
+	public int files;
+
+	private Parser parser;
+	private Map<String, byte[]> sources;
+
+	@Setup
+	public void setUp() throws IOException {
+		Path repo = FixtureRepository.get(files, 100, 1);
+		parser = new SimpleJavaParser(repo);
+		sources = FixtureRepository.sources(repo);
+	}
+
+	@Benchmark
+	public void parse(Blackhole blackhole) throws CorpusParserException {
+		for (Map.Entry<String, byte[]> source : sources.entrySet()) {
+			blackhole.consume(parser.parse(new ByteArrayInputStream(source.getValue()), source.getKey(),
+					granularity, true));
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package co.fusix.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import co.fusix.component.Component;
+import co.fusix.corpus.Granularity;
+import co.fusix.corpus.Source;
+import co.fusix.exceptions.CorpusParserException;
+import co.fusix.exceptions.IndexException;
+import co.fusix.index.Index;
+import co.fusix.index.LuceneIndexWrapper;
+import co.fusix.parsers.SimpleJavaParser;
+
+/**
+ * Searching a method index of a fixture repository with queries drawn from the
+ * fixture vocabulary, cycling through a fixed set of queries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+	private static final int QUERIES = 256;
+
+	@Param({"200"})
+	public int files;
+
+	private Path indexDir;
+	private Index index;
+	private final List<String> queries = new ArrayList<>();
+	private int next;
+
+	@Setup
+	public void setUp() throws IOException, CorpusParserException, IndexException {
+		Path repo = FixtureRepository.get(files, 100, 1);
+		SimpleJavaParser parser = new SimpleJavaParser(repo);
+		Set<Component> components = new HashSet<>();
+		for (Map.Entry<String, byte[]> source : FixtureRepository.sources(repo).entrySet()) {
+			components.addAll(parser.parse(new ByteArrayInputStream(source.getValue()), source.getKey(),
+					Granularity.METHOD, true));
+		}
+		indexDir = Files.createTempDirectory("fusix-index");
+		try (Index writer = LuceneIndexWrapper.newWriteableInstance(indexDir, Source.CODE)) {
+			writer.writeAll(components);
+		}
+		index = LuceneIndexWrapper.newReadableInstance(indexDir, Source.CODE);
+
+		Random random = new Random(1);
+		List<String> words = FixtureRepository.WORDS;
+		for (int i = 0; i < QUERIES; i++) {
+			queries.add(words.get(random.nextInt(words.size())) + " " + words.get(random.nextInt(words.size()))
+					+ " " + words.get(random.nextInt(words.size())));
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		index.close();
+		FixtureRepository.delete(indexDir);
+	}
+
+	private String nextQuery() {
+		return queries.get(next++ & (QUERIES - 1));
+	}
+
+	@Benchmark
+	public List<Component> searchTop10() throws IndexException {
+		return index.search(nextQuery(), 0, 10);
+	}
+
+	@Benchmark
+	public Set<Component> searchAll() throws IndexException {
+		return index.search(nextQuery());
+	}
+}
@@ -0,0 +1,73 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Test;
+
+import co.fusix.benchmarks.Evaluation;
+import co.fusix.benchmarks.FixtureRepository;
+import co.fusix.component.Component;
+import co.fusix.corpus.Granularity;
+import co.fusix.exceptions.CorpusParserException;
+import co.fusix.parsers.SimpleJavaParser;
+
+public class TestFixtureRepository {
+
+	private static final FixtureRepository.Builder FIXTURE = FixtureRepository.builder()
+			.files(20).methodsPerFile(3).commits(60).merges(2).renameRate(0.1).seed(7);
+
+	@Test
+	public void testAnswersAreParsedComponents() throws IOException, CorpusParserException {
+		FixtureRepository fixture = FIXTURE.build();
+		assertTrue(fixture.queries().size() > 0);
+
+		SimpleJavaParser parser = new SimpleJavaParser(fixture.dir());
+		for (Granularity granularity : Granularity.values()) {
+			Set<String> paths = new HashSet<>();
+			for (Map.Entry<String, byte[]> source : FixtureRepository.sources(fixture.dir()).entrySet()) {
+				for (Component component : parser.parse(new ByteArrayInputStream(source.getValue()),
+						source.getKey(), granularity, false)) {
+					paths.add(component.getPath());
+				}
+			}
+			List<Set<String>> answers = fixture.answers(granularity);
+			assertEquals(fixture.queries().size(), answers.size());
+			for (Set<String> answer : answers) {
+				assertTrue(answer.toString(), paths.containsAll(answer));
+			}
+		}
+	}
+
+	@Test
+	public void testHistoryShape() throws IOException, GitAPIException {
+		try (Git git = Git.open(FIXTURE.build().dir().toFile())) {
+			int commits = 0;
+			int merges = 0;
+			for (RevCommit commit : git.log().call()) {
+				commits++;
+				if (commit.getParentCount() > 1) merges++;
+			}
+			assertEquals(60, commits);
+			assertEquals(2, merges);
+		}
+	}
+
+	@Test
+	public void testMetrics() {
+		assertEquals(1.0, Evaluation.averagePrecision(Arrays.asList(2, 1), 2), 1e-9);
+		assertEquals((1 / 2.0 + 2 / 4.0) / 3, Evaluation.averagePrecision(Arrays.asList(4, 2), 3), 1e-9);
+		assertEquals(0, Evaluation.averagePrecision(Arrays.<Integer>asList(), 0), 1e-9);
+		assertEquals(0.5, Evaluation.reciprocalRank(Arrays.asList(4, 2)), 1e-9);
+		assertEquals(0, Evaluation.reciprocalRank(Arrays.<Integer>asList()), 1e-9);
+	}
+}
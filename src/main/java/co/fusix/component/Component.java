@@ -1,10 +1,13 @@
 package co.fusix.component;
 
+import java.util.Collection;
+import java.util.Set;
+
 public abstract class Component {
 
 	protected static final String EMPTY = "";
 	
-	public enum Fields{PATH, CONTENT}
+	public enum Fields{PATH, CONTENT, COMMIT, MESSAGE, HISTORY}
 
 	public abstract String getPath();
 	
@@ -14,7 +17,20 @@ public abstract class Component {
 	
 	public abstract void addContent(String content);
 	
+	/**
+	 * @return text of the commits that touched the component, kept apart from
+	 * its content
+	 */
+	public abstract String getHistory();
+	
+	public abstract void addHistory(String history);
+	
+	public abstract Set<String> getCommits();
+	
+	public abstract void addCommits(Collection<String> commitIds);
+	
 	public abstract int getSearchPosition();
+	public abstract float getScore();
 	public abstract int getStartLine();
 	public abstract int getEndLine();
 	
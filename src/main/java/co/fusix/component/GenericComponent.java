@@ -1,5 +1,9 @@
 package co.fusix.component;
 
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
 
 public final class GenericComponent extends Component {
 
@@ -8,7 +12,10 @@ public final class GenericComponent extends Component {
 	private final int startLine;
 	private final int endLine;
 	private String content;
+	private String history = EMPTY;
+	private final Set<String> commits = new LinkedHashSet<>();
 	private int searchPosition;
+	private float score;
 
 	
 	public int getSearchPosition() {
@@ -19,6 +26,15 @@ public final class GenericComponent extends Component {
 		this.searchPosition = searchPosition;
 	}
 
+	@Override
+	public float getScore() {
+		return score;
+	}
+
+	public void setScore(float score) {
+		this.score = score;
+	}
+
 	public GenericComponent(String path) {
 		this(path, EMPTY);
 	}
@@ -61,6 +77,22 @@ public final class GenericComponent extends Component {
 	public void addContent(String content){
 		this.content = this.content + content;
 	}
+	
+	@Override
+	public String getHistory() {return this.history;}
+	
+	@Override
+	public void addHistory(String history){
+		this.history = this.history + history;
+	}
+	
+	@Override
+	public Set<String> getCommits() {return this.commits;}
+	
+	@Override
+	public void addCommits(Collection<String> commitIds) {
+		this.commits.addAll(commitIds);
+	}
 
 	@Override
 	public String toString() {
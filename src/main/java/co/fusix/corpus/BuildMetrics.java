@@ -0,0 +1,71 @@
+package co.fusix.corpus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import co.fusix.metrics.BuildListener;
+
+/**
+ * Forwards the events of one build to the configured listener and sums them
+ * per stage, reporting the totals when the build ends.
+ */
+final class BuildMetrics implements BuildListener {
+
+	private final BuildListener listener;
+	private final Map<Stage, LongAdder[]> totals = new EnumMap<>(Stage.class);
+	private final List<String> messages = Collections.synchronizedList(new ArrayList<>());
+
+	BuildMetrics(BuildListener listener) {
+		this.listener = listener;
+		for (Stage stage : Stage.values()) {
+			totals.put(stage, new LongAdder[] {new LongAdder(), new LongAdder(), new LongAdder()});
+		}
+	}
+
+	@Override
+	public void file(Stage stage, String path, long nanos, long count) {
+		add(stage, nanos, count);
+		listener.file(stage, path, nanos, count);
+	}
+
+	@Override
+	public void shared(Stage stage, long nanos, long count) {
+		add(stage, nanos, count);
+		listener.shared(stage, nanos, count);
+	}
+
+	@Override
+	public void message(String message) {
+		messages.add(message);
+		listener.message(message);
+	}
+
+	private void add(Stage stage, long nanos, long count) {
+		LongAdder[] total = totals.get(stage);
+		total[0].add(nanos);
+		total[1].add(count);
+		total[2].increment();
+	}
+
+	/**
+	 * Reports the totals of every stage that ran to the listener and appends
+	 * them, with the messages received, to the build log.
+	 * @param succeeded whether the build completed, totals of a failed build
+	 * cover the work done until it failed
+	 */
+	void finish(List<String> log, boolean succeeded) {
+		log.addAll(messages);
+		for (Stage stage : Stage.values()) {
+			LongAdder[] total = totals.get(stage);
+			if (total[2].sum() == 0) continue;
+			listener.total(stage, total[0].sum(), total[1].sum());
+			log.add("Stage " + stage + " [events=" + total[2].sum() + ", count=" + total[1].sum() 
+					+ ", sec.=" + total[0].sum() / 1e9 + "]");
+		}
+		listener.finished(succeeded);
+	}
+}
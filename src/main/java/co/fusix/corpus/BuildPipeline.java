@@ -0,0 +1,197 @@
+package co.fusix.corpus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Bounded producer/consumer pipeline. Items are submitted by the calling thread
+ * and passed through a chain of stages, each served by its own worker count and
+ * fed through a bounded queue. A stage with a single worker preserves the
+ * submission order.
+ */
+final class BuildPipeline<T> {
+
+	@FunctionalInterface
+	interface Task<I, O> {
+		O apply(I item) throws Exception;
+	}
+
+	private static final Object END = new Object();
+
+	private final int capacity;
+	private final List<Stage<?, ?>> stages = new ArrayList<>();
+	private final AtomicReference<Throwable> failure = new AtomicReference<>();
+	private CountDownLatch done;
+	private ExecutorService executor;
+
+	BuildPipeline(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Appends a stage. A task returning {@code null} drops the item.
+	 */
+	<I, O> BuildPipeline<T> stage(String name, int workers, Task<I, O> task) {
+		if (executor != null) throw new IllegalStateException("Pipeline already started.");
+		stages.add(new Stage<>(name, workers, task));
+		return this;
+	}
+
+	void start() {
+		int threads = stages.stream().mapToInt(s -> s.workers).sum();
+		executor = Executors.newFixedThreadPool(threads);
+		done = new CountDownLatch(1);
+		for (int i = 0; i < stages.size(); i++) {
+			stages.get(i).start(i + 1 < stages.size() ? stages.get(i + 1) : null);
+		}
+	}
+
+	/**
+	 * Blocks while the first stage's queue is full.
+	 * @return false once any stage has failed, the caller should stop submitting
+	 */
+	@SuppressWarnings("unchecked")
+	boolean submit(T item) throws InterruptedException {
+		if (failure.get() != null) return false;
+		((Stage<T, ?>) stages.get(0)).put(item);
+		return true;
+	}
+
+	/**
+	 * Signals the end of input, waits for all stages to drain and rethrows the
+	 * first failure of any stage.
+	 */
+	void finish() throws Exception {
+		try {
+			stages.get(0).end();
+			done.await();
+		} finally {
+			executor.shutdownNow();
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		}
+		Throwable t = failure.get();
+		if (t instanceof Exception) throw (Exception) t;
+		if (t instanceof Error) throw (Error) t;
+	}
+
+	/**
+	 * Makes the stages skip the items still queued, letting the items being
+	 * processed complete. {@link #finish()} then rethrows the cause.
+	 */
+	void cancel(Exception cause) {
+		failure.compareAndSet(null, cause);
+	}
+
+	/**
+	 * Stops all stages without waiting for queued items.
+	 */
+	void abort() {
+		if (executor != null) executor.shutdownNow();
+	}
+
+	List<String> report() {
+		List<String> report = new ArrayList<>();
+		for (Stage<?, ?> stage : stages) {
+			report.add(stage.toString());
+		}
+		return report;
+	}
+
+	private final class Stage<I, O> {
+
+		private final String name;
+		private final int workers;
+		private final Task<I, O> task;
+		private final BlockingQueue<Object> queue;
+		private final AtomicInteger running;
+		private final AtomicLong items = new AtomicLong();
+		private final AtomicLong busyNanos = new AtomicLong();
+		private final AtomicLong puts = new AtomicLong();
+		private final AtomicLong depthTotal = new AtomicLong();
+		private final AtomicInteger depthMax = new AtomicInteger();
+		private Stage<O, ?> next;
+
+		private Stage(String name, int workers, Task<I, O> task) {
+			this.name = name;
+			this.workers = workers;
+			this.task = task;
+			this.queue = new ArrayBlockingQueue<>(capacity);
+			this.running = new AtomicInteger(workers);
+		}
+
+		@SuppressWarnings("unchecked")
+		private void start(Stage<?, ?> next) {
+			this.next = (Stage<O, ?>) next;
+			for (int i = 0; i < workers; i++) {
+				executor.execute(this::work);
+			}
+		}
+
+		private void put(I item) throws InterruptedException {
+			int depth = queue.size();
+			puts.incrementAndGet();
+			depthTotal.addAndGet(depth);
+			depthMax.accumulateAndGet(depth, Math::max);
+			queue.put(item);
+		}
+
+		private void end() throws InterruptedException {
+			for (int i = 0; i < workers; i++) {
+				queue.put(END);
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private void work() {
+			try {
+				Object item;
+				while ((item = queue.take()) != END) {
+					if (failure.get() != null) continue; // drain only
+					try {
+						long start = System.nanoTime();
+						O result = task.apply((I) item);
+						busyNanos.addAndGet(System.nanoTime() - start);
+						items.incrementAndGet();
+						if (result != null && next != null) next.put(result);
+					} catch (Exception | Error e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			} catch (InterruptedException e) {
+				failure.compareAndSet(null, e);
+				Thread.currentThread().interrupt();
+			} finally {
+				if (running.decrementAndGet() == 0) {
+					if (next == null) {
+						done.countDown();
+					} else {
+						try {
+							next.end();
+						} catch (InterruptedException e) {
+							failure.compareAndSet(null, e);
+							done.countDown();
+						}
+					}
+				}
+			}
+		}
+
+		@Override
+		public String toString() {
+			long n = puts.get();
+			return "Stage [name=" + name + ", workers=" + workers + ", items=" + items.get()
+					+ ", mean queue depth=" + (n == 0 ? 0 : depthTotal.get() / (double) n)
+					+ ", max queue depth=" + depthMax.get() + "/" + capacity
+					+ ", busy sec.=" + busyNanos.get() / 1e9 + "]";
+		}
+	}
+}
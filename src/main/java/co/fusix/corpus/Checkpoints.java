@@ -0,0 +1,78 @@
+package co.fusix.corpus;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import co.fusix.exceptions.IndexException;
+import co.fusix.index.Index;
+
+/**
+ * Tracks which submitted files have been written and commits checkpoints of a
+ * build at the last file before which every file is written, so that files
+ * completing out of order are never skipped on resume.
+ */
+final class Checkpoints {
+
+	static final String PATH = "path";
+
+	private final Index index;
+	private final Map<String, String> state;
+	private final long intervalNanos;
+	private final Map<Integer, String> pending = new HashMap<>();
+	private final TreeSet<Integer> written = new TreeSet<>();
+	private int submitted;
+	// every file up to this one is written
+	private int watermark = -1;
+	private String watermarkPath;
+	private String checkpointPath;
+	private long lastCheckpoint = System.nanoTime();
+
+	/**
+	 * @param state recorded with every checkpoint, along with the path
+	 * @param intervalSeconds time between checkpoints, 0 to only checkpoint
+	 * when asked
+	 */
+	Checkpoints(Index index, Map<String, String> state, int intervalSeconds) {
+		this.index = index;
+		this.state = state;
+		this.intervalNanos = intervalSeconds * 1_000_000_000L;
+	}
+
+	/**
+	 * @return the sequence number of the file
+	 */
+	synchronized int submitted(String path) {
+		pending.put(submitted, path);
+		return submitted++;
+	}
+
+	/**
+	 * Records that all components of a file are written, committing a
+	 * checkpoint if one is due.
+	 */
+	synchronized void written(int sequence) throws IndexException {
+		written.add(sequence);
+		while (!written.isEmpty() && written.first() == watermark + 1) {
+			watermark = written.pollFirst();
+			watermarkPath = pending.remove(watermark);
+		}
+		if (intervalNanos > 0 && System.nanoTime() - lastCheckpoint >= intervalNanos) checkpoint();
+	}
+
+	/**
+	 * Commits a checkpoint if files were written since the last one.
+	 */
+	synchronized void checkpoint() throws IndexException {
+		lastCheckpoint = System.nanoTime();
+		if (watermarkPath == null || watermarkPath.equals(checkpointPath)) return;
+		Map<String, String> checkpoint = new HashMap<>(state);
+		checkpoint.put(PATH, watermarkPath);
+		index.checkpoint(checkpoint);
+		checkpointPath = watermarkPath;
+	}
+
+	synchronized String getCheckpointPath() {
+		return checkpointPath;
+	}
+}
@@ -2,8 +2,15 @@ package co.fusix.corpus;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
+import co.fusix.index.MergePolicy;
+import co.fusix.index.WriterSettings;
+import co.fusix.metrics.BuildListener;
 import co.fusix.versioncontrol.Recentness;
 
 public class Configurations {
@@ -18,43 +25,148 @@ public class Configurations {
 		
 		private static final String CURRENT_DIR = "";
 		private static final String HEAD = "HEAD";
+		private static final int QUEUE_CAPACITY = 64;
+		private static final int CHECKPOINT_INTERVAL = 60;
 		
 		private Path srcDir = Paths.get(CURRENT_DIR);
 		private Path indexDir = Paths.get(CURRENT_DIR);
+		private Path cacheDir = null;
 		private Granularity granularity = Granularity.METHOD;
 		private String revision = HEAD; //?
 		//model
 		//language
+		private boolean methodScanner = false;
 		private Source source = Source.CODE;
 		private Recentness recentness = Recentness.RECENT;
 		//vcs type
 		private boolean filtered = false;
+		private boolean commitDocuments = false;
+		private boolean multiField = false;
+		//build pipeline
+		private int parseThreads = 1;
+		private int annotateThreads = 1;
+		private int writeThreads = 1;
+		private int queueCapacity = QUEUE_CAPACITY;
+		private int checkpointInterval = CHECKPOINT_INTERVAL;
+		//index writing
+		private double ramBufferSizeMB = WriterSettings.DEFAULT_RAM_BUFFER_SIZE_MB;
+		private MergePolicy mergePolicy = MergePolicy.TIERED;
+		private int writeShards = 1;
+		private int forceMergeSegments = 0;
+		//storage
+		private boolean inMemory = false;
+		private boolean snapshot = false;
+		//batch search
+		private int searchThreads = 1;
+		private int queryCacheSize = 0;
+		private long annotationCacheSize = 0;
+		private long parseCacheSize = 0;
+		private BuildListener listener = BuildListener.NONE;
 		
 		private Builder(){}
 		
 		public Builder srcDir(Path srcDir) { this.srcDir = srcDir; return this; }
 		public Builder indexDir(Path indexDir) {this.indexDir = indexDir; return this; };
+		/** Keeps commit graphs and enabled caches between builds; none are kept when it is not set. */
+		public Builder cacheDir(Path cacheDir) {this.cacheDir = cacheDir; return this; }
 		public Builder granularity(Granularity granularity) {this.granularity = granularity; return this;}
 		public Builder revision(String revision) {this.revision = revision; return this; }
+		/** Finds methods with MethodScanner, a lexer, instead of parsing files with javaparser. */
+		public Builder methodScanner() {this.methodScanner = true; return this;}
 		public Builder source(Source source) {this.source = source; return this;}
 		public Builder recentness(Recentness recentness) {this.recentness = recentness; return this;}
 		public Builder filtered() {this.filtered = true; return this;}
+		public Builder commitDocuments() {this.commitDocuments = true; return this;}
+		/** Indexes code and commit text in separate fields, searched as the source says unless a query chooses. */
+		public Builder multiField() {this.multiField = true; return this;}
+		public Builder parseThreads(int parseThreads) {this.parseThreads = parseThreads; return this;}
+		public Builder annotateThreads(int annotateThreads) {this.annotateThreads = annotateThreads; return this;}
+		public Builder writeThreads(int writeThreads) {this.writeThreads = writeThreads; return this;}
+		public Builder queueCapacity(int queueCapacity) {this.queueCapacity = queueCapacity; return this;}
+		/** Seconds between checkpoints of a build, 0 to checkpoint only when it fails or is interrupted. */
+		public Builder checkpointInterval(int seconds) {this.checkpointInterval = seconds; return this;}
+		/** Memory each index writer buffers documents in before flushing a segment. */
+		public Builder ramBufferSize(double megabytes) {this.ramBufferSizeMB = megabytes; return this;}
+		public Builder mergePolicy(MergePolicy mergePolicy) {this.mergePolicy = mergePolicy; return this;}
+		/** Writes to independent shards, combined into the index on every checkpoint and at the end of a build. */
+		public Builder writeShards(int shards) {this.writeShards = shards; return this;}
+		/** Merges the index down to this many segments at the end of create(); by default it is not merged. */
+		public Builder forceMerge(int maxSegments) {this.forceMergeSegments = maxSegments; return this;}
+		/** Builds and searches the index in heap memory instead of indexDir. */
+		public Builder inMemory() {this.inMemory = true; return this;}
+		/** Loads an in memory index from indexDir and writes it back after every build. */
+		public Builder snapshot() {this.snapshot = true; return this;}
+		public Builder searchThreads(int searchThreads) {this.searchThreads = searchThreads; return this;}
+		public Builder queryCache(int entries) {this.queryCacheSize = entries; return this;}
+		public Builder annotationCache(long maxBytes) {this.annotationCacheSize = maxBytes; return this;}
+		/** Keeps the components parsed from every blob in cacheDir, so unchanged blobs are not parsed again. */
+		public Builder parseCache(long maxBytes) {this.parseCacheSize = maxBytes; return this;}
+		public Builder listener(BuildListener listener) {this.listener = listener; return this;}
 		
 		Path getSrcDir() {return this.srcDir;};
 		Path getIndexDir() {return this.indexDir;};
+		Path getCacheDir() {return this.cacheDir;}
 		Granularity getGranularity(){return this.granularity;};
 		String getRevision(){return this.revision;};
+		boolean isMethodScanner(){return this.methodScanner;}
 		Source getSource(){return this.source;};
 		Recentness getRecentness(){return this.recentness;};
 		boolean isFiltered(){return this.filtered;};
+		boolean isCommitDocuments(){return this.commitDocuments;}
+		boolean isMultiField(){return this.multiField;}
+		int getParseThreads(){return this.parseThreads;}
+		int getAnnotateThreads(){return this.annotateThreads;}
+		int getWriteThreads(){return this.writeThreads;}
+		int getQueueCapacity(){return this.queueCapacity;}
+		int getCheckpointInterval(){return this.checkpointInterval;}
+		double getRamBufferSizeMB(){return this.ramBufferSizeMB;}
+		MergePolicy getMergePolicy(){return this.mergePolicy;}
+		int getWriteShards(){return this.writeShards;}
+		int getForceMergeSegments(){return this.forceMergeSegments;}
+		boolean isInMemory(){return this.inMemory;}
+		boolean isSnapshot(){return this.snapshot;}
+		int getSearchThreads(){return this.searchThreads;}
+		int getQueryCacheSize(){return this.queryCacheSize;}
+		long getAnnotationCacheSize(){return this.annotationCacheSize;}
+		long getParseCacheSize(){return this.parseCacheSize;}
+		BuildListener getListener(){return this.listener;}
 		
 		public Corpus<List<String>> build() {
-			if (this.srcDir == null || this.indexDir == null || this.revision == null) {
-				throw new NullPointerException("Source directory, index directory, or revision cannot be null.");
+			if (this.srcDir == null || this.indexDir == null || this.revision == null || this.listener == null) {
+				throw new NullPointerException("Source directory, index directory, revision, or listener cannot be null.");
 			}
 			
 			if (this.revision == "") { throw new IllegalStateException("Revision cannot have an empty value.");}
 			
+			if (this.parseThreads < 1 || this.annotateThreads < 1 || this.writeThreads < 1 || this.queueCapacity < 1
+					|| this.searchThreads < 1) {
+				throw new IllegalStateException("Thread counts and queue capacity must be positive.");
+			}
+			
+			if (this.checkpointInterval < 0) throw new IllegalStateException("Checkpoint interval cannot be negative.");
+			
+			if (this.mergePolicy == null) throw new NullPointerException("Merge policy cannot be null.");
+			
+			if (this.ramBufferSizeMB <= 0 || this.writeShards < 1 || this.forceMergeSegments < 0) {
+				throw new IllegalStateException("Buffer size and shards must be positive, merged segments cannot be negative.");
+			}
+			
+			if (this.multiField && this.commitDocuments) {
+				throw new IllegalStateException("Commit documents cannot be combined with a multi-field index.");
+			}
+			
+			if (this.snapshot && !this.inMemory) throw new IllegalStateException("Snapshots need an in memory index.");
+			
+			if (this.queryCacheSize < 0) throw new IllegalStateException("Query cache size cannot be negative.");
+			
+			if (this.annotationCacheSize < 0 || (this.annotationCacheSize > 0 && this.cacheDir == null)) {
+				throw new IllegalStateException("Annotation cache needs a cache directory and a positive size.");
+			}
+			
+			if (this.parseCacheSize < 0 || (this.parseCacheSize > 0 && this.cacheDir == null)) {
+				throw new IllegalStateException("Parse cache needs a cache directory and a positive size.");
+			}
+			
 			return new GenericCorpus(this);
 		}
 	}
@@ -70,4 +182,29 @@ public class Configurations {
 	public static Corpus<List<String>> bacir(){
 		return new Builder().source(Source.BOTH).build();
 	}
+
+	/**
+	 * @param corpora built by this class, by name, the name prefixes the paths 
+	 * of their components; closed with the federated corpus
+	 */
+	public static Corpus<List<String>> federated(Map<String, Corpus<List<String>>> corpora){
+		return new FederatedCorpus(corpora);
+	}
+
+	/**
+	 * @param corpora built by this class from the same source directory and 
+	 * revision, in their own indexes
+	 * @return creates all corpora in one pass over the tree, parsing every 
+	 * file and blaming it once for all of them
+	 */
+	public static Callable<List<String>> grid(Collection<Corpus<List<String>>> corpora){
+		List<GenericCorpus> grid = new ArrayList<>();
+		for (Corpus<List<String>> corpus : corpora) {
+			if (!(corpus instanceof GenericCorpus)) {
+				throw new IllegalArgumentException("Only corpora built by Configurations can be built together.");
+			}
+			grid.add((GenericCorpus) corpus);
+		}
+		return GenericCorpus.createAll(grid);
+	}
 }
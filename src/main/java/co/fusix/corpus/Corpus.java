@@ -1,11 +1,20 @@
 package co.fusix.corpus;
 
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.function.BiConsumer;
 
 import co.fusix.component.Component;
+import co.fusix.index.FieldBoosts;
 
-public interface Corpus <T> {
+/**
+ * A searchable index of a source repository. Searches share one searcher that
+ * is refreshed after every create, update and delete, and released on close.
+ */
+public interface Corpus <T> extends Closeable {
 	
 	Callable<T> create();
 	
@@ -14,4 +23,24 @@ public interface Corpus <T> {
 	Callable<T> delete();
 	
 	Callable<Set<Component>> search(String query);
+	
+	Callable<List<Component>> search(String query, int offset, int k);
+	
+	/**
+	 * Searches the code and commit text of a multi-field corpus with the given
+	 * boosts, whatever source the corpus was configured with.
+	 */
+	Callable<List<Component>> search(String query, int offset, int k, FieldBoosts boosts);
+	
+	/**
+	 * Runs a batch of queries and streams the top k components of each to the 
+	 * consumer, keyed by the query's position in the list.
+	 */
+	Callable<T> searchAll(List<String> queries, int k, BiConsumer<Integer, List<Component>> results);
+	
+	/**
+	 * Runs the queries of a log, one per line, to fill the query cache with 
+	 * their top k components.
+	 */
+	Callable<T> warm(Path queryLog, int k);
 }
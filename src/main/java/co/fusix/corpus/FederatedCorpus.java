@@ -0,0 +1,226 @@
+package co.fusix.corpus;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import co.fusix.component.Component;
+import co.fusix.component.GenericComponent;
+import co.fusix.index.FieldBoosts;
+import co.fusix.index.Index;
+import co.fusix.index.SearchStatistics;
+
+/**
+ * Searches several corpora as one. Corpora whose term summary rules a query
+ * out are skipped, the others are asked for the statistics of the query's
+ * terms and then searched with the merged statistics, both in parallel, so
+ * their scores are comparable and their top k can be merged. A query only
+ * one corpus may match is searched there directly, as its own statistics are
+ * the merged ones. Component paths are prefixed with the name of their
+ * corpus.
+ */
+final class FederatedCorpus implements Corpus<List<String>> {
+
+	static final String SEPARATOR = "/";
+	private static final int MAX_HITS = 5000;
+
+	private final Map<String, GenericCorpus> corpora = new LinkedHashMap<>();
+	private final ExecutorService executor;
+	private final LongAdder searched = new LongAdder();
+	private final LongAdder skipped = new LongAdder();
+
+	FederatedCorpus(Map<String, Corpus<List<String>>> corpora) {
+		if (corpora.isEmpty()) throw new IllegalArgumentException("At least one corpus is needed.");
+		corpora.forEach((name, corpus) -> {
+			if (!(corpus instanceof GenericCorpus)) {
+				throw new IllegalArgumentException("Only corpora built by Configurations can be federated.");
+			}
+			this.corpora.put(name, (GenericCorpus) corpus);
+		});
+		this.executor = Executors.newFixedThreadPool(corpora.size(), r -> {
+			Thread thread = new Thread(r, "federated");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@Override
+	public Callable<List<String>> create() {
+		return forEach(Corpus::create);
+	}
+
+	@Override
+	public Callable<List<String>> update() {
+		return forEach(Corpus::update);
+	}
+
+	@Override
+	public Callable<List<String>> delete() {
+		return forEach(Corpus::delete);
+	}
+
+	private Callable<List<String>> forEach(Function<Corpus<List<String>>, Callable<List<String>>> task) {
+		return () -> {
+			List<String> log = new ArrayList<>();
+			for (Map.Entry<String, GenericCorpus> corpus : corpora.entrySet()) {
+				log.add("Corpus: " + corpus.getKey());
+				log.addAll(task.apply(corpus.getValue()).call());
+			}
+			return log;
+		};
+	}
+
+	@Override
+	public Callable<Set<Component>> search(String query) {
+		return () -> new HashSet<>(search(query, 0, MAX_HITS).call());
+	}
+
+	@Override
+	public Callable<List<Component>> search(String query, int offset, int k) {
+		if (offset < 0 || k < 1) throw new IllegalArgumentException("Offset cannot be negative and k must be positive.");
+		return () -> federate(query, offset, k, null);
+	}
+
+	@Override
+	public Callable<List<Component>> search(String query, int offset, int k, FieldBoosts boosts) {
+		if (offset < 0 || k < 1) throw new IllegalArgumentException("Offset cannot be negative and k must be positive.");
+		if (boosts == null) throw new NullPointerException("Boosts cannot be null.");
+		return () -> federate(query, offset, k, boosts);
+	}
+
+	@Override
+	public Callable<List<String>> searchAll(List<String> queries, int k, BiConsumer<Integer, List<Component>> results) {
+		if (k < 1) throw new IllegalArgumentException("k must be positive.");
+		return () -> {
+			List<String> log = new ArrayList<>();
+			log.add(this.toString());
+
+			long start = System.nanoTime();
+			for (int i = 0; i < queries.size(); i++) {
+				results.accept(i, federate(queries.get(i), 0, k, null));
+			}
+			double seconds = (System.nanoTime() - start) / 1e9;
+
+			log.add("Queries: " + queries.size());
+			log.add("Total time sec.: " + seconds);
+			log.add("Queries/sec.: " + (seconds == 0 ? 0 : queries.size() / seconds));
+			return log;
+		};
+	}
+
+	@Override
+	public Callable<List<String>> warm(Path queryLog, int k) {
+		return () -> {
+			List<String> queries = new ArrayList<>();
+			for (String line : Files.readAllLines(queryLog)) {
+				if (!line.trim().isEmpty()) queries.add(line.trim());
+			}
+			return searchAll(queries, k, (i, components) -> {}).call();
+		};
+	}
+
+	/**
+	 * @param boosts fields to search, null for those of each corpus
+	 */
+	private List<Component> federate(String query, int offset, int k, FieldBoosts boosts) throws Exception {
+		int n = (int) Math.min((long) offset + k, Integer.MAX_VALUE);
+
+		// term summaries are in memory, checked here to know how many corpora to ask
+		List<String> matching = new ArrayList<>();
+		for (Map.Entry<String, GenericCorpus> corpus : corpora.entrySet()) {
+			if (corpus.getValue().searchIndex().mayMatch(query)) matching.add(corpus.getKey());
+		}
+		searched.add(matching.size());
+		skipped.add(corpora.size() - matching.size());
+		if (matching.isEmpty()) return Collections.emptyList();
+
+		Map<String, Future<List<Component>>> hits = new LinkedHashMap<>();
+		if (matching.size() == 1) {
+			Index index = corpora.get(matching.get(0)).searchIndex();
+			List<Component> shard = boosts == null ? index.search(query, 0, n) : index.search(query, 0, n, boosts);
+			hits.put(matching.get(0), CompletableFuture.completedFuture(shard));
+		} else {
+			Map<String, Future<SearchStatistics>> statistics = new LinkedHashMap<>();
+			for (String name : matching) {
+				Index index = corpora.get(name).searchIndex();
+				statistics.put(name, executor.submit(() -> index.statistics(query)));
+			}
+			List<SearchStatistics> shards = new ArrayList<>();
+			for (Future<SearchStatistics> shard : statistics.values()) {
+				shards.add(get(shard));
+			}
+
+			SearchStatistics global = SearchStatistics.merge(shards);
+			for (String name : matching) {
+				Index index = corpora.get(name).searchIndex();
+				hits.put(name, executor.submit(() -> boosts == null 
+						? index.search(query, 0, n, global) 
+						: index.search(query, 0, n, boosts, global)));
+			}
+		}
+
+		// ties keep the order of the corpora, then of the ranks within each
+		List<Component> merged = new ArrayList<>();
+		for (Map.Entry<String, Future<List<Component>>> corpus : hits.entrySet()) {
+			for (Component component : get(corpus.getValue())) {
+				GenericComponent c = new GenericComponent(corpus.getKey() + SEPARATOR + component.getPath());
+				c.setScore(component.getScore());
+				merged.add(c);
+			}
+		}
+		merged.sort((a, b) -> Float.compare(b.getScore(), a.getScore()));
+
+		List<Component> components = new ArrayList<>();
+		for (int i = offset; i < Math.min(n, merged.size()); i++) {
+			GenericComponent c = (GenericComponent) merged.get(i);
+			c.setSearchPosition(i + 1);
+			components.add(c);
+		}
+		return components;
+	}
+
+	private static <T> T get(Future<T> future) throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+			throw e;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		executor.shutdownNow();
+		IOException failure = null;
+		for (Corpus<List<String>> corpus : corpora.values()) {
+			try {
+				corpus.close();
+			} catch (IOException e) {
+				if (failure == null) failure = e;
+			}
+		}
+		if (failure != null) throw failure;
+	}
+
+	@Override
+	public String toString() {
+		return "FederatedCorpus [corpora=" + corpora.keySet() + ", searched=" + searched
+				+ ", skipped=" + skipped + "]";
+	}
+}
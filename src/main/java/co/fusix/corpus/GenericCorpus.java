@@ -2,6 +2,7 @@ package co.fusix.corpus;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -13,18 +14,38 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.eclipse.jgit.lib.ObjectId;
+
 import co.fusix.component.Component;
+import co.fusix.component.GenericComponent;
 import co.fusix.corpus.Configurations.Builder;
+import co.fusix.exceptions.IndexException;
+import co.fusix.index.FieldBoosts;
 import co.fusix.index.Index;
 import co.fusix.index.LuceneIndexWrapper;
+import co.fusix.index.MemoryStore;
+import co.fusix.index.WriterSettings;
+import co.fusix.metrics.BuildListener;
+import co.fusix.metrics.BuildListener.Stage;
+import co.fusix.parsers.MethodScanner;
+import co.fusix.parsers.ParseCache;
 import co.fusix.parsers.Parser;
 import co.fusix.parsers.SimpleJavaParser;
+import co.fusix.versioncontrol.Annotation;
 import co.fusix.versioncontrol.BlobWalk;
 import co.fusix.versioncontrol.GitVersionControl;
 import co.fusix.versioncontrol.Recentness;
@@ -32,99 +53,597 @@ import co.fusix.versioncontrol.VersionControl;
 
 class GenericCorpus implements Corpus<List<String>> {
 
+	// checkpoint state
+	private static final String REVISION = "revision";
+	private static final String BUILD = "build";
+	private static final String PARSE_CACHE_DIR = "parses";
+
 	private final Path srcDir;
 	private final Path indexDir;
+	private final Path cacheDir;
 	private final Granularity granularity;
 	private final String revision;
 	//model
 	//language
+	private final boolean methodScanner;
 	private final Source source;
 	private final Recentness recentness;
 	//vcs type
 	private final boolean filtered;
+	//build pipeline
+	private final int parseThreads;
+	private final int annotateThreads;
+	private final long annotationCacheSize;
+	private final long parseCacheSize;
+	private final int searchThreads;
+	private final int queryCacheSize;
+	private final boolean commitDocuments;
+	private final boolean multiField;
+	private Index searchIndex;
+	private boolean closed;
+	private final int writeThreads;
+	private final int queueCapacity;
+	private final BuildListener listener;
+	private final int checkpointInterval;
+	private final boolean inMemory;
+	private final boolean snapshot;
+	private MemoryStore memory;
+	private final WriterSettings writerSettings;
+	private final int forceMergeSegments;
 
 	
 	GenericCorpus(final Builder builder) {
 		this.srcDir = builder.getSrcDir();
 		this.indexDir = builder.getIndexDir();
+		this.cacheDir = builder.getCacheDir();
 		this.granularity = builder.getGranularity();
 		this.revision = builder.getRevision();
+		this.methodScanner = builder.isMethodScanner();
 		this.source = builder.getSource();
 		this.recentness = builder.getRecentness();
 		this.filtered = builder.isFiltered();
+		this.parseThreads = builder.getParseThreads();
+		this.annotateThreads = builder.getAnnotateThreads();
+		this.annotationCacheSize = builder.getAnnotationCacheSize();
+		this.parseCacheSize = builder.getParseCacheSize();
+		this.searchThreads = builder.getSearchThreads();
+		this.queryCacheSize = builder.getQueryCacheSize();
+		this.commitDocuments = builder.isCommitDocuments() && (source == Source.VCS || source == Source.BOTH);
+		this.multiField = builder.isMultiField();
+		this.writeThreads = builder.getWriteThreads();
+		this.queueCapacity = builder.getQueueCapacity();
+		this.listener = builder.getListener();
+		this.checkpointInterval = builder.getCheckpointInterval();
+		this.inMemory = builder.isInMemory();
+		this.snapshot = builder.isSnapshot();
+		this.writerSettings = new WriterSettings(builder.getRamBufferSizeMB(), builder.getMergePolicy(), 
+				builder.getWriteShards(), multiField);
+		this.forceMergeSegments = builder.getForceMergeSegments();
 	}
 
 	@Override
 	public Callable<List<String>> create() {
 		return () -> {
-			try (VersionControl<BlobWalk> vc = new GitVersionControl(srcDir, revision, filtered);
-					Index index = LuceneIndexWrapper.newWriteableInstance(indexDir, source) ) 
-			{
-				long start = System.currentTimeMillis();
-				List<String> log = new ArrayList<>();
-				log.add(this.toString());
-				log.add(index.toString());
+			List<String> log = new ArrayList<>();
+			BuildMetrics metrics = new BuildMetrics(listener);
+			boolean succeeded = false;
+			try {
+				try (VersionControl<BlobWalk> vc = newVersionControl(metrics);
+						Index index = newResumableIndex() ) 
+				{
+					long start = System.currentTimeMillis();
+					log.add(this.toString());
+					log.add(index.toString());
 				
-				Parser parser = new SimpleJavaParser(srcDir);
-				log.add(parser.toString());
-					
-				boolean includeContent = source == Source.CODE || source == Source.BOTH ? true : false;
-
-				int totalComponents = 0;
-				BlobWalk blobWalk = vc.workingTree();
-				while (blobWalk.next()) {
-					InputStream in = blobWalk.getBlob();
-					Set<Component> components = parser.parse(in, blobWalk.getPathString(), granularity, includeContent);
-					if (source == Source.VCS || source == Source.BOTH) {
-						vc.annotateAll(components, recentness, granularity);
+					Map<String, String> state = new HashMap<>();
+					state.put(REVISION, vc.getRevisionId());
+					state.put(BUILD, buildFingerprint());
+					Map<String, String> checkpoint = index.getCheckpoint();
+					String resumeAfter = null;
+					if (checkpoint != null && state.get(REVISION).equals(checkpoint.get(REVISION))
+							&& state.get(BUILD).equals(checkpoint.get(BUILD))) {
+						resumeAfter = checkpoint.get(Checkpoints.PATH);
+						log.add("Resuming after: " + resumeAfter);
+					} else {
+						index.deleteAll();
 					}
-					index.writeAll(components);
-					
-					totalComponents += components.size();
+				
+					Checkpoints checkpoints = new Checkpoints(index, state, checkpointInterval);
+					Target target = new Target(this, index);
+					build(vc, Collections.singletonList(target), vc.workingTree(), log, metrics, checkpoints, resumeAfter);
+					if (forceMergeSegments > 0) index.forceMerge(forceMergeSegments);
+					index.setRevision(vc.getRevisionId());
+					index.commit();
+				
+					log.addAll(vc.report());
+					log.add("Components size: " + target.components.get());
+					long end = System.currentTimeMillis();
+					log.add("Total time sec.: " + (end - start) / ((double) 1000));
 				}
-				log.add("Components size: " + totalComponents);
-				long end = System.currentTimeMillis();
-				log.add("Total time sec.: " + (end - start) / ((double) 1000));
-				return log;
+				snapshot(log);
+				succeeded = true;
+			} finally {
+				metrics.finish(log, succeeded);
 			}
+			refreshSearchIndex();
+			return log;
 		};	
 	}
 
 	@Override
 	public Callable<List<String>> update() {
-		throw new UnsupportedOperationException("Corpus update operation is not currently implemented.");
+		return () -> {
+			List<String> log = new ArrayList<>();
+			BuildMetrics metrics = new BuildMetrics(listener);
+			boolean succeeded = false;
+			try {
+				try (VersionControl<BlobWalk> vc = newVersionControl(metrics);
+						Index index = inMemory 
+								? LuceneIndexWrapper.newAppendableInstance(memory(), indexSource(), writerSettings)
+								: LuceneIndexWrapper.newAppendableInstance(indexDir, indexSource(), writerSettings) ) 
+				{
+					long start = System.currentTimeMillis();
+					log.add(this.toString());
+					log.add(index.toString());
+				
+					String lastRevision = index.getRevision();
+					log.add("Indexed revision: " + lastRevision + ", target revision: " + vc.getRevisionId());
+				
+					Target target = new Target(this, index);
+					if (lastRevision == null) {
+						// nothing recorded, rebuild in place
+						index.deleteAll();
+						build(vc, Collections.singletonList(target), vc.workingTree(), log, metrics, null, null);
+					} else if (!lastRevision.equals(vc.getRevisionId())) {
+						Set<String> changedFiles = vc.changedFiles(lastRevision, isAnnotated());
+						log.add("Changed files: " + changedFiles.size());
+					
+						index.deleteFiles(changedFiles);
+						build(vc, Collections.singletonList(target), vc.workingTree(changedFiles), log, metrics, null, null);
+					}
+					index.setRevision(vc.getRevisionId());
+				
+					log.addAll(vc.report());
+					log.add("Components size: " + target.components.get());
+					long end = System.currentTimeMillis();
+					log.add("Total time sec.: " + (end - start) / ((double) 1000));
+				}
+				snapshot(log);
+				succeeded = true;
+			} finally {
+				metrics.finish(log, succeeded);
+			}
+			refreshSearchIndex();
+			return log;
+		};
+	}
+	
+	private VersionControl<BlobWalk> newVersionControl(BuildListener metrics) {
+		return GitVersionControl.builder(srcDir, revision)
+				.filtered(filtered)
+				.cacheDir(cacheDir)
+				.threads(annotateThreads)
+				.annotationCacheSize(annotationCacheSize)
+				.linkCommits(commitDocuments)
+				.listener(metrics)
+				.build();
+	}
+	
+	/**
+	 * Identifies the settings that determine the documents of a build, a 
+	 * checkpoint is only resumed by a build with the same settings.
+	 */
+	private String buildFingerprint() {
+		return granularity + "," + source + "," + recentness + "," + filtered + "," + commitDocuments + "," + multiField
+				+ "," + methodScanner;
+	}
+	
+	/**
+	 * @return the source the content of the index is analyzed for, code when 
+	 * commit text has a field of its own
+	 */
+	private Source indexSource() {
+		return multiField ? Source.CODE : source;
+	}
+	
+	private boolean isAnnotated() {
+		return multiField || source == Source.VCS || source == Source.BOTH;
+	}
+	
+	private boolean includesContent() {
+		return multiField || source == Source.CODE || source == Source.BOTH;
+	}
+	
+	private Index newResumableIndex() {
+		return inMemory 
+				? LuceneIndexWrapper.newResumableInstance(memory(), indexSource(), writerSettings)
+				: LuceneIndexWrapper.newResumableInstance(indexDir, indexSource(), writerSettings);
+	}
+	
+	/**
+	 * Builds all corpora in one pass over the tree of the first: every blob is
+	 * read and parsed once per granularity and every file is blamed once, then
+	 * each corpus gets a copy of the components for its index. The build 
+	 * pipeline, caches and listener are those of the first corpus.
+	 */
+	static Callable<List<String>> createAll(List<GenericCorpus> corpora) {
+		if (corpora.isEmpty()) throw new IllegalArgumentException("At least one corpus is needed.");
+		GenericCorpus first = corpora.get(0);
+		Set<Object> indexes = new HashSet<>();
+		for (GenericCorpus corpus : corpora) {
+			if (!corpus.srcDir.equals(first.srcDir) || !corpus.revision.equals(first.revision)) {
+				throw new IllegalArgumentException("Corpora built together must share source directory and revision.");
+			}
+			if (corpus.methodScanner != first.methodScanner) {
+				throw new IllegalArgumentException("Corpora built together must use the same parser.");
+			}
+			if (!indexes.add(corpus.inMemory ? corpus : corpus.indexDir.toAbsolutePath().normalize())) {
+				throw new IllegalArgumentException("Corpora built together cannot share an index.");
+			}
+		}
+		return () -> {
+			List<String> log = new ArrayList<>();
+			BuildMetrics metrics = new BuildMetrics(first.listener);
+			List<Target> targets = new ArrayList<>();
+			boolean succeeded = false;
+			try {
+				try (VersionControl<BlobWalk> vc = first.newVersionControl(metrics)) {
+					try {
+						long start = System.currentTimeMillis();
+						for (GenericCorpus corpus : corpora) {
+							Index index = corpus.newResumableIndex();
+							targets.add(new Target(corpus, index));
+							log.add(corpus.toString());
+							log.add(index.toString());
+							index.deleteAll();
+						}
+					
+						first.build(vc, targets, vc.workingTree(), log, metrics, null, null);
+						for (Target target : targets) {
+							if (target.corpus.forceMergeSegments > 0) target.index.forceMerge(target.corpus.forceMergeSegments);
+							target.index.setRevision(vc.getRevisionId());
+							target.index.commit();
+							log.add("Components size: " + target.components.get());
+						}
+					
+						log.addAll(vc.report());
+						long end = System.currentTimeMillis();
+						log.add("Total time sec.: " + (end - start) / ((double) 1000));
+					} finally {
+						for (Target target : targets) {
+							target.index.close();
+						}
+					}
+				}
+				for (Target target : targets) {
+					target.corpus.snapshot(log);
+				}
+				succeeded = true;
+			} finally {
+				metrics.finish(log, succeeded);
+			}
+			for (Target target : targets) {
+				target.corpus.refreshSearchIndex();
+			}
+			return log;
+		};
+	}
+	
+	/**
+	 * @param checkpoints records the files written, null to not checkpoint
+	 * @param resumeAfter last file of the checkpoint to resume, files up to it
+	 * are skipped, null to build all files
+	 */
+	private void build(VersionControl<BlobWalk> vc, List<Target> targets, BlobWalk blobWalk, List<String> log, 
+			BuildMetrics metrics, Checkpoints checkpoints, String resumeAfter) throws Exception {
+		Parser parser = methodScanner ? new MethodScanner(srcDir) : new SimpleJavaParser(srcDir);
+		log.add(parser.toString());
+		ParseCache parseCache = parseCacheSize > 0 
+				? ParseCache.open(cacheDir.resolve(PARSE_CACHE_DIR), parseCacheSize, parser) : null;
+		
+		// each granularity is parsed once, with content if any target includes it
+		Map<Granularity, Boolean> parses = new EnumMap<>(Granularity.class);
+		for (Target target : targets) {
+			parses.merge(target.corpus.granularity, target.corpus.includesContent(), Boolean::logicalOr);
+		}
+		boolean annotated = targets.stream().anyMatch(target -> target.corpus.isAnnotated());
+
+		BuildPipeline<Blob> pipeline = new BuildPipeline<>(queueCapacity);
+		pipeline.stage("parse", parseThreads, (Blob blob) -> {
+			Map<Granularity, Set<Component>> parsed = new EnumMap<>(Granularity.class);
+			for (Map.Entry<Granularity, Boolean> parse : parses.entrySet()) {
+				long start = System.nanoTime();
+				Set<Component> components = parseCache == null 
+						? parser.parse(new ByteArrayInputStream(blob.bytes), blob.path, parse.getKey(), parse.getValue())
+						: parseCache.parse(blob.id, blob.bytes, blob.path, parse.getKey(), parse.getValue());
+				metrics.file(Stage.PARSE, blob.path, System.nanoTime() - start, components.size());
+				parsed.put(parse.getKey(), components);
+			}
+			blob.bytes = null;
+			blob.components = new ArrayList<>(targets.size());
+			for (Target target : targets) {
+				Set<Component> components = parsed.get(target.corpus.granularity);
+				// annotations are added to the components, so targets cannot share them
+				blob.components.add(targets.size() == 1 ? components : copy(components, target.corpus.includesContent()));
+			}
+			return blob;
+		});
+		if (annotated) {
+			pipeline.stage("annotate", annotateThreads, (Blob blob) -> {
+				List<Annotation> annotations = new ArrayList<>();
+				for (int i = 0; i < targets.size(); i++) {
+					GenericCorpus corpus = targets.get(i).corpus;
+					if (corpus.isAnnotated()) {
+						annotations.add(new Annotation(blob.components.get(i), corpus.recentness, corpus.granularity, 
+								corpus.filtered, corpus.commitDocuments));
+					}
+				}
+				vc.annotateAll(annotations);
+				return blob;
+			});
+		}
+		for (Target target : targets) {
+			if (target.corpus.commitDocuments) target.commits.addAll(target.index.getCommits());
+		}
+		Map<Target, Integer> indexedCommits = new HashMap<>();
+		targets.forEach(target -> indexedCommits.put(target, target.commits.size()));
+		pipeline.stage("write", writeThreads, (Blob blob) -> {
+			for (int i = 0; i < targets.size(); i++) {
+				write(vc, targets.get(i), blob.path, blob.components.get(i), metrics, resumeAfter != null);
+			}
+			if (checkpoints != null) checkpoints.written(blob.sequence);
+			return null;
+		});
+		
+		pipeline.start();
+		boolean submitted = false;
+		try {
+			boolean skipping = resumeAfter != null;
+			long start = System.nanoTime();
+			while (blobWalk.next()) {
+				if (Thread.interrupted()) throw new InterruptedException();
+				String path = blobWalk.getPathString();
+				if (skipping) {
+					skipping = !path.equals(resumeAfter);
+				} else {
+					Blob blob = new Blob(path, blobWalk.getObjectId(0), blobWalk.getBlobBytes());
+					metrics.file(Stage.READ, blob.path, System.nanoTime() - start, blob.bytes.length);
+					if (checkpoints != null) blob.sequence = checkpoints.submitted(blob.path);
+					if (!pipeline.submit(blob)) break;
+				}
+				start = System.nanoTime();
+			}
+			submitted = true;
+		} catch (InterruptedException e) {
+			// the files being processed complete and are checkpointed before finish() rethrows
+			pipeline.cancel(e);
+		} finally {
+			boolean finished = false;
+			try {
+				pipeline.finish();
+				finished = submitted;
+			} finally {
+				if (!finished && checkpoints != null) checkpoints.checkpoint();
+			}
+		}
+		log.addAll(pipeline.report());
+		if (parseCache != null) {
+			parseCache.evict();
+			log.addAll(parseCache.report());
+		}
+		for (Target target : targets) {
+			if (target.corpus.commitDocuments) {
+				log.add("Commit documents: " + (target.commits.size() - indexedCommits.get(target)));
+			}
+		}
+	}
+	
+	/**
+	 * @param resumed whether documents of the file may have been written by
+	 * the build resumed
+	 */
+	private static void write(VersionControl<BlobWalk> vc, Target target, String path, Set<Component> components, 
+			BuildMetrics metrics, boolean resumed) throws Exception {
+		Index index = target.index;
+		long start = System.nanoTime();
+		// a checkpoint may hold a part of the files written after it
+		if (resumed) index.deleteFiles(Collections.singleton(path));
+		index.writeAll(components);
+		if (!components.isEmpty()) {
+			metrics.file(Stage.WRITE, path, System.nanoTime() - start, components.size());
+		}
+		target.components.addAndGet(components.size());
+		if (target.corpus.commitDocuments) {
+			Set<String> newCommits = new HashSet<>();
+			for (Component component : components) {
+				component.getCommits().stream().filter(target.commits::add).forEach(newCommits::add);
+			}
+			Map<String, String> messages = vc.getMessages(newCommits);
+			start = System.nanoTime();
+			index.writeCommits(messages);
+			metrics.shared(Stage.WRITE, System.nanoTime() - start, messages.size());
+		}
+	}
+	
+	private static Set<Component> copy(Set<Component> components, boolean includeContent) {
+		Set<Component> copies = new HashSet<>();
+		for (Component component : components) {
+			copies.add(new GenericComponent(component.getPath(), includeContent ? component.getContent() : "", 
+					component.getStartLine(), component.getEndLine()));
+		}
+		return copies;
 	}
 
 	@Override
 	public Callable<Set<Component>> search(String query) {
+		return () -> searchIndex().search(query);
+	}
+	
+	@Override
+	public Callable<List<Component>> search(String query, int offset, int k) {
+		if (offset < 0 || k < 1) throw new IllegalArgumentException("Offset cannot be negative and k must be positive.");
+		return () -> searchIndex().search(query, offset, k);
+	}
+	
+	@Override
+	public Callable<List<Component>> search(String query, int offset, int k, FieldBoosts boosts) {
+		if (offset < 0 || k < 1) throw new IllegalArgumentException("Offset cannot be negative and k must be positive.");
+		if (boosts == null) throw new NullPointerException("Boosts cannot be null.");
+		if (!multiField) throw new IllegalStateException("Fields can only be chosen in a multi-field corpus.");
+		return () -> searchIndex().search(query, offset, k, boosts);
+	}
+	
+	@Override
+	public Callable<List<String>> searchAll(List<String> queries, int k, BiConsumer<Integer, List<Component>> results) {
+		if (k < 1) throw new IllegalArgumentException("k must be positive.");
 		return () -> {
-			try(Index index = LuceneIndexWrapper.newReadableInstance(indexDir, source)){
-				return index.search(query);
+			Index index = searchIndex();
+			List<String> log = new ArrayList<>();
+			log.add(this.toString());
+			log.add(index.toString());
+			
+			long start = System.nanoTime();
+			index.searchAll(queries, k, searchThreads, results);
+			double seconds = (System.nanoTime() - start) / 1e9;
+			
+			log.add("Queries: " + queries.size());
+			log.add("Total time sec.: " + seconds);
+			log.add("Queries/sec.: " + (seconds == 0 ? 0 : queries.size() / seconds));
+			return log;
+		};
+	}
+	
+	@Override
+	public Callable<List<String>> warm(Path queryLog, int k) {
+		return () -> {
+			List<String> queries = new ArrayList<>();
+			for (String line : Files.readAllLines(queryLog)) {
+				if (!line.trim().isEmpty()) queries.add(line.trim());
 			}
+			List<String> log = searchAll(queries, k, (i, components) -> {}).call();
+			log.add(searchIndex().toString());
+			return log;
 		};
 	}
+	
+	synchronized Index searchIndex() {
+		if (closed) throw new IllegalStateException("Corpus is closed.");
+		if (searchIndex == null && multiField) {
+			searchIndex = inMemory 
+					? LuceneIndexWrapper.newReadableInstance(memory(), indexSource(), queryCacheSize, FieldBoosts.of(source))
+					: LuceneIndexWrapper.newReadableInstance(indexDir, indexSource(), queryCacheSize, FieldBoosts.of(source));
+		} else if (searchIndex == null) {
+			searchIndex = inMemory 
+					? LuceneIndexWrapper.newReadableInstance(memory(), source, queryCacheSize)
+					: LuceneIndexWrapper.newReadableInstance(indexDir, source, queryCacheSize);
+		}
+		return searchIndex;
+	}
+	
+	/**
+	 * @return the in memory index, loaded from indexDir on first use when 
+	 * snapshots are enabled
+	 */
+	private synchronized MemoryStore memory() {
+		if (closed) throw new IllegalStateException("Corpus is closed.");
+		if (memory == null) {
+			try {
+				memory = snapshot ? MemoryStore.load(indexDir) : new MemoryStore();
+			} catch (IOException e) {
+				e.printStackTrace();
+				throw new IllegalStateException("Cannot load index snapshot.");
+			}
+		}
+		return memory;
+	}
+	
+	private void snapshot(List<String> log) throws IOException {
+		if (!snapshot) return;
+		long start = System.currentTimeMillis();
+		memory().snapshot(indexDir);
+		log.add("Snapshot: " + memory() + ", time sec.: " + (System.currentTimeMillis() - start) / ((double) 1000));
+	}
+	
+	private synchronized void refreshSearchIndex() throws IndexException {
+		if (searchIndex != null) searchIndex.refresh();
+	}
+	
+	@Override
+	public synchronized void close() throws IOException {
+		closed = true;
+		if (searchIndex != null) {
+			searchIndex.close();
+			searchIndex = null;
+		}
+		if (memory != null) {
+			memory.close();
+			memory = null;
+		}
+	}
 
 	@Override
 	public String toString() {
 		return "GenericCorpus [srcDir=" + srcDir + ", indexDir=" + indexDir
-				+ ", granularity=" + granularity + ", revision=" + revision
+				+ ", cacheDir=" + cacheDir
+				+ ", granularity=" + granularity + ", methodScanner=" + methodScanner + ", revision=" + revision
 				+ ", source=" + source + ", recentness=" + recentness
-				+ ", filtered=" + filtered + "]";
+				+ ", filtered=" + filtered + ", parseThreads=" + parseThreads
+				+ ", annotateThreads=" + annotateThreads + ", writeThreads=" + writeThreads
+				+ ", searchThreads=" + searchThreads + ", queryCacheSize=" + queryCacheSize
+				+ ", annotationCacheSize=" + annotationCacheSize + ", parseCacheSize=" + parseCacheSize 
+				+ ", commitDocuments=" + commitDocuments 
+				+ ", multiField=" + multiField
+				+ ", checkpointInterval=" + checkpointInterval + ", inMemory=" + inMemory + ", snapshot=" + snapshot 
+				+ ", " + writerSettings + ", forceMergeSegments=" + forceMergeSegments + "]";
 	}
 
 	@Override
 	public Callable<List<String>> delete() {
 		return () -> {
-			try(Index index = LuceneIndexWrapper.newWriteableInstance(indexDir, source)){
-				List<String> log = new ArrayList<>();
+			List<String> log = new ArrayList<>();
+			try(Index index = inMemory 
+					? LuceneIndexWrapper.newWriteableInstance(memory(), indexSource())
+					: LuceneIndexWrapper.newWriteableInstance(indexDir, indexSource())){
 				log.add(this.toString());
 				log.add(index.toString());
 
 				index.deleteAll();
-				return log;
+				index.setRevision(null);
 			}
+			snapshot(log);
+			refreshSearchIndex();
+			return log;
 		};
 	}
 
+	private static final class Blob {
+		private final String path;
+		private final ObjectId id;
+		private byte[] bytes;
+		// components of every target, in the order of the targets
+		private List<Set<Component>> components;
+		private int sequence;
+		
+		private Blob(String path, ObjectId id, byte[] bytes) {
+			this.path = path;
+			this.id = id;
+			this.bytes = bytes;
+		}
+	}
 	
+	/**
+	 * A corpus being built and the index it is written to.
+	 */
+	private static final class Target {
+		private final GenericCorpus corpus;
+		private final Index index;
+		// commits already written, each is indexed once however many components it touched
+		private final Set<String> commits = ConcurrentHashMap.newKeySet();
+		private final AtomicInteger components = new AtomicInteger();
+		
+		private Target(GenericCorpus corpus, Index index) {
+			this.corpus = corpus;
+			this.index = index;
+		}
+	}
 }
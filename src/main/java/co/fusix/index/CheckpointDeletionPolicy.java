@@ -0,0 +1,50 @@
+package co.fusix.index;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.IndexDeletionPolicy;
+
+/**
+ * Keeps the latest commit and the latest complete one. A checkpoint commit of
+ * a build in progress therefore never removes the index readers are using.
+ */
+final class CheckpointDeletionPolicy extends IndexDeletionPolicy {
+
+	static final String CHECKPOINT_PREFIX = "checkpoint.";
+
+	@Override
+	public void onInit(List<? extends IndexCommit> commits) {
+		// a new index has no commits yet
+		if (!commits.isEmpty()) onCommit(commits);
+	}
+
+	@Override
+	public void onCommit(List<? extends IndexCommit> commits) {
+		IndexCommit last = commits.get(commits.size() - 1);
+		IndexCommit lastComplete = lastComplete(commits);
+		for (IndexCommit commit : commits) {
+			if (commit != last && commit != lastComplete) commit.delete();
+		}
+	}
+
+	static boolean isComplete(IndexCommit commit) {
+		try {
+			return commit.getUserData().keySet().stream().noneMatch(key -> key.startsWith(CHECKPOINT_PREFIX));
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @param commits ordered oldest first
+	 * @return the newest complete commit, null if there is none
+	 */
+	static IndexCommit lastComplete(List<? extends IndexCommit> commits) {
+		for (int i = commits.size() - 1; i >= 0; i--) {
+			if (isComplete(commits.get(i))) return commits.get(i);
+		}
+		return null;
+	}
+}
@@ -0,0 +1,65 @@
+package co.fusix.index;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.IndexNotFoundException;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.store.Directory;
+
+/**
+ * Like {@code SearcherManager}, but opens and refreshes to the latest complete
+ * commit, skipping the checkpoints of builds still in progress.
+ */
+final class CompleteSearcherManager extends ReferenceManager<IndexSearcher> {
+
+	private static final int ATTEMPTS = 5;
+
+	CompleteSearcherManager(Directory dir) throws IOException {
+		current = new IndexSearcher(open(dir, null));
+	}
+
+	@Override
+	protected void decRef(IndexSearcher reference) throws IOException {
+		reference.getIndexReader().decRef();
+	}
+
+	@Override
+	protected IndexSearcher refreshIfNeeded(IndexSearcher referenceToRefresh) throws IOException {
+		DirectoryReader reader = (DirectoryReader) referenceToRefresh.getIndexReader();
+		DirectoryReader newReader = open(reader.directory(), reader);
+		return newReader == null ? null : new IndexSearcher(newReader);
+	}
+
+	@Override
+	protected boolean tryIncRef(IndexSearcher reference) {
+		return reference.getIndexReader().tryIncRef();
+	}
+
+	@Override
+	protected int getRefCount(IndexSearcher reference) {
+		return reference.getIndexReader().getRefCount();
+	}
+
+	/**
+	 * Opens the latest complete commit, retrying when a writer deletes it
+	 * before it is open because a newer one was completed.
+	 *
+	 * @return null if the reader already is at the latest complete commit
+	 */
+	private static DirectoryReader open(Directory dir, DirectoryReader reader) throws IOException {
+		for (int attempt = 1; ; attempt++) {
+			IndexCommit commit = CheckpointDeletionPolicy.lastComplete(DirectoryReader.listCommits(dir));
+			if (commit == null) throw new IndexNotFoundException("No complete commit in " + dir);
+			try {
+				return reader == null ? DirectoryReader.open(commit) : DirectoryReader.openIfChanged(reader, commit);
+			} catch (FileNotFoundException | NoSuchFileException e) {
+				if (attempt == ATTEMPTS) throw e;
+			}
+		}
+	}
+}
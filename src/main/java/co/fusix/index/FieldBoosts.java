@@ -0,0 +1,49 @@
+package co.fusix.index;
+
+import co.fusix.corpus.Source;
+
+/**
+ * Weights of the code and commit text fields of a multi-field index, chosen
+ * per query. A field weighted 0 is not searched.
+ */
+public final class FieldBoosts {
+
+	private final float content;
+	private final float history;
+
+	public FieldBoosts(float content, float history) {
+		if (content < 0 || history < 0 || content + history == 0) {
+			throw new IllegalArgumentException("Boosts cannot be negative and one must be positive.");
+		}
+		this.content = content;
+		this.history = history;
+	}
+
+	/**
+	 * @return content only for CODE, history only for VCS and both, equally
+	 * weighted, for BOTH
+	 */
+	public static FieldBoosts of(Source source) {
+		switch (source) {
+		case VCS:
+			return new FieldBoosts(0, 1);
+		case BOTH:
+			return new FieldBoosts(1, 1);
+		default:
+			return new FieldBoosts(1, 0);
+		}
+	}
+
+	float getContent() {
+		return content;
+	}
+
+	float getHistory() {
+		return history;
+	}
+
+	@Override
+	public String toString() {
+		return "FieldBoosts [content=" + content + ", history=" + history + "]";
+	}
+}
@@ -1,7 +1,10 @@
 package co.fusix.index;
 
 import java.io.Closeable;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.BiConsumer;
 
 import co.fusix.component.Component;
 import co.fusix.exceptions.IndexException;
@@ -10,7 +13,97 @@ public interface Index extends Closeable {
 		
 	void writeAll(Set<Component> components) throws IndexException;
 	
+	/**
+	 * Writes one document per commit, holding its message.
+	 */
+	void writeCommits(Map<String, String> messages) throws IndexException;
+	
+	/**
+	 * @return ids of the commits written so far
+	 */
+	Set<String> getCommits() throws IndexException;
+	
 	Set<Component> search(String query) throws IndexException;
 	
+	/**
+	 * @return components ranked from offset + 1 to offset + k, best first, 
+	 * each with its score and rank
+	 */
+	List<Component> search(String query, int offset, int k) throws IndexException;
+	
+	/**
+	 * Like {@link #search(String, int, int)}, but searches the CONTENT and 
+	 * HISTORY fields of a multi-field index with the given boosts instead of
+	 * the fields the index was opened with. Fields the index lacks match 
+	 * nothing.
+	 */
+	List<Component> search(String query, int offset, int k, FieldBoosts boosts) throws IndexException;
+	
+	/**
+	 * Runs every query against the same reader and passes the top k components
+	 * of each, with the query's position in the list, to the consumer as soon
+	 * as the query completes. Calls to the consumer are serialized.
+	 */
+	void searchAll(List<String> queries, int k, int threads, 
+			BiConsumer<Integer, List<Component>> results) throws IndexException;
+	
+	/**
+	 * @return false if no component can match the query, judged from a summary 
+	 * of the terms of the index that may be wrong only in returning true
+	 */
+	boolean mayMatch(String query) throws IndexException;
+	
+	/**
+	 * @return statistics of the query's terms, to merge with those of other 
+	 * indexes searched for the same query
+	 */
+	SearchStatistics statistics(String query) throws IndexException;
+	
+	/**
+	 * Like {@link #search(String, int, int)}, but scores with the given 
+	 * statistics so scores are comparable across the indexes they were merged 
+	 * from. The query cache is not used.
+	 */
+	List<Component> search(String query, int offset, int k, SearchStatistics statistics) throws IndexException;
+	
+	List<Component> search(String query, int offset, int k, FieldBoosts boosts, SearchStatistics statistics) 
+			throws IndexException;
+	
+	/**
+	 * Makes changes committed since the index was opened visible to search.
+	 * Searches already running keep the view they started with.
+	 */
+	void refresh() throws IndexException;
+	
 	void deleteAll() throws IndexException;
+	
+	void deleteFiles(Set<String> filePaths) throws IndexException;
+	
+	String getRevision();
+	
+	void setRevision(String revision);
+	
+	/**
+	 * Commits the documents written so far as an incomplete build, recording
+	 * the state needed to resume it. Readers keep searching the last complete
+	 * commit.
+	 */
+	void checkpoint(Map<String, String> state) throws IndexException;
+	
+	/**
+	 * @return the state recorded by the last checkpoint if the latest commit is
+	 * incomplete, otherwise null
+	 */
+	Map<String, String> getCheckpoint();
+	
+	/**
+	 * Commits a complete build, visible to readers after their next refresh.
+	 */
+	void commit() throws IndexException;
+	
+	/**
+	 * Merges the index down to at most maxSegments segments for faster 
+	 * searches, visible after the next commit.
+	 */
+	void forceMerge(int maxSegments) throws IndexException;
 }
@@ -1,33 +1,78 @@
 package co.fusix.index;
 
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.IndexNotFoundException;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LogByteSizeMergePolicy;
+import org.apache.lucene.index.MergeTrigger;
+import org.apache.lucene.index.TieredMergePolicy;
 import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.CollectionStatistics;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ReferenceManager;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.SimpleCollector;
 import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TermStatistics;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
 
 import co.fusix.component.Component;
 import co.fusix.component.GenericComponent;
@@ -37,30 +82,91 @@ import co.fusix.utils.Utils;
 
 public final class LuceneIndexWrapper implements Index {
 	
-	private enum Mode {READ, WRITE};
+	private enum Mode {READ, WRITE, APPEND, RESUME};
 	
 	private static final int MAX_HITS = 5000;
-	private static final String QUERY_FIELD_NAME = "query";
-	private final Path indexDir;
+	private static final String REVISION_KEY = "revision";
+	private static final String FILE_SEPARATOR = "::";
+	private static final String COMMIT_ID_FIELD_NAME = "COMMIT_ID";
+	private static final String MEMORY = "memory";
+	// under the index directory, the IndexWriter ignores it
+	private static final String SHARD_DIR = "shards";
+	private static final String[] SEARCHED_FIELDS = {Component.Fields.CONTENT.name(), 
+			Component.Fields.MESSAGE.name(), Component.Fields.HISTORY.name()};
+	private static final FieldBoosts CONTENT_ONLY = new FieldBoosts(1, 0);
+	private final String location;
 	private final Source source;
+	// fields searched when a query does not choose them
+	private final FieldBoosts boosts;
 	private final IndexWriter writer;
-	private final IndexReader reader;
+	private final ReferenceManager<IndexSearcher> searchers;
 	private final Analyzer analyzer;
 	private final Directory dir;
+	private final QueryCache queryCache;
+	private volatile TermBloomFilter termFilter;
+	private final WriterSettings settings;
+	private final boolean commitOnClose;
+	// writers of the shards and their directories, null when writing to the index directly
+	private final IndexWriter[] shards;
+	private final Directory[] shardDirs;
+	private final Path shardRoot;
+	private final ReadWriteLock shardLock = new ReentrantReadWriteLock();
+	private final AtomicInteger nextShard = new AtomicInteger();
+	private final ThreadLocal<Integer> shard = ThreadLocal.withInitial(nextShard::getAndIncrement);
 	
 	private LuceneIndexWrapper(final Path indexDir, final Source source, final Mode mode) {
-		this.indexDir = indexDir;
+		this(indexDir, source, mode, 0, WriterSettings.DEFAULT, CONTENT_ONLY);
+	}
+	
+	private LuceneIndexWrapper(final Path indexDir, final Source source, final Mode mode, int queryCacheSize,
+			WriterSettings settings, FieldBoosts boosts) {
+		this(open(indexDir), indexDir.toString(), source, mode, queryCacheSize, settings, boosts);
+	}
+	
+	private LuceneIndexWrapper(final Directory dir, final String location, final Source source, final Mode mode, 
+			int queryCacheSize, WriterSettings settings, FieldBoosts boosts) {
+		this.dir = dir;
+		this.location = location;
 		this.source = source;
+		this.boosts = boosts;
+		this.queryCache = queryCacheSize > 0 ? new QueryCache(queryCacheSize) : null;
+		this.settings = settings;
+		this.commitOnClose = mode != Mode.RESUME;
 		try {
-			this.dir = FSDirectory.open(indexDir);
-			this.analyzer = Utils.getAnalyzer(source);
-			if (mode == Mode.WRITE) {
-				IndexWriterConfig iwc = new IndexWriterConfig(analyzer).setOpenMode(OpenMode.CREATE);	
+			// commit text of multi-field indexes is analyzed as for VCS whatever the content is
+			this.analyzer = new PerFieldAnalyzerWrapper(Utils.getAnalyzer(source), 
+					Collections.singletonMap(Component.Fields.HISTORY.name(), Utils.getAnalyzer(Source.VCS)));
+			if (mode == Mode.WRITE || mode == Mode.APPEND || mode == Mode.RESUME) {
+				IndexWriterConfig iwc = config(mode == Mode.WRITE ? OpenMode.CREATE : OpenMode.CREATE_OR_APPEND)
+						.setIndexDeletionPolicy(new CheckpointDeletionPolicy())
+						.setCommitOnClose(commitOnClose);
 				writer = new IndexWriter(dir, iwc);
-				reader = null;
+				searchers = null;
+				if (settings.getShards() > 1) {
+					shards = new IndexWriter[settings.getShards()];
+					shardDirs = new Directory[shards.length];
+					// left over by a build that did not close, the write lock is ours now
+					shardRoot = dir instanceof FSDirectory ? ((FSDirectory) dir).getDirectory().resolve(SHARD_DIR) : null;
+					if (shardRoot != null) deleteShards(shardRoot);
+					for (int i = 0; i < shards.length; i++) {
+						if (shardRoot == null) {
+							shardDirs[i] = new RAMDirectory();
+						} else {
+							shardDirs[i] = FSDirectory.open(Files.createDirectories(shardRoot.resolve(String.valueOf(i))));
+						}
+						shards[i] = new IndexWriter(shardDirs[i], config(OpenMode.CREATE).setCommitOnClose(false));
+					}
+				} else {
+					shards = null;
+					shardDirs = null;
+					shardRoot = null;
+				}
 			} else if (mode == Mode.READ) {
-				reader = DirectoryReader.open(dir);
+				searchers = new CompleteSearcherManager(dir);
 				writer = null;
+				shards = null;
+				shardDirs = null;
+				shardRoot = null;
 			} else {
 				throw new IllegalArgumentException();
 			}
@@ -70,79 +176,709 @@ public final class LuceneIndexWrapper implements Index {
 			throw new IllegalStateException("Cannot construct Lucene index.");
 		}
 	}
+	
+	private IndexWriterConfig config(OpenMode openMode) {
+		IndexWriterConfig iwc = new IndexWriterConfig(analyzer)
+				.setOpenMode(openMode)
+				.setRAMBufferSizeMB(settings.getRamBufferSizeMB());
+		switch (settings.getMergePolicy()) {
+		case LOG_BYTE_SIZE:
+			return iwc.setMergePolicy(new LogByteSizeMergePolicy());
+		case NONE:
+			// unlike NoMergePolicy, still merges when forced to
+			return iwc.setMergePolicy(new TieredMergePolicy() {
+				@Override
+				public MergeSpecification findMerges(MergeTrigger mergeTrigger, SegmentInfos infos, IndexWriter writer) {
+					return null;
+				}
+			});
+		default:
+			return iwc.setMergePolicy(new TieredMergePolicy());
+		}
+	}
+	
+	private static Directory open(Path indexDir) {
+		try {
+			return FSDirectory.open(indexDir);
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new IllegalStateException("Cannot construct Lucene index.");
+		}
+	}
 		
 	@Override
 	public void close() throws IOException {
 		//analyzer.close();
 		//dir.close();
-		if (writer != null && writer.isOpen())	{
-			writer.close();
+		try {
+			if (shards != null && writer.isOpen()) {
+				if (commitOnClose) mergeShards();
+				for (int i = 0; i < shards.length; i++) {
+					shards[i].rollback();
+					shardDirs[i].close();
+				}
+				if (shardRoot != null) deleteShards(shardRoot);
+			}
+		} finally {
+			if (writer != null && writer.isOpen())	{
+				writer.close();
+			}
+			if (searchers != null) searchers.close();
 		}
-		if (reader != null) reader.close();
-		
 	}
 
 	@Override
 	public void writeAll(final Set<Component> components) throws IndexException{
-		try {
-			for(Component component: components) {
-				Document luceneDoc = new Document();
-				luceneDoc.add(new StringField(Component.Fields.PATH.name(), component.getPath(), Field.Store.YES));
+		List<Document> luceneDocs = new ArrayList<>(components.size());
+		for(Component component: components) {
+			Document luceneDoc = new Document();
+			luceneDoc.add(new StringField(Component.Fields.PATH.name(), component.getPath(), Field.Store.YES));
+			luceneDoc.add(new SortedDocValuesField(Component.Fields.PATH.name(), new BytesRef(component.getPath())));
+			String history = component.getHistory();
+			if (settings.isMultiField()) {
 				luceneDoc.add(new TextField(Component.Fields.CONTENT.name(), component.getContent(), Field.Store.NO));
-				writer.addDocument(luceneDoc);
+				luceneDoc.add(new TextField(Component.Fields.HISTORY.name(), history, Field.Store.NO));
+			} else {
+				luceneDoc.add(new TextField(Component.Fields.CONTENT.name(), 
+						history.isEmpty() ? component.getContent() : component.getContent() + history, Field.Store.NO));
+			}
+			for (String commit : component.getCommits()) {
+				luceneDoc.add(new StringField(Component.Fields.COMMIT.name(), commit, Field.Store.NO));
+			}
+			luceneDocs.add(luceneDoc);
+		}
+		addDocuments(luceneDocs);
+	}
+	
+	@Override
+	public void writeCommits(Map<String, String> messages) throws IndexException {
+		List<Document> luceneDocs = new ArrayList<>(messages.size());
+		for (Map.Entry<String, String> message : messages.entrySet()) {
+			Document luceneDoc = new Document();
+			luceneDoc.add(new StringField(COMMIT_ID_FIELD_NAME, message.getKey(), Field.Store.YES));
+			luceneDoc.add(new SortedDocValuesField(COMMIT_ID_FIELD_NAME, new BytesRef(message.getKey())));
+			luceneDoc.add(new TextField(Component.Fields.MESSAGE.name(), message.getValue(), Field.Store.NO));
+			luceneDocs.add(luceneDoc);
+		}
+		addDocuments(luceneDocs);
+	}
+	
+	/**
+	 * Adds the documents in one batch, to the shard of the calling thread if
+	 * the index is sharded.
+	 */
+	private void addDocuments(List<Document> luceneDocs) throws IndexException {
+		if (luceneDocs.isEmpty()) return;
+		try {
+			if (shards == null) {
+				writer.addDocuments(luceneDocs);
+				return;
+			}
+			shardLock.readLock().lock();
+			try {
+				shards[shard.get() % shards.length].addDocuments(luceneDocs);
+			} finally {
+				shardLock.readLock().unlock();
 			}
 		} catch (IOException e) {
 			throw new IndexException();
-		}		
+		}
+	}
+	
+	private static void deleteShards(Path shardRoot) throws IOException {
+		if (!Files.isDirectory(shardRoot)) return;
+		try (DirectoryStream<Path> shardPaths = Files.newDirectoryStream(shardRoot)) {
+			for (Path shardPath : shardPaths) {
+				try (DirectoryStream<Path> files = Files.newDirectoryStream(shardPath)) {
+					for (Path file : files) {
+						Files.delete(file);
+					}
+				}
+				Files.delete(shardPath);
+			}
+		}
+		Files.delete(shardRoot);
+	}
+	
+	/**
+	 * Moves the documents of all shards into the index, blocking writes until 
+	 * the shards are empty again.
+	 */
+	private void mergeShards() throws IOException {
+		if (shards == null) return;
+		shardLock.writeLock().lock();
+		try {
+			for (IndexWriter shardWriter : shards) {
+				shardWriter.commit();
+				shardWriter.close();
+			}
+			writer.addIndexes(shardDirs);
+			for (int i = 0; i < shards.length; i++) {
+				shards[i] = new IndexWriter(shardDirs[i], config(OpenMode.CREATE).setCommitOnClose(false));
+			}
+		} finally {
+			shardLock.writeLock().unlock();
+		}
+	}
+	
+	@Override
+	public Set<String> getCommits() throws IndexException {
+		Set<String> commits = new HashSet<>();
+		try {
+			if (writer != null) {
+				try (IndexReader current = DirectoryReader.open(writer, true)) {
+					addTerms(current, COMMIT_ID_FIELD_NAME, commits);
+				}
+				if (shards != null) {
+					shardLock.readLock().lock();
+					try {
+						for (IndexWriter shardWriter : shards) {
+							try (IndexReader current = DirectoryReader.open(shardWriter, true)) {
+								addTerms(current, COMMIT_ID_FIELD_NAME, commits);
+							}
+						}
+					} finally {
+						shardLock.readLock().unlock();
+					}
+				}
+			} else {
+				IndexSearcher searcher = searchers.acquire();
+				try {
+					addTerms(searcher.getIndexReader(), COMMIT_ID_FIELD_NAME, commits);
+				} finally {
+					searchers.release(searcher);
+				}
+			}
+			return commits;
+		} catch (IOException e) {
+			throw new IndexException();
+		}
 	}
 
 
 	@Override
 	public String toString() {
-		return "LuceneIndexWrapper [indexDir=" + indexDir + ", source="
+		return "LuceneIndexWrapper [indexDir=" + location + ", source="
 				+ source// + ", writer=" + writer + ", analyzer=" + analyzer
+				+ (writer == null && boosts != CONTENT_ONLY ? ", " + boosts : "")
+				+ (writer == null ? "" : ", " + settings)
+				+ (queryCache == null ? "" : ", " + queryCache)
 				+ "]";
 	}
 
 	@Override
 	public Set<Component> search(String queryString) throws IndexException {
+		return new HashSet<>(search(queryString, 0, MAX_HITS));
+	}
+	
+	@Override
+	public List<Component> search(String queryString, int offset, int k) throws IndexException {
+		return search(queryString, offset, k, boosts);
+	}
+	
+	@Override
+	public List<Component> search(String queryString, int offset, int k, FieldBoosts boosts) throws IndexException {
 		try {
-			final Set<Component> components = new HashSet<>();
-			IndexSearcher searcher = new IndexSearcher(reader);
-			
-			BooleanQuery query = new BooleanQuery();
-			for (String word : getQueryTokens(queryString, analyzer)) {
-				query.add(new TermQuery(new Term(Component.Fields.CONTENT.name(), word)), Occur.SHOULD);
+			IndexSearcher searcher = searchers.acquire();
+			try {
+				return search(searcher, query(queryString, boosts), queryString, offset, k);
+			} finally {
+				searchers.release(searcher);
 			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new IndexException();
+		}
+	}
 	
-			TopDocs results = searcher.search(query, MAX_HITS);
-			ScoreDoc[] hits = results.scoreDocs;
-		
-			for (int i = 0; i < hits.length; i++) {
-				GenericComponent c = new GenericComponent(searcher.doc(hits[i].doc).get(Component.Fields.PATH.name()));
-				c.setSearchPosition( i + 1 );
-				components.add(c);
-				
+	@Override
+	public void searchAll(List<String> queryStrings, int k, int threads, 
+			BiConsumer<Integer, List<Component>> results) throws IndexException 
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			IndexSearcher searcher = searchers.acquire();
+			try {
+				List<Future<?>> futures = new ArrayList<>();
+				for (int i = 0; i < queryStrings.size(); i++) {
+					final int queryIndex = i;
+					futures.add(executor.submit(() -> {
+						String queryString = queryStrings.get(queryIndex);
+						List<Component> components = search(searcher, query(queryString, boosts), queryString, 0, k);
+						synchronized (results) {
+							results.accept(queryIndex, components);
+						}
+						return null;
+					}));
+				}
+				for (Future<?> future : futures) {
+					future.get();
+				}
+			} finally {
+				searchers.release(searcher);
+			}
+		} catch (IOException | ExecutionException e) {
+			e.printStackTrace();
+			throw new IndexException();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IndexException();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	@Override
+	public boolean mayMatch(String queryString) throws IndexException {
+		try {
+			IndexSearcher searcher = searchers.acquire();
+			try {
+				long version = ((DirectoryReader) searcher.getIndexReader()).getVersion();
+				TermBloomFilter filter = termFilter;
+				if (filter == null || filter.getVersion() != version) {
+					filter = TermBloomFilter.build(searcher.getIndexReader(), version, SEARCHED_FIELDS);
+					termFilter = filter;
+				}
+				for (String field : SEARCHED_FIELDS) {
+					for (String word : getQueryTokens(field, queryString, analyzer)) {
+						if (filter.mayContain(word)) return true;
+					}
+				}
+				return false;
+			} finally {
+				searchers.release(searcher);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new IndexException();
+		}
+	}
+	
+	@Override
+	public SearchStatistics statistics(String queryString) throws IndexException {
+		try {
+			IndexSearcher searcher = searchers.acquire();
+			try {
+				Map<String, CollectionStatistics> fields = new HashMap<>();
+				Map<Term, TermStatistics> terms = new HashMap<>();
+				for (String field : SEARCHED_FIELDS) {
+					fields.put(field, searcher.collectionStatistics(field));
+					for (String word : getQueryTokens(field, queryString, analyzer)) {
+						Term term = new Term(field, word);
+						terms.put(term, searcher.termStatistics(term, 
+								TermContext.build(searcher.getIndexReader().getContext(), term)));
+					}
+				}
+				return new SearchStatistics(fields, terms);
+			} finally {
+				searchers.release(searcher);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new IndexException();
+		}
+	}
+	
+	@Override
+	public List<Component> search(String queryString, int offset, int k, SearchStatistics statistics) 
+			throws IndexException {
+		return search(queryString, offset, k, boosts, statistics);
+	}
+	
+	@Override
+	public List<Component> search(String queryString, int offset, int k, FieldBoosts boosts, 
+			SearchStatistics statistics) throws IndexException {
+		try {
+			IndexSearcher searcher = searchers.acquire();
+			try {
+				IndexSearcher global = new IndexSearcher(searcher.getIndexReader()) {
+					@Override
+					public TermStatistics termStatistics(Term term, TermContext context) throws IOException {
+						TermStatistics termStatistics = statistics.getTerm(term);
+						return termStatistics != null ? termStatistics : super.termStatistics(term, context);
+					}
+					
+					@Override
+					public CollectionStatistics collectionStatistics(String field) throws IOException {
+						CollectionStatistics fieldStatistics = statistics.getField(field);
+						return fieldStatistics != null ? fieldStatistics : super.collectionStatistics(field);
+					}
+				};
+				int n = (int) Math.min((long) offset + k, Integer.MAX_VALUE);
+				return components(hits(global, query(queryString, boosts), queryString, n, offset), offset, n);
+			} finally {
+				searchers.release(searcher);
 			}
-			return components;
 		} catch (IOException e) {
 			e.printStackTrace();
 			throw new IndexException();
 		}
 	}
+	
+	private List<Component> search(IndexSearcher searcher, BooleanQuery query, String queryString, int offset, int k) 
+			throws IOException {
+		int n = (int) Math.min((long) offset + k, Integer.MAX_VALUE);
+		long version = ((DirectoryReader) searcher.getIndexReader()).getVersion();
+		
+		QueryCache.Hits hits = queryCache == null ? null : queryCache.get(query, version, n);
+		if (hits == null) {
+			hits = hits(searcher, query, queryString, n, queryCache == null ? offset : 0);
+			if (queryCache != null) queryCache.put(query, version, hits);
+		}
+		return components(hits, offset, n);
+	}
+	
+	private static List<Component> components(QueryCache.Hits hits, int offset, int n) {
+		List<Component> components = new ArrayList<>();
+		for (int i = offset; i < Math.min(n, hits.size()); i++) {
+			GenericComponent c = new GenericComponent(hits.getPath(i));
+			c.setSearchPosition( i + 1 );
+			c.setScore(hits.getScore(i));
+			components.add(c);
+		}
+		return components;
+	}
+	
+	/**
+	 * @return a clause per token of every field with a positive boost, each 
+	 * field splitting the query with its own analyzer
+	 */
+	private BooleanQuery query(String queryString, FieldBoosts boosts) throws IOException {
+		BooleanQuery query = new BooleanQuery();
+		addClauses(query, Component.Fields.CONTENT.name(), queryString, boosts.getContent());
+		addClauses(query, Component.Fields.HISTORY.name(), queryString, boosts.getHistory());
+		return query;
+	}
+	
+	private void addClauses(BooleanQuery query, String field, String queryString, float boost) throws IOException {
+		if (boost == 0) return;
+		for (String word : getQueryTokens(field, queryString, analyzer)) {
+			TermQuery clause = new TermQuery(new Term(field, word));
+			clause.setBoost(boost);
+			query.add(clause, Occur.SHOULD);
+		}
+	}
+	
+	/**
+	 * @return the top n hits, paths are only resolved from the given rank on
+	 */
+	private QueryCache.Hits hits(IndexSearcher searcher, BooleanQuery query, String queryString, int n, int from) 
+			throws IOException {
+		TopDocs results = MultiFields.getIndexedFields(searcher.getIndexReader()).contains(Component.Fields.MESSAGE.name())
+				? searchLinked(searcher, query, getQueryTokens(Component.Fields.MESSAGE.name(), queryString, analyzer), n)
+				: searcher.search(query, n);
+		ScoreDoc[] scoreDocs = results.scoreDocs;
+		
+		String[] paths = new String[scoreDocs.length];
+		float[] scores = new float[scoreDocs.length];
+		for (int i = 0; i < scoreDocs.length; i++) {
+			if (i >= from) paths[i] = getPath(searcher, scoreDocs[i].doc);
+			scores[i] = scoreDocs[i].score;
+		}
+		return new QueryCache.Hits(paths, scores, n);
+	}
+	
+	/**
+	 * Reads the path from doc values, or from stored fields for indexes 
+	 * written without them.
+	 */
+	private static String getPath(IndexSearcher searcher, int doc) throws IOException {
+		List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+		LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(doc, leaves));
+		SortedDocValues paths = leaf.reader().getSortedDocValues(Component.Fields.PATH.name());
+		if (paths == null) return searcher.doc(doc).get(Component.Fields.PATH.name());
+		return paths.get(doc - leaf.docBase).utf8ToString();
+	}
+	
+	@Override
+	public void refresh() throws IndexException {
+		if (searchers == null) return;
+		if (queryCache != null) queryCache.clear();
+		try {
+			searchers.maybeRefreshBlocking();
+		} catch (IOException e) {
+			throw new IndexException();
+		}
+	}
 
 	@Override
 	public void deleteAll() throws IndexException {
 		try {
 			writer.deleteAll();
+			if (shards != null) {
+				shardLock.readLock().lock();
+				try {
+					for (IndexWriter shardWriter : shards) {
+						shardWriter.deleteAll();
+					}
+				} finally {
+					shardLock.readLock().unlock();
+				}
+			}
+		} catch (IOException e) {
+			throw new IndexException();
+		}
+	}
+	
+	@Override
+	public void deleteFiles(Set<String> filePaths) throws IndexException {
+		try {
+			List<Query> queries = new ArrayList<>();
+			for (String filePath : filePaths) {
+				// FILE components use the file path, METHOD components are prefixed with it
+				queries.add(new TermQuery(new Term(Component.Fields.PATH.name(), filePath)));
+				queries.add(new PrefixQuery(new Term(Component.Fields.PATH.name(), filePath + FILE_SEPARATOR)));
+			}
+			Query[] deletes = queries.toArray(new Query[queries.size()]);
+			writer.deleteDocuments(deletes);
+			if (shards != null) {
+				shardLock.readLock().lock();
+				try {
+					for (IndexWriter shardWriter : shards) {
+						shardWriter.deleteDocuments(deletes);
+					}
+				} finally {
+					shardLock.readLock().unlock();
+				}
+			}
+		} catch (IOException e) {
+			throw new IndexException();
+		}
+	}
+
+	@Override
+	public String getRevision() {
+		if (writer != null) return writer.getCommitData().get(REVISION_KEY);
+		try {
+			IndexSearcher searcher = searchers.acquire();
+			try {
+				return ((DirectoryReader) searcher.getIndexReader()).getIndexCommit().getUserData().get(REVISION_KEY);
+			} finally {
+				searchers.release(searcher);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	@Override
+	public void checkpoint(Map<String, String> state) throws IndexException {
+		Map<String, String> commitData = completeCommitData();
+		commitData.remove(REVISION_KEY);
+		state.forEach((key, value) -> commitData.put(CheckpointDeletionPolicy.CHECKPOINT_PREFIX + key, value));
+		try {
+			mergeShards();
+			writer.setCommitData(commitData);
+			writer.commit();
 		} catch (IOException e) {
 			throw new IndexException();
 		}
 	}
+	
+	@Override
+	public Map<String, String> getCheckpoint() {
+		try {
+			List<IndexCommit> commits = DirectoryReader.listCommits(dir);
+			IndexCommit last = commits.get(commits.size() - 1);
+			if (CheckpointDeletionPolicy.isComplete(last)) return null;
+			Map<String, String> state = new HashMap<>();
+			last.getUserData().forEach((key, value) -> {
+				if (key.startsWith(CheckpointDeletionPolicy.CHECKPOINT_PREFIX)) {
+					state.put(key.substring(CheckpointDeletionPolicy.CHECKPOINT_PREFIX.length()), value);
+				}
+			});
+			return state;
+		} catch (IndexNotFoundException e) {
+			return null;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
+	@Override
+	public void commit() throws IndexException {
+		try {
+			mergeShards();
+			writer.setCommitData(completeCommitData());
+			writer.commit();
+		} catch (IOException e) {
+			throw new IndexException();
+		}
+	}
+	
+	@Override
+	public void forceMerge(int maxSegments) throws IndexException {
+		try {
+			mergeShards();
+			writer.forceMerge(maxSegments);
+		} catch (IOException e) {
+			throw new IndexException();
+		}
+	}
+	
+	private Map<String, String> completeCommitData() {
+		Map<String, String> commitData = new HashMap<>(writer.getCommitData());
+		commitData.keySet().removeIf(key -> key.startsWith(CheckpointDeletionPolicy.CHECKPOINT_PREFIX));
+		return commitData;
+	}
+
+	@Override
+	public void setRevision(String revision) {
+		Map<String, String> commitData = new HashMap<>(writer.getCommitData());
+		if (revision == null) {
+			commitData.remove(REVISION_KEY);
+		} else {
+			commitData.put(REVISION_KEY, revision);
+		}
+		writer.setCommitData(commitData);
+	}
 			
-	private static List<String> getQueryTokens(String string, Analyzer analyzer) throws IOException {
+	/**
+	 * Scores components of an index holding commit documents. Every matching
+	 * commit adds its score to the components linked to it, on top of the
+	 * score of the components' own content. Scores are kept for the hits 
+	 * only, and linked components are looked up leaf by leaf.
+	 */
+	private TopDocs searchLinked(IndexSearcher searcher, Query contentQuery, List<String> words, int n) throws IOException {
+		Map<Integer, Float> scores = new HashMap<>();
+		searcher.search(contentQuery, new ScoreCollector(scores));
+		
+		BooleanQuery messageQuery = new BooleanQuery();
+		for (String word : words) {
+			messageQuery.add(new TermQuery(new Term(Component.Fields.MESSAGE.name(), word)), Occur.SHOULD);
+		}
+		// sorted, so each leaf's terms are sought in order
+		Map<BytesRef, Float> commitScores = new TreeMap<>();
+		searcher.search(messageQuery, new CommitCollector(commitScores));
+		
+		if (!commitScores.isEmpty()) {
+			for (LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+				Terms terms = leaf.reader().terms(Component.Fields.COMMIT.name());
+				if (terms == null) continue;
+				TermsEnum termsEnum = terms.iterator();
+				Bits liveDocs = leaf.reader().getLiveDocs();
+				PostingsEnum postings = null;
+				for (Map.Entry<BytesRef, Float> commit : commitScores.entrySet()) {
+					if (!termsEnum.seekExact(commit.getKey())) continue;
+					postings = termsEnum.postings(liveDocs, postings, PostingsEnum.NONE);
+					int doc;
+					while ((doc = postings.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+						scores.merge(leaf.docBase + doc, commit.getValue(), Float::sum);
+					}
+				}
+			}
+		}
+		
+		Comparator<ScoreDoc> ranking = (a, b) -> a.score != b.score 
+				? Float.compare(b.score, a.score) : Integer.compare(a.doc, b.doc);
+		PriorityQueue<ScoreDoc> top = new PriorityQueue<>(ranking.reversed());
+		int totalHits = 0;
+		for (Map.Entry<Integer, Float> score : scores.entrySet()) {
+			if (score.getValue() == 0) continue;
+			totalHits++;
+			ScoreDoc hit = new ScoreDoc(score.getKey(), score.getValue());
+			if (top.size() < n) {
+				top.add(hit);
+			} else if (ranking.compare(hit, top.peek()) < 0) {
+				top.poll();
+				top.add(hit);
+			}
+		}
+		ScoreDoc[] hits = top.toArray(new ScoreDoc[top.size()]);
+		Arrays.sort(hits, ranking);
+		return new TopDocs(totalHits, hits, hits.length == 0 ? Float.NaN : hits[0].score);
+	}
+	
+	/**
+	 * Adds the score of every hit to a map keyed by top-level doc id.
+	 */
+	private static final class ScoreCollector extends SimpleCollector {
+		
+		private final Map<Integer, Float> scores;
+		private Scorer scorer;
+		private int docBase;
+		
+		private ScoreCollector(Map<Integer, Float> scores) {
+			this.scores = scores;
+		}
+		
+		@Override
+		protected void doSetNextReader(LeafReaderContext context) throws IOException {
+			docBase = context.docBase;
+		}
+		
+		@Override
+		public void setScorer(Scorer scorer) throws IOException {
+			this.scorer = scorer;
+		}
+		
+		@Override
+		public void collect(int doc) throws IOException {
+			scores.merge(docBase + doc, scorer.score(), Float::sum);
+		}
+		
+		@Override
+		public boolean needsScores() {
+			return true;
+		}
+	}
+	
+	/**
+	 * Adds the score of every commit document hit to a map keyed by commit 
+	 * id, read from doc values, or from stored fields for indexes written 
+	 * without them.
+	 */
+	private static final class CommitCollector extends SimpleCollector {
+		
+		private final Map<BytesRef, Float> scores;
+		private Scorer scorer;
+		private LeafReader reader;
+		private SortedDocValues ids;
+		
+		private CommitCollector(Map<BytesRef, Float> scores) {
+			this.scores = scores;
+		}
+		
+		@Override
+		protected void doSetNextReader(LeafReaderContext context) throws IOException {
+			reader = context.reader();
+			ids = reader.getSortedDocValues(COMMIT_ID_FIELD_NAME);
+		}
+		
+		@Override
+		public void setScorer(Scorer scorer) throws IOException {
+			this.scorer = scorer;
+		}
+		
+		@Override
+		public void collect(int doc) throws IOException {
+			BytesRef id = ids != null 
+					? BytesRef.deepCopyOf(ids.get(doc)) 
+					: new BytesRef(reader.document(doc).get(COMMIT_ID_FIELD_NAME));
+			scores.merge(id, scorer.score(), Float::sum);
+		}
+		
+		@Override
+		public boolean needsScores() {
+			return true;
+		}
+	}
+	
+	private static void addTerms(IndexReader reader, String field, Set<String> terms) throws IOException {
+		Terms fieldTerms = MultiFields.getTerms(reader, field);
+		if (fieldTerms == null) return;
+		TermsEnum termsEnum = fieldTerms.iterator();
+		BytesRef term;
+		while ((term = termsEnum.next()) != null) {
+			terms.add(term.utf8ToString());
+		}
+	}
+	
+	private static List<String> getQueryTokens(String field, String string, Analyzer analyzer) throws IOException {
 		List<String> tokens = new ArrayList<String>();
-		try (TokenStream tokenizer = analyzer.tokenStream(QUERY_FIELD_NAME, string)){
+		try (TokenStream tokenizer = analyzer.tokenStream(field, string)){
 			CharTermAttribute token = tokenizer.getAttribute(CharTermAttribute.class);
 			tokenizer.reset();
 
@@ -158,8 +894,64 @@ public final class LuceneIndexWrapper implements Index {
 		return new LuceneIndexWrapper(indexDir, source, Mode.WRITE);
 	}
 
+	public static Index newAppendableInstance(Path indexDir, Source source) {
+		return new LuceneIndexWrapper(indexDir, source, Mode.APPEND);
+	}
+
+	/**
+	 * Opens an index for a build that may be interrupted. Changes are only 
+	 * committed by {@link Index#checkpoint} and {@link Index#commit}, readers 
+	 * keep seeing the last complete commit until the build commits.
+	 */
+	public static Index newResumableInstance(Path indexDir, Source source) {
+		return new LuceneIndexWrapper(indexDir, source, Mode.RESUME);
+	}
+
+	public static Index newResumableInstance(Path indexDir, Source source, WriterSettings settings) {
+		return new LuceneIndexWrapper(indexDir, source, Mode.RESUME, 0, settings, CONTENT_ONLY);
+	}
+
+	public static Index newAppendableInstance(Path indexDir, Source source, WriterSettings settings) {
+		return new LuceneIndexWrapper(indexDir, source, Mode.APPEND, 0, settings, CONTENT_ONLY);
+	}
+
+	public static Index newResumableInstance(MemoryStore memory, Source source, WriterSettings settings) {
+		return new LuceneIndexWrapper(memory.directory(), MEMORY, source, Mode.RESUME, 0, settings, CONTENT_ONLY);
+	}
+
+	public static Index newAppendableInstance(MemoryStore memory, Source source, WriterSettings settings) {
+		return new LuceneIndexWrapper(memory.directory(), MEMORY, source, Mode.APPEND, 0, settings, CONTENT_ONLY);
+	}
+
+	public static Index newWriteableInstance(MemoryStore memory, Source source) {
+		return new LuceneIndexWrapper(memory.directory(), MEMORY, source, Mode.WRITE, 0, WriterSettings.DEFAULT, CONTENT_ONLY);
+	}
+
+	public static Index newReadableInstance(MemoryStore memory, Source source, int queryCacheSize) {
+		return new LuceneIndexWrapper(memory.directory(), MEMORY, source, Mode.READ, queryCacheSize, null, CONTENT_ONLY);
+	}
+
 	public static Index newReadableInstance(Path indexDir, Source source) {
 		return new LuceneIndexWrapper(indexDir, source, Mode.READ);
 	}
 
+	/**
+	 * @param queryCacheSize number of queries whose results are cached, 0 disables caching
+	 */
+	public static Index newReadableInstance(Path indexDir, Source source, int queryCacheSize) {
+		return new LuceneIndexWrapper(indexDir, source, Mode.READ, queryCacheSize, null, CONTENT_ONLY);
+	}
+
+	/**
+	 * Opens a multi-field index, whose content was analyzed for the given 
+	 * source, searching the fields of the given boosts by default.
+	 */
+	public static Index newReadableInstance(Path indexDir, Source source, int queryCacheSize, FieldBoosts boosts) {
+		return new LuceneIndexWrapper(indexDir, source, Mode.READ, queryCacheSize, null, boosts);
+	}
+
+	public static Index newReadableInstance(MemoryStore memory, Source source, int queryCacheSize, FieldBoosts boosts) {
+		return new LuceneIndexWrapper(memory.directory(), MEMORY, source, Mode.READ, queryCacheSize, null, boosts);
+	}
+
 }
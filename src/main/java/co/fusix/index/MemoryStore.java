@@ -0,0 +1,77 @@
+package co.fusix.index;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.RAMDirectory;
+
+/**
+ * Heap memory an index is written to and searched from, shared by the
+ * {@link LuceneIndexWrapper} instances opened on it.
+ */
+public final class MemoryStore implements Closeable {
+
+	private final RAMDirectory dir;
+
+	public MemoryStore() {
+		this.dir = new RAMDirectory();
+	}
+
+	private MemoryStore(RAMDirectory dir) {
+		this.dir = dir;
+	}
+
+	/**
+	 * @return a store holding a copy of the index in indexDir, or an empty
+	 * store if there is none
+	 */
+	public static MemoryStore load(Path indexDir) throws IOException {
+		try (FSDirectory fsDir = FSDirectory.open(indexDir)) {
+			if (!DirectoryReader.indexExists(fsDir)) return new MemoryStore();
+			return new MemoryStore(new RAMDirectory(fsDir, IOContext.READONCE));
+		}
+	}
+
+	/**
+	 * Replaces the index in indexDir with the latest commit of this store.
+	 * Readers of indexDir keep the previous index until the copy is committed.
+	 */
+	public void snapshot(Path indexDir) throws IOException {
+		IndexWriterConfig iwc = new IndexWriterConfig(null)
+				.setOpenMode(OpenMode.CREATE)
+				.setIndexDeletionPolicy(new CheckpointDeletionPolicy());
+		try (Directory fsDir = FSDirectory.open(indexDir);
+				IndexWriter writer = new IndexWriter(fsDir, iwc)) {
+			writer.addIndexes(dir);
+			writer.setCommitData(SegmentInfos.readLatestCommit(dir).getUserData());
+			writer.commit();
+		}
+	}
+
+	public long sizeInBytes() {
+		return dir.ramBytesUsed();
+	}
+
+	Directory directory() {
+		return dir;
+	}
+
+	@Override
+	public void close() {
+		dir.close();
+	}
+
+	@Override
+	public String toString() {
+		return "MemoryStore [bytes=" + sizeInBytes() + "]";
+	}
+}
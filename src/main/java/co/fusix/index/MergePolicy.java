@@ -0,0 +1,13 @@
+package co.fusix.index;
+
+/**
+ * How an index merges the segments its writers flush.
+ */
+public enum MergePolicy {
+	/** Merges segments of similar size, Lucene's default. */
+	TIERED,
+	/** Merges adjacent segments by size in bytes, keeping document order. */
+	LOG_BYTE_SIZE,
+	/** Never merges while writing, best combined with a final force merge. */
+	NONE
+}
@@ -0,0 +1,96 @@
+package co.fusix.index;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.lucene.search.Query;
+
+/**
+ * Least recently used cache of ranked hits, keyed by the query built from the
+ * analyzed tokens and their fields. Entries belong to one reader version and
+ * are dropped as soon as a search runs against a newer one.
+ */
+final class QueryCache {
+
+	private final int maxEntries;
+	private final Map<Query, Hits> entries;
+	private long version = -1;
+	private long hits;
+	private long misses;
+
+	QueryCache(int maxEntries) {
+		this.maxEntries = maxEntries;
+		this.entries = new LinkedHashMap<Query, Hits>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Query, Hits> eldest) {
+				return size() > QueryCache.this.maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * @return the top n hits of the query, null if they are not cached
+	 */
+	synchronized Hits get(Query query, long version, int n) {
+		if (version != this.version) {
+			entries.clear();
+			this.version = version;
+		}
+		Hits cached = entries.get(query);
+		if (cached == null || !cached.covers(n)) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return cached;
+	}
+
+	synchronized void put(Query query, long version, Hits result) {
+		if (version == this.version) entries.put(query, result);
+	}
+
+	synchronized void clear() {
+		entries.clear();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "QueryCache [entries=" + entries.size() + "/" + maxEntries + ", hits=" + hits
+				+ ", misses=" + misses + "]";
+	}
+
+	static final class Hits {
+
+		private final String[] paths;
+		private final float[] scores;
+		private final int requested;
+
+		/**
+		 * @param requested number of hits asked for, more than were found if the
+		 * query matched fewer documents
+		 */
+		Hits(String[] paths, float[] scores, int requested) {
+			this.paths = paths;
+			this.scores = scores;
+			this.requested = requested;
+		}
+
+		private boolean covers(int n) {
+			return n <= requested || paths.length < requested;
+		}
+
+		int size() {
+			return paths.length;
+		}
+
+		String getPath(int i) {
+			return paths[i];
+		}
+
+		float getScore(int i) {
+			return scores[i];
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package co.fusix.index;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.CollectionStatistics;
+import org.apache.lucene.search.TermStatistics;
+
+/**
+ * Field and term statistics of a query on one index. Merged across indexes
+ * they score every index as if its documents were part of one.
+ */
+public final class SearchStatistics {
+
+	private final Map<String, CollectionStatistics> fields;
+	private final Map<Term, TermStatistics> terms;
+
+	SearchStatistics(Map<String, CollectionStatistics> fields, Map<Term, TermStatistics> terms) {
+		this.fields = fields;
+		this.terms = terms;
+	}
+
+	public static SearchStatistics merge(Collection<SearchStatistics> statistics) {
+		Map<String, CollectionStatistics> fields = new HashMap<>();
+		Map<Term, TermStatistics> terms = new HashMap<>();
+		for (SearchStatistics shard : statistics) {
+			shard.fields.forEach((field, s) -> fields.merge(field, s, (a, b) -> new CollectionStatistics(field,
+					a.maxDoc() + b.maxDoc(), sum(a.docCount(), b.docCount()),
+					sum(a.sumTotalTermFreq(), b.sumTotalTermFreq()), sum(a.sumDocFreq(), b.sumDocFreq()))));
+			shard.terms.forEach((term, s) -> terms.merge(term, s, (a, b) -> new TermStatistics(term.bytes(),
+					a.docFreq() + b.docFreq(), sum(a.totalTermFreq(), b.totalTermFreq()))));
+		}
+		return new SearchStatistics(fields, terms);
+	}
+
+	// -1 stands for a statistic an index does not record
+	private static long sum(long a, long b) {
+		return a == -1 || b == -1 ? -1 : a + b;
+	}
+
+	CollectionStatistics getField(String field) {
+		return fields.get(field);
+	}
+
+	TermStatistics getTerm(Term term) {
+		return terms.get(term);
+	}
+
+	@Override
+	public String toString() {
+		return "SearchStatistics [fields=" + fields.size() + ", terms=" + terms.size() + "]";
+	}
+}
@@ -0,0 +1,83 @@
+package co.fusix.index;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.StringHelper;
+
+/**
+ * Summary of the terms of some fields of a reader, answering whether a term
+ * may occur in any of them with about 1% false positives and no false
+ * negatives.
+ */
+final class TermBloomFilter {
+
+	private static final int BITS_PER_TERM = 10;
+	private static final int HASHES = 7;
+	private static final int SEED = 0x9747b28c;
+
+	private final long version;
+	private final FixedBitSet bits;
+
+	private TermBloomFilter(long version, FixedBitSet bits) {
+		this.version = version;
+		this.bits = bits;
+	}
+
+	static TermBloomFilter build(IndexReader reader, long version, String... fields) throws IOException {
+		long[] hashes = new long[64];
+		int size = 0;
+		for (String field : fields) {
+			Terms terms = MultiFields.getTerms(reader, field);
+			if (terms == null) continue;
+			TermsEnum termsEnum = terms.iterator();
+			BytesRef term;
+			while ((term = termsEnum.next()) != null) {
+				if (size == hashes.length) hashes = Arrays.copyOf(hashes, size * 2);
+				hashes[size++] = hash(term);
+			}
+		}
+		FixedBitSet bits = new FixedBitSet(Math.max(64, size * BITS_PER_TERM));
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < HASHES; j++) {
+				bits.set(bit(hashes[i], j, bits.length()));
+			}
+		}
+		return new TermBloomFilter(version, bits);
+	}
+
+	long getVersion() {
+		return version;
+	}
+
+	boolean mayContain(String term) {
+		long hash = hash(new BytesRef(term));
+		for (int j = 0; j < HASHES; j++) {
+			if (!bits.get(bit(hash, j, bits.length()))) return false;
+		}
+		return true;
+	}
+
+	private static long hash(BytesRef term) {
+		int h1 = StringHelper.murmurhash3_x86_32(term, SEED);
+		int h2 = StringHelper.murmurhash3_x86_32(term, h1);
+		return ((long) h1 << 32) | (h2 & 0xffffffffL);
+	}
+
+	// double hashing, the j-th bit of a term is h1 + j * h2
+	private static int bit(long hash, int j, int length) {
+		int h1 = (int) (hash >>> 32);
+		int h2 = (int) hash;
+		return ((h1 + j * h2) & Integer.MAX_VALUE) % length;
+	}
+
+	long ramBytesUsed() {
+		return bits.ramBytesUsed();
+	}
+}
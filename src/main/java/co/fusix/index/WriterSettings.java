@@ -0,0 +1,62 @@
+package co.fusix.index;
+
+/**
+ * Buffering, merging and sharding of the writers of an index, and the fields 
+ * commit text is written to.
+ */
+public final class WriterSettings {
+
+	public static final double DEFAULT_RAM_BUFFER_SIZE_MB = 16;
+	public static final WriterSettings DEFAULT = new WriterSettings(DEFAULT_RAM_BUFFER_SIZE_MB, MergePolicy.TIERED, 1);
+
+	private final double ramBufferSizeMB;
+	private final MergePolicy mergePolicy;
+	private final int shards;
+	private final boolean multiField;
+
+	/**
+	 * @param ramBufferSizeMB memory each writer buffers documents in before
+	 * flushing a segment
+	 * @param shards number of writers documents are spread over by writing
+	 * thread, combined into the index on every commit; 1 writes to the index
+	 * directly
+	 */
+	public WriterSettings(double ramBufferSizeMB, MergePolicy mergePolicy, int shards) {
+		this(ramBufferSizeMB, mergePolicy, shards, false);
+	}
+
+	/**
+	 * @param multiField whether commit text is written to a HISTORY field of 
+	 * its own rather than appended to the content
+	 */
+	public WriterSettings(double ramBufferSizeMB, MergePolicy mergePolicy, int shards, boolean multiField) {
+		if (ramBufferSizeMB <= 0 || shards < 1) throw new IllegalArgumentException("Buffer size and shards must be positive.");
+		if (mergePolicy == null) throw new NullPointerException("Merge policy cannot be null.");
+		this.ramBufferSizeMB = ramBufferSizeMB;
+		this.mergePolicy = mergePolicy;
+		this.shards = shards;
+		this.multiField = multiField;
+	}
+
+	double getRamBufferSizeMB() {
+		return ramBufferSizeMB;
+	}
+
+	MergePolicy getMergePolicy() {
+		return mergePolicy;
+	}
+
+	int getShards() {
+		return shards;
+	}
+
+	boolean isMultiField() {
+		return multiField;
+	}
+
+	@Override
+	public String toString() {
+		return "WriterSettings [ramBufferSizeMB=" + ramBufferSizeMB + ", mergePolicy=" + mergePolicy 
+				+ ", shards=" + shards + ", multiField=" + multiField + "]";
+	}
+}
@@ -0,0 +1,56 @@
+package co.fusix.metrics;
+
+/**
+ * Receives the timings and counts of corpus builds. Events arrive from every
+ * pipeline worker, so implementations must be thread-safe.
+ */
+public interface BuildListener {
+
+	BuildListener NONE = new BuildListener() {};
+
+	/**
+	 * Work done while building a corpus, with the meaning of the count
+	 * reported along with its time.
+	 */
+	enum Stage {
+		/** blobs read from the repository, count of bytes */
+		READ,
+		/** parsing, count of components */
+		PARSE,
+		/** blame of a file, count of lines */
+		BLAME,
+		/** walks of the commit history, count of commits found, or walked when shared */
+		HISTORY,
+		/** removal of non-functional commits, count of commits removed, or classified when shared */
+		FILTER,
+		/** assembly of component content from commits, count of commits */
+		CONTENT,
+		/** index writes, count of documents */
+		WRITE
+	}
+
+	/**
+	 * Called once per stage and file, or several times when a file has
+	 * several components.
+	 */
+	default void file(Stage stage, String path, long nanos, long count) {}
+
+	/**
+	 * Called for work shared by all files of a build, such as a history walk.
+	 */
+	default void shared(Stage stage, long nanos, long count) {}
+
+	/**
+	 * Called at the end of a build with the sum of the file and shared
+	 * events of a stage.
+	 */
+	default void total(Stage stage, long nanos, long count) {}
+
+	default void message(String message) {}
+
+	/**
+	 * Called after the totals of a build, also when it failed.
+	 * @param succeeded whether the build completed
+	 */
+	default void finished(boolean succeeded) {}
+}
@@ -0,0 +1,138 @@
+package co.fusix.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * Collects per file timings into histograms with power of two microsecond
+ * buckets and writes them, with the stage totals, as JSON when a build
+ * finishes, failed or not. The report covers every build since the listener
+ * was created.
+ */
+public final class JsonReportListener implements BuildListener {
+
+	private static final int BUCKETS = 40;
+	private static final int INDENT = 2;
+
+	private final Path file;
+	private final Map<Stage, Histogram> histograms = new EnumMap<>(Stage.class);
+	private final Map<Stage, long[]> totals = new EnumMap<>(Stage.class);
+	private final List<String> messages = new ArrayList<>();
+	private int builds;
+	private int failedBuilds;
+
+	public JsonReportListener(Path file) {
+		this.file = file;
+		for (Stage stage : Stage.values()) {
+			histograms.put(stage, new Histogram());
+			totals.put(stage, new long[2]);
+		}
+	}
+
+	@Override
+	public void file(Stage stage, String path, long nanos, long count) {
+		Histogram histogram = histograms.get(stage);
+		synchronized (histogram) {
+			histogram.add(nanos, count);
+		}
+	}
+
+	@Override
+	public synchronized void total(Stage stage, long nanos, long count) {
+		long[] total = totals.get(stage);
+		total[0] += nanos;
+		total[1] += count;
+	}
+
+	@Override
+	public synchronized void message(String message) {
+		messages.add(message);
+	}
+
+	/**
+	 * Writes the report. A report that cannot be written is not an error of
+	 * the build, which has committed its index by now, so failures are only
+	 * printed.
+	 */
+	@Override
+	public synchronized void finished(boolean succeeded) {
+		builds++;
+		if (!succeeded) failedBuilds++;
+		Path temp = null;
+		try {
+			temp = Files.createTempFile(file.toAbsolutePath().getParent(), "report", ".tmp");
+			try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+				writer.write(toJson().toString(INDENT));
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException | JSONException e) {
+			e.printStackTrace();
+			try {
+				if (temp != null) Files.deleteIfExists(temp);
+			} catch (IOException ignored) {
+				// a stray temporary file
+			}
+		}
+	}
+
+	synchronized JSONObject toJson() throws JSONException {
+		JSONObject stages = new JSONObject();
+		for (Stage stage : Stage.values()) {
+			Histogram histogram = histograms.get(stage);
+			JSONObject json = new JSONObject();
+			synchronized (histogram) {
+				json.put("totalMillis", totals.get(stage)[0] / 1e6);
+				json.put("totalCount", totals.get(stage)[1]);
+				json.put("events", histogram.events);
+				json.put("eventMillis", histogram.nanos / 1e6);
+				json.put("eventCount", histogram.count);
+				json.put("maxMillis", histogram.max / 1e6);
+				JSONArray buckets = new JSONArray();
+				for (int i = 0; i < BUCKETS; i++) {
+					if (histogram.buckets[i] == 0) continue;
+					buckets.put(new JSONObject()
+							.put("upToMicros", 1L << i)
+							.put("events", histogram.buckets[i]));
+				}
+				json.put("histogram", buckets);
+			}
+			stages.put(stage.name(), json);
+		}
+		return new JSONObject()
+				.put("builds", builds)
+				.put("failedBuilds", failedBuilds)
+				.put("stages", stages)
+				.put("messages", new JSONArray(messages));
+	}
+
+	private static final class Histogram {
+		// buckets[i] counts events of at most 2^i microseconds
+		private final long[] buckets = new long[BUCKETS];
+		private long events;
+		private long nanos;
+		private long count;
+		private long max;
+
+		private void add(long nanos, long count) {
+			long micros = Math.max(1, (nanos + 999) / 1000);
+			int bucket = 64 - Long.numberOfLeadingZeros(micros - 1);
+			buckets[Math.min(bucket, BUCKETS - 1)]++;
+			events++;
+			this.nanos += nanos;
+			this.count += count;
+			max = Math.max(max, nanos);
+		}
+	}
+}
@@ -0,0 +1,508 @@
+package co.fusix.parsers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+
+import co.fusix.component.Component;
+import co.fusix.component.GenericComponent;
+import co.fusix.corpus.Granularity;
+import co.fusix.exceptions.CorpusParserException;
+
+/**
+ * Finds methods by lexing Java source once instead of parsing it. Braces,
+ * strings, comments and generics are tracked to tell type bodies from code,
+ * and signatures are read from the tokens before a method body, so methods
+ * get the paths and lines {@link SimpleJavaParser} gives them. Their content
+ * is sliced from the source, from the comment preceding the method to its
+ * end. Syntax the scanner does not understand is skipped rather than failing
+ * the file.
+ */
+public final class MethodScanner implements Parser {
+
+	private static final Set<String> MODIFIERS = new HashSet<>(Arrays.asList(
+			"public", "protected", "private", "static", "abstract", "final", "native",
+			"synchronized", "transient", "volatile", "strictfp", "default"));
+
+	private static final Set<String> TYPE_KEYWORDS = new HashSet<>(Arrays.asList(
+			"class", "interface", "enum"));
+
+	private final Path srcDir;
+	private final Parser fileParser;
+
+	public MethodScanner(final Path srcDir) {
+		this.srcDir = srcDir;
+		this.fileParser = new SimpleJavaParser(srcDir);
+	}
+
+	@Override
+	public Set<Component> parse(InputStream in, String path,
+			Granularity granularity,
+			boolean includeContent) throws CorpusParserException
+	{
+		switch(granularity) {
+		case FILE:
+			return fileParser.parse(in, path, granularity, includeContent);
+		case METHOD:
+			try {
+				return new Scan(IOUtils.toString(in), path, includeContent).run();
+			} catch (IOException e) {
+				e.printStackTrace();
+				throw new CorpusParserException();
+			}
+		default:
+			throw new IllegalArgumentException("Granularity level not supported.");
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "MethodScanner [srcDir=" + srcDir + "]";
+	}
+
+	private enum Body {
+		COMPILATION_UNIT, CLASS, ENUM, ANNOTATION
+	}
+
+	private static final class Scan {
+
+		private final String source;
+		private final String path;
+		private final boolean includeContent;
+		private final Set<Component> components = new HashSet<>();
+
+		// Tokens as parallel arrays: text, line, start and end offsets, and
+		// the offset of the comments right before the token or -1.
+		private String[] texts = new String[256];
+		private int[] lines = new int[256];
+		private int[] starts = new int[256];
+		private int[] ends = new int[256];
+		private int[] comments = new int[256];
+		private int count;
+		private int pos;
+
+		Scan(String source, String path, boolean includeContent) {
+			this.source = source;
+			this.path = path;
+			this.includeContent = includeContent;
+		}
+
+		Set<Component> run() {
+			lex();
+			typeBody(null, Body.COMPILATION_UNIT);
+			return components;
+		}
+
+		private void lex() {
+			int length = source.length();
+			int line = 1;
+			int comment = -1;
+			int i = 0;
+			while (i < length) {
+				char c = source.charAt(i);
+				if (c == '\n') {
+					line++;
+					i++;
+				} else if (c == '\r') {
+					if (i + 1 >= length || source.charAt(i + 1) != '\n') line++;
+					i++;
+				} else if (Character.isWhitespace(c)) {
+					i++;
+				} else if (c == '/' && i + 1 < length && source.charAt(i + 1) == '/') {
+					if (comment == -1) comment = i;
+					while (i < length && source.charAt(i) != '\n' && source.charAt(i) != '\r') i++;
+				} else if (c == '/' && i + 1 < length && source.charAt(i + 1) == '*') {
+					if (comment == -1) comment = i;
+					int end = source.indexOf("*/", i + 2);
+					end = end == -1 ? length : end + 2;
+					line += newlines(i, end);
+					i = end;
+				} else {
+					int start = i;
+					if (c == '"' || c == '\'') {
+						i++;
+						while (i < length) {
+							char d = source.charAt(i);
+							if (d == '\\') {
+								i += 2;
+							} else if (d == c) {
+								i++;
+								break;
+							} else if (d == '\n' || d == '\r') {
+								break;
+							} else {
+								i++;
+							}
+						}
+						i = Math.min(i, length);
+					} else if (Character.isJavaIdentifierStart(source.codePointAt(i))) {
+						i += Character.charCount(source.codePointAt(i));
+						while (i < length && Character.isJavaIdentifierPart(source.codePointAt(i))) {
+							i += Character.charCount(source.codePointAt(i));
+						}
+					} else if (Character.isDigit(c) || c == '.' && i + 1 < length && Character.isDigit(source.charAt(i + 1))) {
+						i++;
+						while (i < length && (Character.isLetterOrDigit(source.charAt(i))
+								|| source.charAt(i) == '_' || source.charAt(i) == '.')) i++;
+					} else if (source.startsWith("...", i)) {
+						i += 3;
+					} else {
+						i += Character.charCount(source.codePointAt(i));
+					}
+					add(source.substring(start, i), line, start, i, comment);
+					comment = -1;
+				}
+			}
+		}
+
+		private int newlines(int from, int to) {
+			int newlines = 0;
+			for (int i = from; i < to; i++) {
+				char c = source.charAt(i);
+				if (c == '\n' || c == '\r' && (i + 1 >= to || source.charAt(i + 1) != '\n')) newlines++;
+			}
+			return newlines;
+		}
+
+		private void add(String text, int line, int start, int end, int comment) {
+			if (count == texts.length) {
+				int capacity = count * 2;
+				texts = Arrays.copyOf(texts, capacity);
+				lines = Arrays.copyOf(lines, capacity);
+				starts = Arrays.copyOf(starts, capacity);
+				ends = Arrays.copyOf(ends, capacity);
+				comments = Arrays.copyOf(comments, capacity);
+			}
+			texts[count] = text;
+			lines[count] = line;
+			starts[count] = start;
+			ends[count] = end;
+			comments[count] = comment;
+			count++;
+		}
+
+		private boolean is(int index, String text) {
+			return index < count && texts[index].equals(text);
+		}
+
+		private boolean isIdentifier(int index) {
+			return index < count && Character.isJavaIdentifierStart(texts[index].codePointAt(0));
+		}
+
+		/**
+		 * Scans the members of a type body, from after its opening brace to
+		 * after its closing one. Methods are named after {@code owner}.
+		 */
+		private void typeBody(String owner, Body body) {
+			if (body == Body.ENUM && !enumConstants()) return;
+			int member = pos;
+			while (pos < count) {
+				String text = texts[pos];
+				if (text.equals("}")) {
+					pos++;
+					if (body != Body.COMPILATION_UNIT) return;
+					member = pos;
+				} else if (text.equals(";")) {
+					if (body != Body.ANNOTATION) method(owner, member, pos);
+					pos++;
+					member = pos;
+				} else if (text.equals("(")) {
+					skipParentheses();
+				} else if (text.equals("{")) {
+					int keyword = typeKeyword(member, pos);
+					if (keyword != -1) {
+						Body nested = texts[keyword].equals("@") ? Body.ANNOTATION
+								: texts[keyword].equals("enum") ? Body.ENUM : Body.CLASS;
+						int name = nested == Body.ANNOTATION ? keyword + 2 : keyword + 1;
+						pos++;
+						// methods of enums are not named after them
+						typeBody(nested == Body.ENUM || !isIdentifier(name) ? "" : texts[name], nested);
+						member = pos;
+					} else if (hasAssignment(member, pos)) {
+						// array initializer or anonymous class of a field
+						pos++;
+						block();
+					} else {
+						int end = pos;
+						pos++;
+						if (block() && body != Body.ANNOTATION) method(owner, member, end);
+						member = pos;
+					}
+				} else {
+					pos++;
+				}
+			}
+		}
+
+		/**
+		 * Scans enum constants, with their own bodies, up to the first member.
+		 *
+		 * @return false if the enum body ended with its constants
+		 */
+		private boolean enumConstants() {
+			while (pos < count) {
+				String text = texts[pos];
+				if (text.equals("}")) {
+					pos++;
+					return false;
+				} else if (text.equals(";")) {
+					pos++;
+					return true;
+				} else if (text.equals("@")) {
+					pos = annotationEnd(pos);
+				} else if (text.equals("(")) {
+					skipParentheses();
+				} else if (text.equals("{")) {
+					String name = pos > 0 && isIdentifier(pos - 1) ? texts[pos - 1]
+							: pos > 0 && is(pos - 1, ")") ? constantBefore(pos - 1) : "";
+					pos++;
+					typeBody(name, Body.CLASS);
+				} else {
+					pos++;
+				}
+			}
+			return false;
+		}
+
+		private String constantBefore(int close) {
+			int depth = 0;
+			for (int i = close; i >= 0; i--) {
+				if (texts[i].equals(")")) depth++;
+				else if (texts[i].equals("(") && --depth == 0) return i > 0 && isIdentifier(i - 1) ? texts[i - 1] : "";
+			}
+			return "";
+		}
+
+		/**
+		 * Scans code, from after an opening brace to after its closing one,
+		 * for local classes. Methods of anonymous classes are left out, so their
+		 * bodies are scanned as code too.
+		 *
+		 * @return false if the source ended first
+		 */
+		private boolean block() {
+			while (pos < count) {
+				String text = texts[pos];
+				if (text.equals("}")) {
+					pos++;
+					return true;
+				} else if (text.equals("{")) {
+					pos++;
+					block();
+				} else if (text.equals("class") && !(pos > 0 && is(pos - 1, "."))) {
+					String name = isIdentifier(pos + 1) ? texts[pos + 1] : "";
+					while (pos < count && !texts[pos].equals("{") && !texts[pos].equals("}")) pos++;
+					if (is(pos, "{")) {
+						pos++;
+						typeBody(name, Body.CLASS);
+					}
+				} else {
+					pos++;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Skips from an opening parenthesis to after its closing one. Braces
+		 * inside, of lambdas and anonymous classes, are scanned as code.
+		 */
+		private void skipParentheses() {
+			int depth = 0;
+			while (pos < count) {
+				String text = texts[pos];
+				if (text.equals("(")) {
+					depth++;
+				} else if (text.equals(")")) {
+					if (--depth == 0) {
+						pos++;
+						return;
+					}
+				} else if (text.equals("{")) {
+					pos++;
+					block();
+					continue;
+				} else if (text.equals("}") || text.equals(";")) {
+					return;
+				}
+				pos++;
+			}
+		}
+
+		/**
+		 * @return the index after an annotation starting at {@code at}
+		 */
+		private int annotationEnd(int at) {
+			int i = at + 1;
+			while (isIdentifier(i) && is(i + 1, ".")) i += 2;
+			if (isIdentifier(i)) i++;
+			if (is(i, "(")) i = matching(i, "(", ")") + 1;
+			return i;
+		}
+
+		/**
+		 * @return the index of the token closing the one at {@code at}, or the
+		 * last token if it is not closed
+		 */
+		private int matching(int at, String open, String close) {
+			int depth = 0;
+			for (int i = at; i < count; i++) {
+				if (texts[i].equals(open)) depth++;
+				else if (texts[i].equals(close) && --depth == 0) return i;
+			}
+			return count - 1;
+		}
+
+		/**
+		 * @return the index of the keyword declaring a type in the member, '@'
+		 * for annotation types, or -1
+		 */
+		private int typeKeyword(int from, int to) {
+			for (int i = from; i < to; i++) {
+				if (texts[i].equals("(")) {
+					i = matching(i, "(", ")");
+				} else if (texts[i].equals("@")) {
+					if (is(i + 1, "interface")) return i + 1 < to ? i : -1;
+				} else if (TYPE_KEYWORDS.contains(texts[i]) && !(i > from && is(i - 1, "."))) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		private boolean hasAssignment(int from, int to) {
+			for (int i = from; i < to; i++) {
+				if (texts[i].equals("(")) i = matching(i, "(", ")");
+				else if (texts[i].equals("=")) return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Adds the member between {@code from} and the brace or semicolon at
+		 * {@code end} if it declares a method that is not abstract.
+		 */
+		private void method(String owner, int from, int end) {
+			if (owner == null) return;
+			int i = from;
+			int annotated = from;
+			while (i < end) {
+				if (texts[i].equals("@") && !is(i + 1, "interface")) {
+					boolean leading = i == annotated;
+					i = annotationEnd(i);
+					if (leading) annotated = i;
+				} else if (MODIFIERS.contains(texts[i])) {
+					if (texts[i].equals("abstract")) return;
+					i++;
+				} else {
+					break;
+				}
+			}
+			if (i >= end) return;
+			if (texts[i].equals("<")) i = matching(i, "<", ">") + 1;
+
+			int type = i;
+			int depth = 0;
+			while (i < end && !(depth == 0 && texts[i].equals("("))) {
+				String text = texts[i];
+				if (text.equals("<")) depth++;
+				else if (text.equals(">")) depth--;
+				else if (!isIdentifier(i) && !text.equals(".") && !text.equals("[") && !text.equals("]")
+						&& !text.equals(",") && !text.equals("?") && !text.equals("&")) return;
+				i++;
+			}
+			int name = i - 1;
+			if (i >= end || name <= type || !isIdentifier(name)) return;
+
+			int close = matching(i, "(", ")");
+			if (close >= end) return;
+			List<String> parameters = parameters(i + 1, close);
+			if (parameters == null) return;
+			for (int j = close + 1; j < end; j++) {
+				if (!isIdentifier(j) && !texts[j].equals(".") && !texts[j].equals(",")
+						&& !texts[j].equals("[") && !texts[j].equals("]")
+						&& !texts[j].equals("<") && !texts[j].equals(">")) return;
+			}
+
+			String returnType = print(type, name);
+			if (annotated > from && comments[annotated] != -1 && !is(type - 1, ">")
+					&& source.startsWith("/**", comments[annotated])) {
+				// javaparser prints a javadoc comment after the annotations as part
+				// of the return type
+				returnType = source.substring(comments[annotated], starts[annotated]).trim() + "\n" + returnType;
+			}
+			String declaration = owner + "_" + returnType + " " + texts[name]
+					+ "(" + String.join(", ", parameters) + ")";
+			declaration = declaration.replaceFirst(" ", "_");
+			declaration = declaration.replaceAll("\\s+", "");
+			int last = texts[end].equals("{") ? pos - 1 : end;
+			if (!includeContent) {
+				components.add(new GenericComponent(path + "::" + declaration,
+						lines[from], lines[last]));
+			} else {
+				int start = comments[from] != -1 ? comments[from] : starts[from];
+				components.add(new GenericComponent(path + "::" + declaration,
+						source.substring(start, ends[last]), lines[from], lines[last]));
+			}
+		}
+
+		/**
+		 * @return the types of the parameters between two parentheses, or null
+		 * if they are not parameters
+		 */
+		private List<String> parameters(int from, int to) {
+			List<String> parameters = new ArrayList<>();
+			int start = from;
+			int depth = 0;
+			for (int i = from; i <= to; i++) {
+				if (i == to || depth == 0 && texts[i].equals(",")) {
+					if (i > start) {
+						String parameter = parameter(start, i);
+						if (parameter == null) return null;
+						parameters.add(parameter);
+					}
+					start = i + 1;
+				} else if (texts[i].equals("<") || texts[i].equals("(")) {
+					depth++;
+				} else if (texts[i].equals(">") || texts[i].equals(")")) {
+					depth--;
+				}
+			}
+			return parameters;
+		}
+
+		private String parameter(int from, int to) {
+			int i = from;
+			while (i < to) {
+				if (texts[i].equals("@")) i = annotationEnd(i);
+				else if (texts[i].equals("final")) i++;
+				else break;
+			}
+			int last = to - 1;
+			while (last > i && texts[last].equals("]")) last -= 2;
+			if (last <= i || !isIdentifier(last)) return null;
+			return print(i, last);
+		}
+
+		/**
+		 * @return the type between two tokens as javaparser prints it
+		 */
+		private String print(int from, int to) {
+			StringBuilder type = new StringBuilder();
+			for (int i = from; i < to; i++) {
+				String text = texts[i];
+				if (text.equals(",")) type.append(", ");
+				else if (text.equals("extends") || text.equals("super") || text.equals("&")) type.append(' ').append(text).append(' ');
+				else type.append(text);
+			}
+			return type.toString();
+		}
+	}
+}
@@ -0,0 +1,298 @@
+package co.fusix.parsers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+
+import co.fusix.component.Component;
+import co.fusix.component.GenericComponent;
+import co.fusix.corpus.Granularity;
+import co.fusix.exceptions.CorpusParserException;
+
+/**
+ * On-disk cache of the components a parser finds in a blob, so a blob is
+ * parsed once whatever revision, branch or path it is seen at. There is one
+ * file per blob, granularity and content setting, holding the component
+ * paths without the file path, their lines and their content, as offsets in
+ * the blob when the content is a slice of it. Offsets are in the blob decoded
+ * with the default charset, as the parsers decode it, so the charset is part
+ * of the key. Files are evicted least recently used first once the cache
+ * grows past its size limit.
+ */
+public final class ParseCache {
+
+	private static final int MAGIC = 0x46585043; // FXPC
+	private static final int VERSION = 1;
+	private static final String SUFFIX = ".prs";
+
+	private static final byte NO_CONTENT = 0;
+	private static final byte SLICE = 1;
+	private static final byte TEXT = 2;
+
+	private final Path dir;
+	private final long maxBytes;
+	private final Parser parser;
+	private final Charset charset = Charset.defaultCharset();
+	private final AtomicLong size = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	private ParseCache(Path dir, long maxBytes, Parser parser) {
+		this.dir = dir;
+		this.maxBytes = maxBytes;
+		this.parser = parser;
+	}
+
+	/**
+	 * @param parser parses the blobs that are not cached, its class is part
+	 * of the key
+	 */
+	public static ParseCache open(Path dir, long maxBytes, Parser parser) throws IOException {
+		Files.createDirectories(dir);
+		ParseCache cache = new ParseCache(dir, maxBytes, parser);
+		try (Stream<Path> files = Files.list(dir)) {
+			for (Path file : files.collect(Collectors.toList())) {
+				if (file.toString().endsWith(SUFFIX)) cache.size.addAndGet(Files.size(file));
+			}
+		}
+		return cache;
+	}
+
+	/**
+	 * Loads the components of a blob, parsing and caching them if they are
+	 * not cached.
+	 */
+	public Set<Component> parse(AnyObjectId blob, byte[] source, String path, Granularity granularity,
+			boolean includeContent) throws CorpusParserException
+	{
+		String key = parser.getClass().getName() + '\n' + granularity + '\n' + includeContent + '\n' + charset.name();
+		String keyId = ObjectId.fromRaw(Constants.newMessageDigest()
+				.digest(key.getBytes(StandardCharsets.UTF_8))).name();
+		Path file = dir.resolve(blob.name() + '-' + keyId.substring(0, 16) + SUFFIX);
+
+		Set<Component> components = load(file, source, path);
+		if (components != null) {
+			hits.incrementAndGet();
+			return components;
+		}
+		misses.incrementAndGet();
+		components = parser.parse(new ByteArrayInputStream(source), path, granularity, includeContent);
+		try {
+			save(file, source, path, components);
+		} catch (IOException e) {
+			// parsed again next time
+		}
+		return components;
+	}
+
+	/**
+	 * Removes the least recently used files until the cache fits its limit.
+	 * The size kept while saving is an estimate, as saves of the same blob
+	 * race, so it is recomputed from the files first.
+	 */
+	public synchronized void evict() throws IOException {
+		List<Path> files;
+		try (Stream<Path> stream = Files.list(dir)) {
+			files = stream.filter(f -> f.toString().endsWith(SUFFIX)).collect(Collectors.toList());
+		}
+		Map<Path, Long> modified = new HashMap<>();
+		Map<Path, Long> lengths = new HashMap<>();
+		long total = 0;
+		for (Path file : files) {
+			try {
+				modified.put(file, Files.getLastModifiedTime(file).toMillis());
+				lengths.put(file, Files.size(file));
+				total += lengths.get(file);
+			} catch (NoSuchFileException e) {
+				// replaced or deleted meanwhile
+			}
+		}
+		size.set(total);
+		if (total <= maxBytes) return;
+		files.removeIf(file -> !modified.containsKey(file));
+		files.sort(Comparator.comparing(modified::get));
+		for (Path file : files) {
+			if (size.get() <= maxBytes) break;
+			if (Files.deleteIfExists(file)) {
+				size.addAndGet(-lengths.get(file));
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	public List<String> report() {
+		List<String> report = new ArrayList<>();
+		report.add("Parse cache [hits=" + hits.get() + ", misses=" + misses.get()
+				+ ", evictions=" + evictions.get() + ", size bytes=" + size.get() + "/" + maxBytes + "]");
+		return report;
+	}
+
+	@Override
+	public String toString() {
+		return "ParseCache [dir=" + dir + ", maxBytes=" + maxBytes + ", parser=" + parser + "]";
+	}
+
+	/**
+	 * @return the cached components, or null if the blob is not cached
+	 */
+	private Set<Component> load(Path file, byte[] source, String path) {
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+			DataInputStream header = new DataInputStream(in);
+			if (header.readInt() != MAGIC || header.readInt() != VERSION) return null;
+			Set<Component> components = load(new DataInputStream(new InflaterInputStream(in)), source, path);
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+			return components;
+		} catch (NoSuchFileException e) {
+			// not cached yet
+			return null;
+		} catch (IOException | RuntimeException e) {
+			// truncated or corrupt, rebuilt on save
+			return null;
+		}
+	}
+
+	private Set<Component> load(DataInputStream in, byte[] source, String path) throws IOException {
+		try (DataInputStream entries = in) {
+			String text = null;
+			Set<Component> components = new HashSet<>();
+			int count = entries.readInt();
+			for (int i = 0; i < count; i++) {
+				String suffix = entries.readUTF();
+				int startLine = entries.readInt();
+				int endLine = entries.readInt();
+				String content = "";
+				switch (entries.readByte()) {
+				case SLICE:
+					if (text == null) text = new String(source, charset);
+					int start = entries.readInt();
+					content = text.substring(start, start + entries.readInt());
+					break;
+				case TEXT:
+					byte[] bytes = new byte[entries.readInt()];
+					entries.readFully(bytes);
+					content = new String(bytes, StandardCharsets.UTF_8);
+					break;
+				case NO_CONTENT:
+					break;
+				default:
+					throw new IOException("Unknown content type.");
+				}
+				components.add(new GenericComponent(path + suffix, content, startLine, endLine));
+			}
+			return components;
+		}
+	}
+
+	private void save(Path file, byte[] source, String path, Set<Component> components) throws IOException {
+		for (Component component : components) {
+			// paths are stored without the file path, so it must prefix them
+			if (!component.getPath().startsWith(path)) return;
+		}
+		long previous = Files.exists(file) ? Files.size(file) : 0;
+		Path temp = Files.createTempFile(dir, "prs", ".tmp");
+		try {
+			try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+				DataOutputStream header = new DataOutputStream(out);
+				header.writeInt(MAGIC);
+				header.writeInt(VERSION);
+				save(new DataOutputStream(new DeflaterOutputStream(out)), source, path, components);
+			}
+			long length = Files.size(temp);
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			size.addAndGet(length - previous);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private void save(DataOutputStream out, byte[] source, String path, Set<Component> components) throws IOException {
+		try (DataOutputStream entries = out) {
+			String text = null;
+			List<Integer> lineStarts = null;
+			entries.writeInt(components.size());
+			for (Component component : components) {
+				entries.writeUTF(component.getPath().substring(path.length()));
+				entries.writeInt(component.getStartLine());
+				entries.writeInt(component.getEndLine());
+				String content = component.getContent();
+				if (content == null || content.isEmpty()) {
+					entries.writeByte(NO_CONTENT);
+					continue;
+				}
+				if (text == null) {
+					text = new String(source, charset);
+					lineStarts = lineStarts(text);
+				}
+				int start = offset(text, lineStarts, content, component.getEndLine());
+				if (start != -1) {
+					entries.writeByte(SLICE);
+					entries.writeInt(start);
+					entries.writeInt(content.length());
+				} else {
+					byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+					entries.writeByte(TEXT);
+					entries.writeInt(bytes.length);
+					entries.write(bytes);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the offset of the content in the source, or -1 if it is not a
+	 * slice of it. A slice ends on the end line of its component, or with the
+	 * source for components without lines.
+	 */
+	private static int offset(String text, List<Integer> lineStarts, String content, int endLine) {
+		int length = content.length();
+		if (endLine < 1) return text.endsWith(content) ? text.length() - length : -1;
+		if (endLine > lineStarts.size()) return -1;
+		int lineEnd = endLine < lineStarts.size() ? lineStarts.get(endLine) : text.length();
+		char last = content.charAt(length - 1);
+		for (int end = Math.max(lineStarts.get(endLine - 1) + 1, length); end <= lineEnd; end++) {
+			if (text.charAt(end - 1) == last && text.regionMatches(end - length, content, 0, length)) {
+				return end - length;
+			}
+		}
+		return -1;
+	}
+
+	private static List<Integer> lineStarts(String text) {
+		List<Integer> starts = new ArrayList<>();
+		starts.add(0);
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '\n' || c == '\r' && (i + 1 == text.length() || text.charAt(i + 1) != '\n')) starts.add(i + 1);
+		}
+		return starts;
+	}
+}
@@ -0,0 +1,37 @@
+package co.fusix.utils;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.StopAnalyzer;
+import org.apache.lucene.analysis.core.StopFilter;
+import org.apache.lucene.analysis.en.PorterStemFilter;
+import org.apache.lucene.analysis.util.CharArraySet;
+
+/**
+ * Identifier splitting, optional removal of Java keywords, Porter stemming and
+ * English stop word removal.
+ */
+final class IdentifierAnalyzer extends Analyzer {
+
+	private static final CharArraySet ENGLISH_STOP_WORDS = new CharArraySet(StopAnalyzer.ENGLISH_STOP_WORDS_SET, true);
+
+	private final CharArraySet keywords;
+
+	/**
+	 * @param keywords words removed before stemming, may be null
+	 */
+	IdentifierAnalyzer(CharArraySet keywords) {
+		this.keywords = keywords;
+	}
+
+	@Override
+	protected TokenStreamComponents createComponents(String fieldName) {
+		Tokenizer source = new IdentifierTokenizer();
+		TokenStream sink = source;
+		if (keywords != null) sink = new StopFilter(sink, keywords);
+		sink = new PorterStemFilter(sink);
+		sink = new StopFilter(sink, ENGLISH_STOP_WORDS);
+		return new TokenStreamComponents(source, sink);
+	}
+}
@@ -0,0 +1,128 @@
+package co.fusix.utils;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+
+/**
+ * Splits source text into lower-cased runs of letters, breaking identifiers at
+ * camelCase humps and acronym boundaries. A run is broken before an upper case
+ * ASCII letter that follows anything but an upper case letter ({@code fooBar}),
+ * or that starts a capitalized word after an acronym ({@code XMLParser}).
+ * Digits, underscores and all other non-letters separate runs. Runs longer
+ * than {@value #MAX_TOKEN_LENGTH} characters are cut into pieces.
+ * <p>
+ * Produces the same tokens as a {@code patternreplace} char filter inserting a
+ * space at {@code (?<!(^|[A-Z]))(?=[A-Z])|(?<!^)(?=[A-Z][a-z])} followed by a
+ * {@code LowerCaseTokenizer}, in a single pass and without regular expressions.
+ */
+final class IdentifierTokenizer extends Tokenizer {
+
+	static final int MAX_TOKEN_LENGTH = 255;
+	private static final int IO_BUFFER_SIZE = 4096;
+	private static final int EOF = -1;
+
+	private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+	private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
+	private final char[] ioBuffer = new char[IO_BUFFER_SIZE];
+	private int bufferIndex;
+	private int dataLen;
+	// input chars before ioBuffer[0]
+	private int offset;
+	private int previous = EOF;
+	private boolean exhausted;
+
+	@Override
+	public boolean incrementToken() throws IOException {
+		clearAttributes();
+		char[] buffer = termAtt.buffer();
+		int length = 0;
+		int start = 0;
+		int end = 0;
+		int c;
+		while ((c = peek(0)) != EOF) {
+			if (length > 0 && isUpper(c) && (!isUpper(previous) || isLower(peek(1)))) break;
+
+			int codePoint = c;
+			int charCount = 1;
+			if (Character.isHighSurrogate((char) c)) {
+				int low = peek(1);
+				if (low != EOF && Character.isLowSurrogate((char) low)) {
+					codePoint = Character.toCodePoint((char) c, (char) low);
+					charCount = 2;
+				}
+			}
+			int position = offset + bufferIndex;
+			bufferIndex += charCount;
+			previous = ioBuffer[bufferIndex - 1];
+
+			if (Character.isLetter(codePoint)) {
+				if (length == 0) {
+					start = position;
+				} else if (length >= buffer.length - 1) {
+					buffer = termAtt.resizeBuffer(2 + length);
+				}
+				end = position + charCount;
+				length += Character.toChars(Character.toLowerCase(codePoint), buffer, length);
+				if (length >= MAX_TOKEN_LENGTH) break;
+			} else if (length > 0) {
+				break;
+			}
+		}
+		if (length == 0) return false;
+		termAtt.setLength(length);
+		offsetAtt.setOffset(correctOffset(start), correctOffset(end));
+		return true;
+	}
+
+	/**
+	 * @return the char {@code ahead} positions past the current one, EOF past
+	 * the end of input
+	 */
+	private int peek(int ahead) throws IOException {
+		if (bufferIndex + ahead >= dataLen) {
+			if (exhausted) return EOF;
+			System.arraycopy(ioBuffer, bufferIndex, ioBuffer, 0, dataLen - bufferIndex);
+			offset += bufferIndex;
+			dataLen -= bufferIndex;
+			bufferIndex = 0;
+			while (dataLen <= ahead && !exhausted) {
+				int read = input.read(ioBuffer, dataLen, ioBuffer.length - dataLen);
+				if (read == EOF) {
+					exhausted = true;
+				} else {
+					dataLen += read;
+				}
+			}
+			if (ahead >= dataLen) return EOF;
+		}
+		return ioBuffer[bufferIndex + ahead];
+	}
+
+	private static boolean isUpper(int c) {
+		return c >= 'A' && c <= 'Z';
+	}
+
+	private static boolean isLower(int c) {
+		return c >= 'a' && c <= 'z';
+	}
+
+	@Override
+	public void end() throws IOException {
+		super.end();
+		int finalOffset = correctOffset(offset + dataLen);
+		offsetAtt.setOffset(finalOffset, finalOffset);
+	}
+
+	@Override
+	public void reset() throws IOException {
+		super.reset();
+		bufferIndex = 0;
+		dataLen = 0;
+		offset = 0;
+		previous = EOF;
+		exhausted = false;
+	}
+}
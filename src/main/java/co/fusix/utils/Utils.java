@@ -1,14 +1,18 @@
 package co.fusix.utils;
 
 import java.io.IOException;
-import java.nio.file.Paths;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
-import org.apache.lucene.analysis.custom.CustomAnalyzer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.util.CharArraySet;
+import org.apache.lucene.analysis.util.WordlistLoader;
 
 import co.fusix.corpus.Source;
 
@@ -29,35 +33,40 @@ public final class Utils {
 	
 	private Utils(){}
 	
+	/**
+	 * @return the analyzer of the source type, shared by all callers and not to be closed
+	 */
 	public static Analyzer getAnalyzer(Source source) throws IOException{
 		switch(source) {
 		case CODE:
-			return CustomAnalyzer.builder()
-					.addCharFilter("patternreplace", "pattern", "(?<!(^|[A-Z]))(?=[A-Z])|(?<!^)(?=[A-Z][a-z])", "replacement", " ")
-					.withTokenizer("lowercase")
-				
-					.addTokenFilter("stop", "ignoreCase", "true", "words", "java_keywords.txt", "format", "snowball")
-					.addTokenFilter("porterstem")
-					.addTokenFilter("stop", "ignoreCase", "true")//, "words", "stopwords.txt", "format", "wordset")
-					//.addTokenFilter("length", "min", "3", "max", "255")
-					.build();
+			return Analyzers.CODE;
 		case VCS:
 		case BOTH:
-			return CustomAnalyzer.builder()
-					.addCharFilter("patternreplace", "pattern", "(?<!(^|[A-Z]))(?=[A-Z])|(?<!^)(?=[A-Z][a-z])", "replacement", " ")
-					.withTokenizer("lowercase")
-				
-					//.addTokenFilter("stop", "ignoreCase", "true", "words", "java_keywords.txt", "format", "snowball")
-					.addTokenFilter("porterstem")
-					.addTokenFilter("stop", "ignoreCase", "true")//, "words", "stopwords.txt", "format", "wordset")
-					//.addTokenFilter("length", "min", "3", "max", "255")
-					.build();
+			return Analyzers.VCS;
 		default:
 			throw new IllegalArgumentException("Cannot instantiate analyzer for given source type.");
 			
 		}
 	}
 	
+	/**
+	 * Analyzers are thread-safe and built once, when first requested.
+	 */
+	private static final class Analyzers {
+		
+		private static final String JAVA_KEYWORDS = "/java_keywords.txt";
+		private static final Analyzer CODE = new IdentifierAnalyzer(javaKeywords());
+		private static final Analyzer VCS = new IdentifierAnalyzer(null);
+		
+		private static CharArraySet javaKeywords() {
+			try (Reader reader = new InputStreamReader(Utils.class.getResourceAsStream(JAVA_KEYWORDS), StandardCharsets.UTF_8)) {
+				return WordlistLoader.getSnowballWordSet(reader, new CharArraySet(16, true));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+	
 	public static List<String> preprocessString(String string, Analyzer analyzer) {
 		List<String> tokens = new ArrayList<String>();
 		try (TokenStream tokenizer = analyzer.tokenStream("test", string)){
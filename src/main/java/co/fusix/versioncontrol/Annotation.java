@@ -0,0 +1,56 @@
+package co.fusix.versioncontrol;
+
+import java.util.Set;
+
+import co.fusix.component.Component;
+import co.fusix.corpus.Granularity;
+
+/**
+ * Components to annotate and how, one of several annotations of the same
+ * files made together.
+ */
+public final class Annotation {
+
+	private final Set<Component> components;
+	private final Recentness recentness;
+	private final Granularity granularity;
+	private final boolean filtered;
+	private final boolean linkCommits;
+
+	/**
+	 * @param filtered whether non-functional commits are left out
+	 * @param linkCommits whether components get commit ids instead of commit
+	 * messages
+	 */
+	public Annotation(Set<Component> components, Recentness recentness, Granularity granularity,
+			boolean filtered, boolean linkCommits) {
+		if (granularity != Granularity.FILE && granularity != Granularity.METHOD) {
+			throw new IllegalArgumentException("Granularity level not supported.");
+		}
+		this.components = components;
+		this.recentness = recentness;
+		this.granularity = granularity;
+		this.filtered = filtered;
+		this.linkCommits = linkCommits;
+	}
+
+	Set<Component> getComponents() {
+		return components;
+	}
+
+	Recentness getRecentness() {
+		return recentness;
+	}
+
+	Granularity getGranularity() {
+		return granularity;
+	}
+
+	boolean isFiltered() {
+		return filtered;
+	}
+
+	boolean isLinkCommits() {
+		return linkCommits;
+	}
+}
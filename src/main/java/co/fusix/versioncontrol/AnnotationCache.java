@@ -0,0 +1,201 @@
+package co.fusix.versioncontrol;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+import co.fusix.corpus.Granularity;
+
+/**
+ * On-disk cache of annotation results. Entries are grouped in one file per
+ * blob, path, history and annotation settings, and map a line range to the
+ * ids of the commits annotated to it. Files are evicted least recently used
+ * first once the cache grows past its size limit.
+ */
+final class AnnotationCache {
+
+	private static final int MAGIC = 0x46584143; // FXAC
+	private static final int VERSION = 1;
+	private static final String SUFFIX = ".ann";
+
+	private final Path dir;
+	private final long maxBytes;
+	private final AtomicLong size = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	private AnnotationCache(Path dir, long maxBytes) {
+		this.dir = dir;
+		this.maxBytes = maxBytes;
+	}
+
+	static AnnotationCache open(Path dir, long maxBytes) throws IOException {
+		Files.createDirectories(dir);
+		AnnotationCache cache = new AnnotationCache(dir, maxBytes);
+		try (Stream<Path> files = Files.list(dir)) {
+			for (Path file : files.collect(Collectors.toList())) {
+				if (file.toString().endsWith(SUFFIX)) cache.size.addAndGet(Files.size(file));
+			}
+		}
+		return cache;
+	}
+
+	/**
+	 * Loads the entries of a file blob, an empty bucket if none are cached.
+	 * @param history identifies the history the annotations of the blob are
+	 * made from, so they are not reused once it changes
+	 */
+	Bucket bucket(AnyObjectId blob, String path, AnyObjectId history, Recentness recentness,
+			Granularity granularity, boolean filtered) throws IOException
+	{
+		String key = path + '\n' + history.name() + '\n' + recentness + '\n' + granularity + '\n' + filtered;
+		String keyId = ObjectId.fromRaw(Constants.newMessageDigest()
+				.digest(key.getBytes(StandardCharsets.UTF_8))).name();
+		Path file = dir.resolve(blob.name() + '-' + keyId.substring(0, 16) + SUFFIX);
+		Bucket bucket = new Bucket(file);
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) return bucket;
+			int entries = in.readInt();
+			for (int i = 0; i < entries; i++) {
+				long range = in.readLong();
+				ObjectId[] ids = new ObjectId[in.readInt()];
+				byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+				for (int j = 0; j < ids.length; j++) {
+					in.readFully(raw);
+					ids[j] = ObjectId.fromRaw(raw);
+				}
+				bucket.entries.put(range, ids);
+			}
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (NoSuchFileException e) {
+			// not cached yet
+		} catch (IOException e) {
+			// truncated or corrupt, rebuilt on save
+			bucket.entries.clear();
+		}
+		return bucket;
+	}
+
+	/**
+	 * Removes the least recently used files until the cache fits its limit.
+	 */
+	synchronized void evict() throws IOException {
+		if (size.get() <= maxBytes) return;
+		List<Path> files;
+		try (Stream<Path> stream = Files.list(dir)) {
+			files = stream.filter(f -> f.toString().endsWith(SUFFIX)).collect(Collectors.toList());
+		}
+		Map<Path, Long> modified = new HashMap<>();
+		for (Path file : files) modified.put(file, Files.getLastModifiedTime(file).toMillis());
+		files.sort(Comparator.comparing(modified::get));
+		for (Path file : files) {
+			if (size.get() <= maxBytes) break;
+			long length = Files.size(file);
+			if (Files.deleteIfExists(file)) {
+				size.addAndGet(-length);
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	List<String> report() {
+		List<String> report = new ArrayList<>();
+		report.add("Annotation cache [hits=" + hits.get() + ", misses=" + misses.get()
+				+ ", evictions=" + evictions.get() + ", size bytes=" + size.get() + "/" + maxBytes + "]");
+		return report;
+	}
+
+	final class Bucket {
+
+		private final Path file;
+		private final Map<Long, ObjectId[]> entries = new HashMap<>();
+		private boolean modified;
+
+		private Bucket(Path file) {
+			this.file = file;
+		}
+
+		/**
+		 * @return the cached commits of the range, or null on a miss
+		 */
+		List<RevCommit> get(int startLine, int endLine, RevWalk revWalk) throws IOException {
+			ObjectId[] ids = entries.get(range(startLine, endLine));
+			if (ids == null) {
+				misses.incrementAndGet();
+				return null;
+			}
+			List<RevCommit> commits = new ArrayList<>(ids.length);
+			try {
+				for (ObjectId id : ids) commits.add(revWalk.parseCommit(id));
+			} catch (MissingObjectException e) {
+				// history was rewritten
+				entries.remove(range(startLine, endLine));
+				misses.incrementAndGet();
+				return null;
+			}
+			hits.incrementAndGet();
+			return commits;
+		}
+
+		void put(int startLine, int endLine, List<? extends AnyObjectId> commits) {
+			entries.put(range(startLine, endLine), commits.stream().map(AnyObjectId::copy).toArray(ObjectId[]::new));
+			modified = true;
+		}
+
+		void save() throws IOException {
+			if (!modified) return;
+			long previous = Files.exists(file) ? Files.size(file) : 0;
+			Path temp = Files.createTempFile(dir, "ann", ".tmp");
+			try {
+				try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+					out.writeInt(MAGIC);
+					out.writeInt(VERSION);
+					out.writeInt(entries.size());
+					for (Map.Entry<Long, ObjectId[]> entry : entries.entrySet()) {
+						out.writeLong(entry.getKey());
+						out.writeInt(entry.getValue().length);
+						byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+						for (ObjectId id : entry.getValue()) {
+							id.copyRawTo(raw, 0);
+							out.write(raw);
+						}
+					}
+				}
+				long length = Files.size(temp);
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				size.addAndGet(length - previous);
+				modified = false;
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		}
+
+		private long range(int startLine, int endLine) {
+			return ((long) startLine << 32) | (endLine & 0xffffffffL);
+		}
+	}
+}
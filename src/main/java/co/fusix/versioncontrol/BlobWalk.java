@@ -22,4 +22,8 @@ public class BlobWalk extends TreeWalk {
 		}
 	}
 	
+	public byte[] getBlobBytes() throws IOException{
+		return repo.open(this.getObjectId(0), Constants.OBJ_BLOB).getBytes(Integer.MAX_VALUE);
+	}
+	
 }
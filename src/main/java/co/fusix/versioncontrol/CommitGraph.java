@@ -0,0 +1,398 @@
+package co.fusix.versioncontrol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdOwnerMap;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * Per-repository commit graph. Commits get dense int ids in the order they
+ * are added; their parents and author times are kept in primitive arrays
+ * indexed by those ids. When a file is given the graph is persisted and
+ * memory-mapped on the next open, and only commits that are not yet in the
+ * graph are walked.
+ * <p>
+ * Branch clusters are computed on first use only, as most annotations need
+ * dense ids but not clusters. A cluster is a run of commits of a merged
+ * branch, found by a depth-first walk from the indexed revision.
+ */
+final class CommitGraph {
+
+	private static final int MAGIC = 0x46584347; // FXCG
+	private static final int VERSION = 2;
+	private static final int ID_INTS = 5;
+	private static final int MAX_TIPS = 16;
+	private static final int MAX_CLUSTER = 50;
+
+	private final IntBuffer ids;
+	private final IntBuffer sorted;
+	private final IntBuffer tips;
+	private final IntBuffer parentStart;
+	private final IntBuffer parents;
+	private final IntBuffer times;
+	private final int size;
+	// dense id of the revision clusters are computed for
+	private final int head;
+	private int[] clusters;
+	private CommitSet[] clusterCommits;
+
+	private CommitGraph(IntBuffer ids, IntBuffer sorted, IntBuffer tips, IntBuffer parentStart,
+			IntBuffer parents, IntBuffer times, int head)
+	{
+		this.ids = ids;
+		this.sorted = sorted;
+		this.tips = tips;
+		this.parentStart = parentStart;
+		this.parents = parents;
+		this.times = times;
+		this.size = times.limit();
+		this.head = head;
+	}
+
+	/**
+	 * Opens the graph persisted under {@code prefix}, or builds it, and adds the
+	 * commits reachable from {@code head} that it does not cover yet.
+	 * @param prefix name of the file without its generation, see
+	 * {@link MappedFiles}; null for a graph that is kept in memory only
+	 */
+	static CommitGraph open(Repository repository, AnyObjectId head, Path prefix) throws IOException {
+		CommitGraph graph = null;
+		Path file = prefix == null ? null : MappedFiles.latest(prefix);
+		if (file != null) {
+			try {
+				graph = map(file);
+			} catch (IOException | RuntimeException e) {
+				e.printStackTrace(); // unreadable, rebuild
+			}
+		}
+		int headIndex = graph == null ? -1 : graph.indexOf(head);
+		if (headIndex >= 0) return graph.withHead(headIndex);
+
+		CommitGraph extended = extend(repository, head, graph);
+		if (prefix != null) extended.write(prefix);
+		return extended;
+	}
+
+	private CommitGraph withHead(int head) {
+		return new CommitGraph(ids, sorted, tips, parentStart, parents, times, head);
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return the dense id of the commit, or -1 when it is not in the graph
+	 */
+	int indexOf(AnyObjectId id) {
+		int[] key = new int[ID_INTS];
+		toInts(id, key);
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = compare(ids, sorted.get(mid), key);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return sorted.get(mid);
+			}
+		}
+		return -1;
+	}
+
+	ObjectId getId(int index) {
+		return idAt(ids, index);
+	}
+
+	int getParentCount(int index) {
+		return parentStart.get(index + 1) - parentStart.get(index);
+	}
+
+	/**
+	 * @return the dense id of the n-th parent, or -1 when the parent is
+	 * missing from the repository
+	 */
+	int getParent(int index, int n) {
+		return parents.get(parentStart.get(index) + n);
+	}
+
+	/**
+	 * @return the author time in seconds
+	 */
+	int getAuthorTime(int index) {
+		return times.get(index);
+	}
+
+	/**
+	 * @return the branch cluster of a commit, or -1 when it is on no cluster
+	 */
+	int getCluster(int index) {
+		return clusters()[index];
+	}
+
+	/**
+	 * @return the commits of a cluster
+	 */
+	synchronized CommitSet getClusterCommits(int cluster) {
+		if (clusterCommits == null) {
+			int[] clusters = clusters();
+			int clusterCount = 0;
+			for (int i = 0; i < size; i++) clusterCount = Math.max(clusterCount, clusters[i] + 1);
+			int[] memberCount = new int[clusterCount];
+			for (int i = 0; i < size; i++) {
+				if (clusters[i] >= 0) memberCount[clusters[i]]++;
+			}
+			int[][] members = new int[clusterCount][];
+			for (int c = 0; c < clusterCount; c++) members[c] = new int[memberCount[c]];
+			Arrays.fill(memberCount, 0);
+			for (int i = 0; i < size; i++) {
+				int c = clusters[i];
+				if (c >= 0) members[c][memberCount[c]++] = i;
+			}
+			clusterCommits = new CommitSet[clusterCount];
+			for (int c = 0; c < clusterCount; c++) clusterCommits[c] = CommitSet.of(members[c], members[c].length);
+		}
+		return clusterCommits[cluster];
+	}
+
+	/**
+	 * @return the number of commits that are on a cluster
+	 */
+	int getClusteredCount() {
+		int count = 0;
+		for (int cluster : clusters()) {
+			if (cluster >= 0) count++;
+		}
+		return count;
+	}
+
+	private synchronized int[] clusters() {
+		if (clusters == null) clusters = cluster();
+		return clusters;
+	}
+
+	private static CommitGraph extend(Repository repository, AnyObjectId head, CommitGraph previous)
+			throws IOException
+	{
+		int previousSize = previous == null ? 0 : previous.size;
+		List<RevCommit> added = new ArrayList<>();
+		ObjectIdOwnerMap<DenseId> denseIds = new ObjectIdOwnerMap<>();
+		try (RevWalk revWalk = new RevWalk(repository)) {
+			revWalk.setRetainBody(false);
+			revWalk.markStart(revWalk.parseCommit(head));
+			if (previous != null) {
+				for (int i = 0; i < previous.tips.limit() / ID_INTS; i++) {
+					try {
+						revWalk.markUninteresting(revWalk.parseCommit(idAt(previous.tips, i)));
+					} catch (MissingObjectException e) {
+						// rewritten history, walk everything
+					}
+				}
+			}
+			List<Integer> addedTimes = new ArrayList<>();
+			for (RevCommit commit = revWalk.next(); commit != null; commit = revWalk.next()) {
+				if (previous != null && previous.indexOf(commit) >= 0) continue;
+				revWalk.parseBody(commit);
+				addedTimes.add((int) (commit.getAuthorIdent().getWhen().getTime() / 1000));
+				commit.disposeBody();
+				denseIds.add(new DenseId(commit, previousSize + added.size()));
+				added.add(commit);
+			}
+
+			int size = previousSize + added.size();
+			int previousParents = previous == null ? 0 : previous.parents.limit();
+			int parentCount = previousParents + added.stream().mapToInt(RevCommit::getParentCount).sum();
+			IntBuffer ids = IntBuffer.allocate(size * ID_INTS);
+			IntBuffer parentStart = IntBuffer.allocate(size + 1);
+			IntBuffer parents = IntBuffer.allocate(parentCount);
+			IntBuffer times = IntBuffer.allocate(size);
+			if (previous != null) {
+				for (int i = 0; i < previous.ids.limit(); i++) ids.put(previous.ids.get(i));
+				for (int i = 0; i < previousSize; i++) parentStart.put(previous.parentStart.get(i));
+				for (int i = 0; i < previousParents; i++) parents.put(previous.parents.get(i));
+				for (int i = 0; i < previousSize; i++) times.put(previous.times.get(i));
+			}
+			int[] word = new int[ID_INTS];
+			for (int i = 0; i < added.size(); i++) {
+				RevCommit commit = added.get(i);
+				toInts(commit, word);
+				ids.put(word);
+				parentStart.put(parents.position());
+				for (RevCommit parent : commit.getParents()) {
+					DenseId dense = denseIds.get(parent);
+					parents.put(dense != null ? dense.index : previous == null ? -1 : previous.indexOf(parent));
+				}
+				times.put(addedTimes.get(i));
+			}
+			parentStart.put(parents.position());
+
+			// dense ids sorted by commit id, for lookups
+			Integer[] order = new Integer[size];
+			for (int i = 0; i < size; i++) order[i] = i;
+			Arrays.sort(order, (a, b) -> {
+				for (int i = 0; i < ID_INTS; i++) {
+					int cmp = Integer.compareUnsigned(ids.get(a * ID_INTS + i), ids.get(b * ID_INTS + i));
+					if (cmp != 0) return cmp;
+				}
+				return 0;
+			});
+			IntBuffer sorted = IntBuffer.allocate(size);
+			for (int index : order) sorted.put(index);
+
+			// remember the walked tips so the next extension only visits new commits
+			int previousTips = previous == null ? 0 : Math.min(previous.tips.limit() / ID_INTS, MAX_TIPS - 1);
+			IntBuffer tips = IntBuffer.allocate((previousTips + 1) * ID_INTS);
+			toInts(head, word);
+			tips.put(word);
+			for (int i = 0; i < previousTips * ID_INTS; i++) {
+				tips.put(previous.tips.get(i));
+			}
+
+			ids.flip();
+			sorted.flip();
+			tips.flip();
+			parentStart.flip();
+			parents.flip();
+			times.flip();
+			CommitGraph graph = new CommitGraph(ids, sorted, tips, parentStart, parents, times, -1);
+			return graph.withHead(graph.indexOf(head));
+		}
+	}
+
+	/**
+	 * Walks the graph depth first from the head, first parents first, and
+	 * cuts a cluster every time the walk reaches a visited commit. Clusters
+	 * of the head, of single commits and of more than {@value #MAX_CLUSTER}
+	 * commits are left out. Octopus merges end the walk of their branch.
+	 * @return the cluster of every commit, -1 for none
+	 */
+	private int[] cluster() {
+		int[] result = new int[size];
+		Arrays.fill(result, -1);
+		boolean[] visited = new boolean[size];
+		int[] stack = new int[16];
+		int depth = 0;
+		int[] cluster = new int[16];
+		int members = 0;
+		boolean headCluster = true;
+		int clusterCount = 0;
+
+		stack[depth++] = head;
+		cluster[members++] = head;
+		while (depth > 0) {
+			int commit = stack[--depth];
+			if (commit < 0) continue;
+			if (!visited[commit]) {
+				int parentCount = getParentCount(commit);
+				if (depth + 2 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+				if (parentCount == 1) {
+					stack[depth++] = getParent(commit, 0);
+				} else if (parentCount == 2) {
+					stack[depth++] = getParent(commit, 1);
+					stack[depth++] = getParent(commit, 0);
+				}
+				visited[commit] = true;
+				if (commit != head) {
+					if (members == cluster.length) cluster = Arrays.copyOf(cluster, members * 2);
+					cluster[members++] = commit;
+				}
+			} else {
+				if (!headCluster && members > 1 && members <= MAX_CLUSTER) {
+					for (int i = 0; i < members; i++) result[cluster[i]] = clusterCount;
+					clusterCount++;
+				}
+				members = 0;
+				headCluster = false;
+			}
+		}
+		return result;
+	}
+
+	private void write(Path prefix) throws IOException {
+		int length = 5 * 4 + (ids.limit() + sorted.limit() + tips.limit() + parentStart.limit()
+				+ parents.limit() + times.limit()) * 4;
+
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(tips.limit() / ID_INTS)
+			.putInt(parents.limit());
+		for (IntBuffer ints : new IntBuffer[] {ids, sorted, tips, parentStart, parents, times}) {
+			for (int i = 0; i < ints.limit(); i++) buffer.putInt(ints.get(i));
+		}
+		buffer.flip();
+		MappedFiles.write(prefix, buffer);
+	}
+
+	private static CommitGraph map(Path file) throws IOException {
+		ByteBuffer buffer = MappedFiles.map(file);
+		if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+			throw new IOException("Unsupported commit graph " + file);
+		}
+		int size = buffer.getInt();
+		int tipCount = buffer.getInt();
+		int parentCount = buffer.getInt();
+
+		IntBuffer ids = ints(buffer, size * ID_INTS);
+		IntBuffer sorted = ints(buffer, size);
+		IntBuffer tips = ints(buffer, tipCount * ID_INTS);
+		IntBuffer parentStart = ints(buffer, size + 1);
+		IntBuffer parents = ints(buffer, parentCount);
+		IntBuffer times = ints(buffer, size);
+		return new CommitGraph(ids, sorted, tips, parentStart, parents, times, -1);
+	}
+
+	private static IntBuffer ints(ByteBuffer buffer, int count) {
+		IntBuffer ints = ((ByteBuffer) buffer.slice().limit(count * 4)).asIntBuffer();
+		buffer.position(buffer.position() + count * 4);
+		return ints;
+	}
+
+	private static void toInts(AnyObjectId id, int[] word) {
+		byte[] raw = new byte[20];
+		id.copyRawTo(raw, 0);
+		ByteBuffer.wrap(raw).asIntBuffer().get(word);
+	}
+
+	private static ObjectId idAt(IntBuffer ids, int index) {
+		ByteBuffer raw = ByteBuffer.allocate(20);
+		for (int i = 0; i < ID_INTS; i++) raw.putInt(ids.get(index * ID_INTS + i));
+		return ObjectId.fromRaw(raw.array());
+	}
+
+	private static int compare(IntBuffer ids, int index, int[] key) {
+		for (int i = 0; i < ID_INTS; i++) {
+			int cmp = Integer.compareUnsigned(ids.get(index * ID_INTS + i), key[i]);
+			if (cmp != 0) return cmp;
+		}
+		return 0;
+	}
+
+	@Override
+	public String toString() {
+		return "CommitGraph [commits=" + size + ", parents=" + parents.limit() + "]";
+	}
+
+	private static final class DenseId extends ObjectIdOwnerMap.Entry {
+		private static final long serialVersionUID = 1L;
+
+		private final int index;
+
+		private DenseId(AnyObjectId id, int index) {
+			super(id);
+			this.index = index;
+		}
+	}
+}
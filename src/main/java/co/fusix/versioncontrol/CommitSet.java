@@ -0,0 +1,119 @@
+package co.fusix.versioncontrol;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Immutable set of dense commit ids of a {@link CommitGraph}, kept as a
+ * compressed bitset: only the non-zero 64-bit words are stored, with their
+ * word numbers in ascending order. Union and intersection merge the two word
+ * lists and combine matching words at once.
+ */
+final class CommitSet {
+
+	static final CommitSet EMPTY = new CommitSet(new int[0], new long[0], 0);
+
+	private final int[] keys;
+	private final long[] words;
+	private final int count;
+
+	private CommitSet(int[] keys, long[] words, int count) {
+		this.keys = keys;
+		this.words = words;
+		this.count = count;
+	}
+
+	/**
+	 * @param ids dense ids in any order, repeated ids are kept once and
+	 * negative ones are left out. The array is sorted in place.
+	 * @param length the number of ids to read from the array
+	 */
+	static CommitSet of(int[] ids, int length) {
+		Arrays.sort(ids, 0, length);
+		int from = 0;
+		while (from < length && ids[from] < 0) from++;
+		int[] keys = new int[length - from];
+		long[] words = new long[length - from];
+		int count = 0;
+		for (int i = from; i < length; i++) {
+			int key = ids[i] >>> 6;
+			if (count == 0 || keys[count - 1] != key) {
+				keys[count] = key;
+				count++;
+			}
+			words[count - 1] |= 1L << ids[i];
+		}
+		return trimmed(keys, words, count);
+	}
+
+	int size() {
+		int size = 0;
+		for (int i = 0; i < count; i++) size += Long.bitCount(words[i]);
+		return size;
+	}
+
+	CommitSet or(CommitSet other) {
+		if (other.count == 0) return this;
+		if (count == 0) return other;
+		int[] resultKeys = new int[count + other.count];
+		long[] resultWords = new long[count + other.count];
+		int i = 0;
+		int j = 0;
+		int n = 0;
+		while (i < count || j < other.count) {
+			if (j == other.count || i < count && keys[i] < other.keys[j]) {
+				resultKeys[n] = keys[i];
+				resultWords[n++] = words[i++];
+			} else if (i == count || other.keys[j] < keys[i]) {
+				resultKeys[n] = other.keys[j];
+				resultWords[n++] = other.words[j++];
+			} else {
+				resultKeys[n] = keys[i];
+				resultWords[n++] = words[i++] | other.words[j++];
+			}
+		}
+		return trimmed(resultKeys, resultWords, n);
+	}
+
+	CommitSet and(CommitSet other) {
+		if (count == 0 || other.count == 0) return EMPTY;
+		int[] resultKeys = new int[count];
+		long[] resultWords = new long[count];
+		int j = 0;
+		int n = 0;
+		for (int i = 0; i < count; i++) {
+			while (j < other.count && other.keys[j] < keys[i]) j++;
+			long word = j < other.count && other.keys[j] == keys[i] ? words[i] & other.words[j] : 0;
+			if (word != 0) {
+				resultKeys[n] = keys[i];
+				resultWords[n++] = word;
+			}
+		}
+		return trimmed(resultKeys, resultWords, n);
+	}
+
+	/**
+	 * @return the ids in ascending order
+	 */
+	IntStream stream() {
+		int[] ids = new int[size()];
+		int n = 0;
+		for (int i = 0; i < count; i++) {
+			for (long word = words[i]; word != 0; word &= word - 1) {
+				ids[n++] = keys[i] << 6 | Long.numberOfTrailingZeros(word);
+			}
+		}
+		return IntStream.of(ids);
+	}
+
+	private static CommitSet trimmed(int[] keys, long[] words, int count) {
+		if (count == 0) return EMPTY;
+		if (count == keys.length) return new CommitSet(keys, words, count);
+		return new CommitSet(Arrays.copyOf(keys, count), Arrays.copyOf(words, count), count);
+	}
+
+	@Override
+	public String toString() {
+		return "CommitSet [size=" + size() + ", words=" + count + "]";
+	}
+}
@@ -0,0 +1,284 @@
+package co.fusix.versioncontrol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+
+import co.fusix.corpus.Source;
+import co.fusix.utils.Utils;
+
+/**
+ * Per-repository store of commit flags. The message of every commit reachable
+ * from the indexed revision is analyzed once; its functional flag and parent
+ * count are kept in primitive arrays sorted by commit id. When a file is given
+ * the arrays are persisted and memory-mapped on the next open, and only commits
+ * that are not yet in the store are analyzed.
+ */
+final class CommitStore {
+
+	private static final int MAGIC = 0x46584353; // FXCS
+	private static final int VERSION = 2;
+	private static final int ID_INTS = 5;
+	private static final int FUNCTIONAL = 0x80;
+	private static final int PARENTS = 0x7f;
+	private static final int MAX_TIPS = 16;
+
+	private final IntBuffer ids;
+	private final IntBuffer tips;
+	private final ByteBuffer flags;
+	private final int size;
+
+	private CommitStore(IntBuffer ids, IntBuffer tips, ByteBuffer flags) {
+		this.ids = ids;
+		this.tips = tips;
+		this.flags = flags;
+		this.size = flags.limit();
+	}
+
+	/**
+	 * Opens the store persisted under {@code prefix}, or builds it, and adds the
+	 * commits reachable from {@code head} that it does not cover yet.
+	 * @param prefix name of the file without its generation, see
+	 * {@link MappedFiles}; null for a store that is kept in memory only
+	 */
+	static CommitStore open(Repository repository, AnyObjectId head, Path prefix) throws IOException {
+		CommitStore store = null;
+		Path file = prefix == null ? null : MappedFiles.latest(prefix);
+		if (file != null) {
+			try {
+				store = map(file);
+			} catch (IOException | RuntimeException e) {
+				e.printStackTrace(); // unreadable, rebuild
+			}
+		}
+		if (store != null && store.indexOf(head) >= 0) return store;
+
+		CommitStore extended = extend(repository, head, store);
+		if (prefix != null) extended.write(prefix);
+		return extended;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return the position of the commit, or -1 when it is not in the store
+	 */
+	int indexOf(AnyObjectId id) {
+		int[] key = new int[ID_INTS];
+		toInts(id, key);
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = compare(ids, mid, key);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	boolean isFunctional(int index) {
+		return (flags.get(index) & FUNCTIONAL) != 0;
+	}
+
+	int getParentCount(int index) {
+		return flags.get(index) & PARENTS;
+	}
+
+	/**
+	 * @return a filter that accepts the commits kept by filtered builds:
+	 * functional, non-merge commits
+	 */
+	RevFilter functionalFilter() {
+		return new FunctionalCommitFilter(this);
+	}
+
+	/**
+	 * Same as {@link #functionalFilter()} for a single commit. Commits not in
+	 * the store are analyzed on the fly.
+	 */
+	boolean accept(RevCommit commit) {
+		int index = indexOf(commit);
+		if (index < 0) {
+			return commit.getParentCount() == 1 && GitVersionControl.FunctionalCommit.test(
+					Utils.preprocessString(commit.getFullMessage(), analyzer()));
+		}
+		return getParentCount(index) == 1 && isFunctional(index);
+	}
+
+	private static Analyzer analyzer() {
+		try {
+			return Utils.getAnalyzer(Source.VCS);
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot instantiate commit analyzer.", e);
+		}
+	}
+
+	private static CommitStore extend(Repository repository, AnyObjectId head, CommitStore previous)
+			throws IOException
+	{
+		List<Entry> entries = new ArrayList<>();
+		Analyzer analyzer = analyzer();
+		try (RevWalk revWalk = new RevWalk(repository)) {
+			revWalk.setRetainBody(false);
+			revWalk.markStart(revWalk.parseCommit(head));
+			if (previous != null) {
+				for (int i = 0; i < previous.tips.limit() / ID_INTS; i++) {
+					try {
+						revWalk.markUninteresting(revWalk.parseCommit(idAt(previous.tips, i)));
+					} catch (MissingObjectException e) {
+						// rewritten history, walk everything
+					}
+				}
+			}
+			for (RevCommit commit = revWalk.next(); commit != null; commit = revWalk.next()) {
+				if (previous != null && previous.indexOf(commit) >= 0) continue;
+				revWalk.parseBody(commit);
+				List<String> commitTokens = Utils.preprocessString(commit.getFullMessage(), analyzer);
+				commit.disposeBody();
+				int flag = Math.min(commit.getParentCount(), PARENTS);
+				if (GitVersionControl.FunctionalCommit.test(commitTokens)) flag |= FUNCTIONAL;
+				entries.add(new Entry(commit.copy(), (byte) flag));
+			}
+		}
+
+		if (previous != null) {
+			for (int i = 0; i < previous.size; i++) {
+				entries.add(new Entry(idAt(previous.ids, i), previous.flags.get(i)));
+			}
+		}
+		entries.sort((a, b) -> a.id.compareTo(b.id));
+
+		IntBuffer ids = IntBuffer.allocate(entries.size() * ID_INTS);
+		ByteBuffer flags = ByteBuffer.allocate(entries.size());
+		int[] word = new int[ID_INTS];
+		for (Entry entry : entries) {
+			toInts(entry.id, word);
+			ids.put(word);
+			flags.put(entry.flag);
+		}
+
+		// remember the walked tips so the next extension only visits new commits
+		int previousTips = previous == null ? 0 : Math.min(previous.tips.limit() / ID_INTS, MAX_TIPS - 1);
+		IntBuffer tips = IntBuffer.allocate((previousTips + 1) * ID_INTS);
+		toInts(head, word);
+		tips.put(word);
+		for (int i = 0; i < previousTips * ID_INTS; i++) {
+			tips.put(previous.tips.get(i));
+		}
+
+		ids.flip();
+		flags.flip();
+		tips.flip();
+		return new CommitStore(ids, tips, flags);
+	}
+
+	private void write(Path prefix) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(4 * 4 + (ids.limit() + tips.limit()) * 4 + size);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(tips.limit() / ID_INTS);
+		for (IntBuffer ints : new IntBuffer[] {ids, tips}) {
+			for (int i = 0; i < ints.limit(); i++) buffer.putInt(ints.get(i));
+		}
+		for (int i = 0; i < size; i++) buffer.put(flags.get(i));
+		buffer.flip();
+		MappedFiles.write(prefix, buffer);
+	}
+
+	private static CommitStore map(Path file) throws IOException {
+		ByteBuffer buffer = MappedFiles.map(file);
+		if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+			throw new IOException("Unsupported commit store " + file);
+		}
+		int size = buffer.getInt();
+		int tipCount = buffer.getInt();
+
+		IntBuffer ids = ints(buffer, size * ID_INTS);
+		IntBuffer tips = ints(buffer, tipCount * ID_INTS);
+		ByteBuffer flags = (ByteBuffer) buffer.slice().limit(size);
+		return new CommitStore(ids, tips, flags);
+	}
+
+	private static IntBuffer ints(ByteBuffer buffer, int count) {
+		IntBuffer ints = ((ByteBuffer) buffer.slice().limit(count * 4)).asIntBuffer();
+		buffer.position(buffer.position() + count * 4);
+		return ints;
+	}
+
+	private static void toInts(AnyObjectId id, int[] word) {
+		byte[] raw = new byte[20];
+		id.copyRawTo(raw, 0);
+		ByteBuffer.wrap(raw).asIntBuffer().get(word);
+	}
+
+	private static ObjectId idAt(IntBuffer ids, int index) {
+		ByteBuffer raw = ByteBuffer.allocate(20);
+		for (int i = 0; i < ID_INTS; i++) raw.putInt(ids.get(index * ID_INTS + i));
+		return ObjectId.fromRaw(raw.array());
+	}
+
+	private static int compare(IntBuffer ids, int index, int[] key) {
+		for (int i = 0; i < ID_INTS; i++) {
+			int cmp = Integer.compareUnsigned(ids.get(index * ID_INTS + i), key[i]);
+			if (cmp != 0) return cmp;
+		}
+		return 0;
+	}
+
+	@Override
+	public String toString() {
+		return "CommitStore [commits=" + size + ", tips=" + tips.limit() / ID_INTS + "]";
+	}
+
+	private static final class Entry {
+		private final ObjectId id;
+		private final byte flag;
+
+		private Entry(ObjectId id, byte flag) {
+			this.id = id;
+			this.flag = flag;
+		}
+	}
+
+	private static final class FunctionalCommitFilter extends RevFilter {
+
+		private final CommitStore store;
+
+		private FunctionalCommitFilter(CommitStore store) {
+			this.store = store;
+		}
+
+		@Override
+		public boolean include(RevWalk walker, RevCommit commit) {
+			return store.accept(commit);
+		}
+
+		@Override
+		public RevFilter clone() {
+			return this;
+		}
+
+		@Override
+		public boolean requiresCommitBody() {
+			return false;
+		}
+	}
+}
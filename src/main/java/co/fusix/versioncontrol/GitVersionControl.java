@@ -1,90 +1,164 @@
 package co.fusix.versioncontrol;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.time.Duration;
-import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.Stack;
-import java.util.function.Predicate;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
 
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.blame.BlameResult;
 import org.eclipse.jgit.diff.DiffConfig;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
 import org.eclipse.jgit.diff.DiffFormatter;
-import org.eclipse.jgit.errors.IncorrectObjectTypeException;
-import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.lib.AnyObjectId;
 import org.eclipse.jgit.lib.Config;
-import org.eclipse.jgit.revwalk.FollowFilter;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
 import org.eclipse.jgit.treewalk.filter.PathSuffixFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
 import org.eclipse.jgit.util.io.DisabledOutputStream;
 
 import co.fusix.component.Component;
 import co.fusix.corpus.Granularity;
-import co.fusix.corpus.Source;
 import co.fusix.exceptions.VersionControlException;
-import co.fusix.utils.Utils;
+import co.fusix.metrics.BuildListener;
+import co.fusix.metrics.BuildListener.Stage;
 
 public final class GitVersionControl implements VersionControl<BlobWalk> {
 
-	private static final long COMMIT_PERIOD_DAYS = 10;
 	private static final String WHITESPACE = " ";
 	private static final String JAVA_SUFFIX = "java";
+	private static final String COMMIT_STORE_FILE = "commits";
+	private static final String COMMIT_GRAPH_FILE = "graph";
+	private static final String ANNOTATION_CACHE_DIR = "annotations";
 	private final String revision;
 	private final Path srcDir;
 	private final AnyObjectId objectId;
 	private final Git git;
 	private final boolean filtered;
-	private Map<String, Set<RevCommit>> clusterLookup = new HashMap<>();
 	private final DiffConfig diffConfig;
-	private static Map<String, Set<RevCommit>> artefacts = new HashMap<>();
+	private HistoryIndex history;
+	private HistoryIndex functionalHistory;
+	private CommitStore commitStore;
+	private CommitGraph commitGraph;
+	private boolean clustered;
+	private AtomicReferenceArray<RevCommit> denseCommits;
+	private CommitSet functionalCommits;
+	private Map<String, ObjectId> lastChanges;
+	private final Path cacheDir;
+	private final int threads;
+	private ExecutorService blamePool;
+	private final AnnotationCache annotationCache;
+	private final boolean linkCommits;
+	private final BuildListener listener;
 	
 	public GitVersionControl(final Path srcDir, final String revision, boolean filtered) {
-		this.srcDir = srcDir;
-		this.revision = revision;
-		this.filtered = filtered;
+		this(builder(srcDir, revision).filtered(filtered));
+	}
+	
+	private GitVersionControl(Builder builder) {
+		this.srcDir = builder.srcDir;
+		this.cacheDir = builder.cacheDir;
+		this.threads = builder.threads;
+		this.revision = builder.revision;
+		this.filtered = builder.filtered;
+		this.linkCommits = builder.linkCommits;
+		this.listener = builder.listener;
 		try {
 			git = Git.open(this.srcDir.toFile());
 			objectId = git.getRepository().resolve(revision);
+			RepositoryCaches.configure(git.getRepository(), threads);
+			annotationCache = builder.annotationCacheSize > 0 
+					? AnnotationCache.open(cacheDir.resolve(ANNOTATION_CACHE_DIR), builder.annotationCacheSize) : null;
 			Config config = new Config(git.getRepository().getConfig());
 		    config.setString("diff", null, "renames", "copies");
 		    config.setInt("diff", null, "renameLimit", Integer.MAX_VALUE);
 		    diffConfig = config.get(DiffConfig.KEY);
-
-			try(RevWalk rw = new RevWalk(git.getRepository())){
-				findBranches(rw.parseCommit(objectId), rw);
-				System.out.println("Clusters # " + clusterLookup.values().size());
-				//clusterLookup.values().forEach(System.out::println);
-			}
-
-
 		} catch (IOException e) {
 			throw new IllegalStateException("Cannot construct version control object wrapper.");
 		}
 	}
 	
+	public static Builder builder(final Path srcDir, final String revision) {
+		return new Builder(srcDir, revision);
+	}
+	
+	public static final class Builder {
+		
+		private final Path srcDir;
+		private final String revision;
+		private boolean filtered = false;
+		private Path cacheDir = null;
+		private int threads = 1;
+		private long annotationCacheSize = 0;
+		private boolean linkCommits = false;
+		private BuildListener listener = BuildListener.NONE;
+		
+		private Builder(final Path srcDir, final String revision) {
+			this.srcDir = srcDir;
+			this.revision = revision;
+		}
+		
+		public Builder filtered(boolean filtered) {this.filtered = filtered; return this;}
+		/** Directory for persistent caches, none are kept on disk if null. */
+		public Builder cacheDir(Path cacheDir) {this.cacheDir = cacheDir; return this;}
+		/** Number of files blamed concurrently. */
+		public Builder threads(int threads) {this.threads = threads; return this;}
+		/** Size limit in bytes of the annotation cache, 0 disables it. */
+		public Builder annotationCacheSize(long annotationCacheSize) {this.annotationCacheSize = annotationCacheSize; return this;}
+		/** Annotate components with commit ids instead of commit messages. */
+		public Builder linkCommits(boolean linkCommits) {this.linkCommits = linkCommits; return this;}
+		/** Receives blame, history, filter and content timings. */
+		public Builder listener(BuildListener listener) {this.listener = listener; return this;}
+		
+		public GitVersionControl build() {
+			if (threads < 1) throw new IllegalArgumentException("Thread count must be positive.");
+			if (listener == null) throw new NullPointerException("Listener cannot be null.");
+			if (annotationCacheSize < 0) throw new IllegalArgumentException("Cache size cannot be negative.");
+			if (annotationCacheSize > 0 && cacheDir == null) {
+				throw new IllegalStateException("Annotation cache requires a cache directory.");
+			}
+			return new GitVersionControl(this);
+		}
+	}
+	
+	
+	@Override
+	public List<String> report() {
+		return annotationCache == null ? new ArrayList<>() : annotationCache.report();
+	}
 	
 	@Override
 	public void close() throws IOException {
+		synchronized (this) {
+			if (blamePool != null) blamePool.shutdownNow();
+		}
+		if (annotationCache != null) annotationCache.evict();
 		if (git != null) git.close();
 	}
 
@@ -92,201 +166,415 @@ public final class GitVersionControl implements VersionControl<BlobWalk> {
 	public void annotateAll(Set<Component> components, Recentness recentness, 
 			Granularity granularity) throws VersionControlException
 	{	
-		if (granularity != Granularity.FILE && granularity != Granularity.METHOD) {
-			throw new IllegalArgumentException("Granularity level not supported.");
-		}
-		
-		try (RevWalk revWalk = new RevWalk(git.getRepository())){
+		annotateAll(Collections.singletonList(new Annotation(components, recentness, granularity, filtered, linkCommits)));
+	}
+	
+	@Override
+	public void annotateAll(List<Annotation> annotations) throws VersionControlException {
+		try (RevWalk revWalk = new RevWalk(git.getRepository())) {
+			List<Map<String, AnnotationCache.Bucket>> buckets = new ArrayList<>();
+			Map<Component, CommitSet> cached = new HashMap<>();
+			Set<Component> pending = new LinkedHashSet<>();
+			for (Annotation annotation : annotations) {
+				Map<String, AnnotationCache.Bucket> annotationBuckets = buckets(annotation, revWalk);
+				buckets.add(annotationBuckets);
+				boolean uncached = false;
+				for (Component component : annotation.getComponents()) {
+					AnnotationCache.Bucket bucket = annotationBuckets.get(component.getFilePath());
+					List<RevCommit> cachedCommits = bucket == null ? null 
+							: bucket.get(component.getStartLine(), component.getEndLine(), revWalk);
+					CommitSet commits = cachedCommits == null ? null : commitSet(cachedCommits);
+					if (commits != null) {
+						cached.put(component, commits);
+						continue;
+					}
+					uncached = true;
+					if (annotation.getRecentness() != Recentness.ALL) pending.add(component);
+				}
+				if (uncached && annotation.getRecentness() != Recentness.RECENT 
+						&& annotation.getGranularity() == Granularity.METHOD) {
+					// built before any FILE annotation needs it, which would build it without lines
+					history(true, annotation.isFiltered());
+				}
+			}
 			
-			String filePath = null;
-			BlameResult br = null;
-			for (Component component : components) {
-				if (recentness != Recentness.ALL){
-					if (filePath == null || !filePath.equals(component.getFilePath())) {
-						br = git.blame()
-								.setStartCommit(objectId)
-								.setFollowFileRenames(true)
-								.setFilePath(component.getFilePath())
-								.call();
-						filePath = component.getFilePath();
+			Map<String, Future<BlameResult>> blames = blameAll(pending);
+			for (int i = 0; i < annotations.size(); i++) {
+				Annotation annotation = annotations.get(i);
+				for (Component component : annotation.getComponents()) {
+					CommitSet commits = cached.get(component);
+					if (commits == null) {
+						BlameResult br = annotation.getRecentness() != Recentness.ALL 
+								? blameResult(blames.get(component.getFilePath())) : null;
+						commits = annotate(component, annotation, br);
+						AnnotationCache.Bucket bucket = buckets.get(i).get(component.getFilePath());
+						if (bucket != null) bucket.put(component.getStartLine(), component.getEndLine(), commits(commits));
+					}
+					long start = System.nanoTime();
+					if (annotation.isLinkCommits()) {
+						component.addCommits(commits(commits).stream().map(RevCommit::name).sorted().collect(Collectors.toList()));
+					} else {
+						component.addHistory(getContent(commits));
 					}
+					listener.file(Stage.CONTENT, component.getFilePath(), System.nanoTime() - start, commits.size());
+				}
+			}
+			
+			for (Map<String, AnnotationCache.Bucket> annotationBuckets : buckets) {
+				for (AnnotationCache.Bucket bucket : annotationBuckets.values()) {
+					bucket.save();
 				}
-				
-				System.out.println(component.getPath());
-				Set<RevCommit> commits = new HashSet<>();
-				if (recentness == Recentness.RECENT) {
-					commits = getRecentCommitsComponent(component, br);
-				} else if (recentness == Recentness.ALL) {
-					commits = getAllCommitsComponent(revWalk, component, granularity);	
-				}else if (recentness == Recentness.RECENT_CR){	    	
-			    	commits = getCRRecent(component, revWalk, granularity, br);
-			    }
-				
-				component.addContent(getContent(commits));
 			}
 		} catch (IOException | GitAPIException e) {
 			e.printStackTrace();
 			throw new VersionControlException();
 		}
 	}
+	
+	private CommitSet annotate(Component component, Annotation annotation, BlameResult br) 
+			throws IOException, GitAPIException 
+	{
+		CommitSet commits = CommitSet.EMPTY;
+		Recentness recentness = annotation.getRecentness();
+		if (recentness == Recentness.RECENT) {
+			commits = getRecentCommitsComponent(component, br);
+			commits = removeNonFunctional(component, commits, annotation.isFiltered());
+		} else if (recentness == Recentness.ALL) {
+			commits = getAllCommitsComponent(component, annotation.getGranularity(), annotation.isFiltered());	
+		}else if (recentness == Recentness.RECENT_CR){	    	
+	    	commits = getCRRecent(component, annotation.getGranularity(), br, annotation.isFiltered());
+	    	commits = removeNonFunctional(component, commits, annotation.isFiltered());
+	    }
+		return commits;
+	}
+	
+	/**
+	 * Loads the cached annotations of every distinct file of the components,
+	 * none if the cache is disabled.
+	 */
+	private Map<String, AnnotationCache.Bucket> buckets(Annotation annotation, RevWalk revWalk) throws IOException {
+		Map<String, AnnotationCache.Bucket> buckets = new HashMap<>();
+		if (annotationCache == null) return buckets;
+		RevTree tree = revWalk.parseCommit(objectId).getTree();
+		for (Component component : annotation.getComponents()) {
+			String filePath = component.getFilePath();
+			if (buckets.containsKey(filePath)) continue;
+			try (TreeWalk treeWalk = TreeWalk.forPath(git.getRepository(), filePath, tree)) {
+				if (treeWalk == null) continue;
+				// blame and history change with the commits touching the file, branch clusters with any commit
+				AnyObjectId history = annotation.getRecentness() == Recentness.RECENT_CR 
+						? objectId : lastChanges().get(filePath);
+				if (history == null) continue;
+				buckets.put(filePath, annotationCache.bucket(treeWalk.getObjectId(0), filePath, history,
+						annotation.getRecentness(), annotation.getGranularity(), annotation.isFiltered()));
+			}
+		}
+		return buckets;
+	}
+	
+	/**
+	 * @return for every Java file of the revision, the first commit, newest 
+	 * first, whose version of the file differs from that of one of its 
+	 * parents. The file has the same blame and history at every revision 
+	 * where this commit is the same.
+	 */
+	private synchronized Map<String, ObjectId> lastChanges() throws IOException {
+		if (lastChanges == null) {
+			Map<String, ObjectId> changes = new HashMap<>();
+			try (RevWalk revWalk = new RevWalk(git.getRepository());
+					TreeWalk treeWalk = new TreeWalk(git.getRepository())) 
+			{
+				RevCommit head = revWalk.parseCommit(objectId);
+				Set<String> remaining = new HashSet<>();
+				treeWalk.addTree(head.getTree());
+				treeWalk.setRecursive(true);
+				treeWalk.setFilter(PathSuffixFilter.create(JAVA_SUFFIX));
+				while (treeWalk.next()) {
+					remaining.add(treeWalk.getPathString());
+				}
+				
+				treeWalk.setFilter(AndTreeFilter.create(PathSuffixFilter.create(JAVA_SUFFIX), TreeFilter.ANY_DIFF));
+				revWalk.setRetainBody(false);
+				revWalk.markStart(head);
+				for (RevCommit commit = revWalk.next(); commit != null && !remaining.isEmpty(); commit = revWalk.next()) {
+					treeWalk.reset();
+					for (RevCommit parent : commit.getParents()) {
+						treeWalk.addTree(revWalk.parseCommit(parent).getTree());
+					}
+					treeWalk.addTree(commit.getTree());
+					while (treeWalk.next()) {
+						if (remaining.remove(treeWalk.getPathString())) changes.put(treeWalk.getPathString(), commit.copy());
+					}
+				}
+			}
+			lastChanges = changes;
+		}
+		return lastChanges;
+	}
+	
+	/**
+	 * Starts blame for every distinct file of the components. With more than
+	 * one thread the files are blamed concurrently, each blame walking the
+	 * history with its own reader.
+	 */
+	private Map<String, Future<BlameResult>> blameAll(Set<Component> components) throws GitAPIException {
+		Map<String, Future<BlameResult>> blames = new LinkedHashMap<>();
+		List<String> filePaths = components.stream()
+				.map(Component::getFilePath).distinct().collect(Collectors.toList());
+		ExecutorService pool = filePaths.size() > 1 ? blamePool() : null;
+		for (String filePath : filePaths) {
+			if (pool == null) {
+				blames.put(filePath, CompletableFuture.completedFuture(blame(filePath)));
+			} else {
+				blames.put(filePath, pool.submit(() -> blame(filePath)));
+			}
+		}
+		return blames;
+	}
+	
+	private BlameResult blame(String filePath) throws GitAPIException {
+		long start = System.nanoTime();
+		BlameResult result = git.blame()
+				.setStartCommit(objectId)
+				.setFollowFileRenames(true)
+				.setFilePath(filePath)
+				.call();
+		listener.file(Stage.BLAME, filePath, System.nanoTime() - start, 
+				result == null ? 0 : result.getResultContents().size());
+		return result;
+	}
+	
+	private static BlameResult blameResult(Future<BlameResult> blame) throws IOException, GitAPIException {
+		try {
+			return blame.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof GitAPIException) throw (GitAPIException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+	
+	private synchronized ExecutorService blamePool() {
+		if (threads == 1) return null;
+		if (blamePool == null) {
+			blamePool = Executors.newFixedThreadPool(threads, r -> {
+				Thread thread = new Thread(r, "blame");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return blamePool;
+	}
 
 	
-	private String getContent(Set<RevCommit> sc){
-		if (filtered) {
-			Predicate<RevCommit> mc = new FunctionalCommit();
-			return String.join(WHITESPACE, sc.parallelStream()
-					.filter(mc)
-					.filter(x -> x.getParentCount() == 1)
-					.map(RevCommit::getFullMessage).collect(Collectors.toList()));
-		} else {
-			return String.join(WHITESPACE, sc.parallelStream()
-				.map(RevCommit::getFullMessage).collect(Collectors.toList()));
+	@Override
+	public Map<String, String> getMessages(Set<String> commitIds) throws VersionControlException {
+		Map<String, String> messages = new HashMap<>();
+		try (RevWalk revWalk = new RevWalk(git.getRepository())) {
+			for (String commitId : commitIds) {
+				messages.put(commitId, revWalk.parseCommit(ObjectId.fromString(commitId)).getFullMessage());
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new VersionControlException();
 		}
-		
+		return messages;
 	}
 	
+	private String getContent(CommitSet sc){
+		return String.join(WHITESPACE, sc.stream().parallel()
+			.mapToObj(i -> denseCommits.get(i).getFullMessage()).collect(Collectors.toList()));
+	}
 	
-	private Set<RevCommit> getCRRecent(Component component, RevWalk revWalk, Granularity granularity, BlameResult br) throws MissingObjectException, IncorrectObjectTypeException, IOException, GitAPIException{
-		Set<RevCommit> commits = new HashSet<>();
-		List<RevCommit> tempR = getRecentCommitsComponent(component, br)
-					.stream()
-					.sorted(Comparator.comparing(x -> ((RevCommit) x).getAuthorIdent().getWhen()).reversed())
-					.collect(Collectors.toList());
-		
-		commits.addAll(tempR);
-		
-		List<RevCommit> tempA = null;
-		Set<RevCommit> tempAset = null;
+	private CommitSet removeNonFunctional(Component component, CommitSet commits, boolean filtered) throws IOException {
+		if (!filtered) return commits;
+		CommitSet functional = functionalCommits();
+		long start = System.nanoTime();
+		CommitSet result = commits.and(functional);
+		listener.file(Stage.FILTER, component.getFilePath(), System.nanoTime() - start, commits.size() - result.size());
+		return result;
+	}
+	
+	/**
+	 * @return the commits kept by filtered builds, the same as
+	 * {@link CommitStore#functionalFilter()} accepts
+	 */
+	private synchronized CommitSet functionalCommits() throws IOException {
+		if (functionalCommits == null) {
+			CommitStore store = commitStore();
+			CommitGraph graph = commitGraph();
+			int[] ids = new int[graph.size()];
+			int count = 0;
+			for (int i = 0; i < graph.size(); i++) {
+				int index = store.indexOf(graph.getId(i));
+				if (index >= 0 && store.getParentCount(index) == 1 && store.isFunctional(index)) ids[count++] = i;
+			}
+			functionalCommits = CommitSet.of(ids, count);
+		}
+		return functionalCommits;
+	}
+	
+	private synchronized CommitStore commitStore() throws IOException {
+		if (commitStore == null) {
+			long start = System.nanoTime();
+			commitStore = CommitStore.open(git.getRepository(), objectId, 
+					cacheDir == null ? null : cacheFile(COMMIT_STORE_FILE));
+			listener.shared(Stage.FILTER, System.nanoTime() - start, commitStore.size());
+		}
+		return commitStore;
+	}
+	
+	/**
+	 * @return the prefix of a file in the cache directory named after the 
+	 * repository, so repositories sharing the directory do not read each 
+	 * other's files
+	 */
+	private Path cacheFile(String name) throws IOException {
+		byte[] directory = git.getRepository().getDirectory().getCanonicalPath().getBytes(StandardCharsets.UTF_8);
+		String key = ObjectId.fromRaw(Constants.newMessageDigest().digest(directory)).abbreviate(16).name();
+		return cacheDir.resolve(name + "-" + key);
+	}
+	
+	private synchronized CommitGraph commitGraph() throws IOException {
+		if (commitGraph == null) {
+			commitGraph = CommitGraph.open(git.getRepository(), objectId, 
+					cacheDir == null ? null : cacheFile(COMMIT_GRAPH_FILE));
+			denseCommits = new AtomicReferenceArray<>(commitGraph.size());
+		}
+		return commitGraph;
+	}
+	
+	/**
+	 * @return the commit graph, its branch clusters computed on the first call
+	 */
+	private synchronized CommitGraph clusteredGraph() throws IOException {
+		CommitGraph graph = commitGraph();
+		if (!clustered) {
+			listener.message("Clusters # " + graph.getClusteredCount());
+			clustered = true;
+		}
+		return graph;
+	}
+	
+	/**
+	 * @return the dense id of a commit, or -1 when it is not reachable from 
+	 * the revision. The first commit object seen for an id is kept to read 
+	 * messages from.
+	 */
+	private int denseId(CommitGraph graph, RevCommit commit) {
+		int index = graph.indexOf(commit);
+		if (index >= 0 && denseCommits.get(index) == null) denseCommits.compareAndSet(index, null, commit);
+		return index;
+	}
+	
+	/**
+	 * @return the set of the commits, or null when one of them is not 
+	 * reachable from the revision
+	 */
+	private CommitSet commitSet(List<RevCommit> commits) throws IOException {
+		CommitGraph graph = commitGraph();
+		int[] ids = new int[commits.size()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = denseId(graph, commits.get(i));
+			if (ids[i] < 0) return null;
+		}
+		return CommitSet.of(ids, ids.length);
+	}
+	
+	private List<RevCommit> commits(CommitSet commits) {
+		return commits.stream().mapToObj(denseCommits::get).collect(Collectors.toList());
+	}
+	
+	
+	private CommitSet getCRRecent(Component component, Granularity granularity, BlameResult br, boolean filtered) 
+			throws IOException, GitAPIException{
+		CommitGraph graph = clusteredGraph();
+		CommitSet recent = getRecentCommitsComponent(component, br);
+		CommitSet all;
 		try{
-			tempAset = getAllCommitsComponent(revWalk, component, granularity);
-			tempA = tempAset
-				.stream()
-				.sorted(Comparator.comparing(x -> ((RevCommit) x).getAuthorIdent().getWhen()).reversed())
-				.collect(Collectors.toList());
+			all = getAllCommitsComponent(component, granularity, filtered);
 		} catch (NullPointerException npe){
 			npe.printStackTrace();
-			tempAset = new HashSet<>();
-			tempA = new ArrayList<>();
+			all = CommitSet.EMPTY;
 		}
 		
-		for (RevCommit rc : tempR){
-			if (clusterLookup.containsKey(rc.name())){
-	    		for (RevCommit c : clusterLookup.get(rc.name())){
-	    			if (tempAset.contains(c)){
-	    				commits.add(c);
-	    			}
-	    		}
-	    		continue;
-			}
-			
-		/*	Iterator<RevCommit> rcIter = tempA.iterator();
-			while(rcIter.hasNext()){
-				RevCommit ra = rcIter.next();
-				Instant rci = rc.getAuthorIdent().getWhen().toInstant();
-				Instant rca = ra.getAuthorIdent().getWhen().toInstant();
-				if (!rc.name().equals(ra.name()) 
-						&& rc.getAuthorIdent().getName().equals(ra.getAuthorIdent().getName()) 
-						&& Duration.between(rci,  rca).abs().toDays() <= COMMIT_PERIOD_DAYS){
-					commits.add(ra);
-					rc = ra;
-				} else if (rc.name().equals(ra.name()) || rci.isBefore(rca)){
-					continue;
-				} else {
-					break;
-				}
-			}*/
-		}
-		return commits;
+		// a recent commit on a merged branch brings the other commits of the branch
+		CommitSet clusters = recent.stream().map(graph::getCluster).filter(c -> c >= 0).distinct()
+				.mapToObj(graph::getClusterCommits).reduce(CommitSet.EMPTY, CommitSet::or);
+		return recent.or(all.and(clusters));
 	}
 
-	private Set<RevCommit> getRecentCommitsComponent(Component component, BlameResult blame) throws GitAPIException{
-		Set<RevCommit> result = new HashSet<>();
+	private CommitSet getRecentCommitsComponent(Component component, BlameResult blame) throws IOException{
 		if (blame == null) throw new NullPointerException(this.toString() + component);
 		
+		CommitGraph graph = commitGraph();
 		int start = component.getStartLine() == -1 ? 1 : component.getStartLine();
 		int end = component.getEndLine() == -1 ? blame.getResultContents().size() : component.getEndLine();
+		int[] ids = new int[Math.max(end - start + 1, 0)];
+		RevCommit previous = null;
+		int id = -1;
 		for (int i = start; i <= end; i++) {
-			result.add(blame.getSourceCommit(i - 1));
+			RevCommit commit = blame.getSourceCommit(i - 1);
+			if (commit != previous) {
+				// runs of lines mostly come from the same commit
+				id = denseId(graph, commit);
+				previous = commit;
+			}
+			ids[i - start] = id;
 		}
-		return result;
+		return CommitSet.of(ids, ids.length);
 	}
 	
-	private Set<RevCommit> getAllCommitsComponent(RevWalk revWalk, Component component, Granularity granularity) throws MissingObjectException, IncorrectObjectTypeException, IOException{
-
-		//if (artefacts.containsKey(component.getFilePath())) return artefacts.get(component.getFilePath());
-		
-		revWalk.reset();
-	    revWalk.markStart(revWalk.parseCommit(objectId));
-	    revWalk.setTreeFilter(FollowFilter.create(component.getFilePath(), diffConfig));
-
-	    List<RevCommit> qCommits = StreamSupport.stream(
-				revWalk.spliterator(), true).collect(
-				Collectors.toList());
-	    //artefacts.put(component.getFilePath(), qCommits.stream().collect(Collectors.toSet()));
-	    if (granularity == Granularity.FILE){
-	    	return qCommits.stream().collect(Collectors.toSet());
-	    }
-	    
-	    Set<RevCommit> commits = new HashSet<>();
-/*	    OutputStream outputStream = DisabledOutputStream.INSTANCE;
-		try (DiffFormatter formatter = new DiffFormatter(outputStream)) {
-			formatter.setRepository(git.getRepository());
-			formatter.setPathFilter(FollowFilter.create(component.getFilePath(), diffConfig));
-			int startLine = component.getStartLine() - 1;
-			int endLine = component.getEndLine() - 1;
-				
-			for (int i = 0; i < qCommits.size(); i++) {
-				//special case last commit
-				if (i == qCommits.size() - 1){
-					commits.add(qCommits.get(i));
-					break;
-				}
-				List<DiffEntry> entries = formatter.scan(qCommits.get(i + 1).getTree(), qCommits.get(i).getTree()); //A vs B
-				if (entries != null && !entries.isEmpty()){
-					FileHeader fileHeader = formatter.toFileHeader(entries.get(0));
-					int tstartLine = startLine;
-					int tendLine = endLine;
-					for (Edit edit : fileHeader.toEditList()) {
-						//special case method added
-						if (edit.getType() == Type.INSERT && edit.getBeginB() <= startLine && edit.getEndB() >= endLine
-								&& edit.getLengthB() - edit.getLengthA() > 1){
-							commits.add(qCommits.get(i));
-							i = qCommits.size(); //hack to break the nested loop
-							break;
-						}
-						// check overlap of regionB and start end
-						if ((edit.getBeginB() >= startLine && edit.getBeginB() <= endLine)
-								|| (edit.getEndB() >= startLine && edit.getEndB() <= endLine)
-								|| (edit.getBeginB() <= startLine && edit.getEndB() >= endLine)) 
-						{
-							commits.add(qCommits.get(i));										
-						}
-						// adjust position
-						if (startLine > edit.getEndB()) {
-							tstartLine -= edit.getLengthB() - edit.getLengthA();
-							tendLine -= edit.getLengthB() - edit.getLengthA();
-						} else if (startLine <= edit.getBeginB() && endLine >= edit.getBeginB()) {
-							tendLine -= edit.getLengthB() - edit.getLengthA();
-						}
-					}
-					startLine = tstartLine;
-					endLine = tendLine;
-				}
-
-			}
-		}
-*/		for (String string : historicalStats(component.getStartLine(), component.getEndLine(), component.getFilePath())) {
-			try {
-				commits.add(revWalk.parseCommit(git.getRepository().resolve(string)));
-			} catch (MissingObjectException e){
-				System.err.println("Missing object: " + string + " " + component.getPath());
+	private CommitSet getAllCommitsComponent(Component component, Granularity granularity, boolean filtered) 
+			throws IOException{
+		HistoryIndex history = history(granularity == Granularity.METHOD, filtered);
+		long start = System.nanoTime();
+		CommitSet commits = granularity == Granularity.FILE 
+				? history.commits(component.getFilePath())
+				: history.commits(component.getFilePath(), component.getStartLine(), component.getEndLine());
+		listener.file(Stage.HISTORY, component.getFilePath(), System.nanoTime() - start, commits.size());
+		return commits;
+	}
+	
+	/**
+	 * @param functional whether the history is walked through functional 
+	 * commits only
+	 */
+	private synchronized HistoryIndex history(boolean trackLines, boolean functional) throws IOException {
+		HistoryIndex index = functional ? functionalHistory : history;
+		if (index == null || (trackLines && !index.tracksLines())) {
+			RevFilter functionalFilter = functional ? commitStore().functionalFilter() : null;
+			long start = System.nanoTime();
+			CommitGraph graph = commitGraph();
+			index = HistoryIndex.build(git.getRepository(), objectId, diffConfig, trackLines, functionalFilter, 
+					commit -> denseId(graph, commit));
+			listener.shared(Stage.HISTORY, System.nanoTime() - start, index.getCommitCount());
+			if (functional) {
+				functionalHistory = index;
+			} else {
+				history = index;
 			}
 		}
-	    return commits;
+		return index;
 	}
 
 	@Override
 	public BlobWalk workingTree() throws VersionControlException {
+		return workingTree(PathSuffixFilter.create(JAVA_SUFFIX));
+	}
+
+	@Override
+	public BlobWalk workingTree(Set<String> paths) throws VersionControlException {
+		if (paths.isEmpty()) {
+			return workingTree(TreeFilter.ALL.negate());
+		}
+		return workingTree(AndTreeFilter.create(PathFilterGroup.createFromStrings(paths), 
+				PathSuffixFilter.create(JAVA_SUFFIX)));
+	}
+	
+	private BlobWalk workingTree(TreeFilter filter) throws VersionControlException {
 		try (RevWalk revWalk = new RevWalk(git.getRepository());
         		BlobWalk blobWalk = new BlobWalk(git.getRepository())) 
         {
@@ -294,79 +582,79 @@ public final class GitVersionControl implements VersionControl<BlobWalk> {
         	RevTree tree = threshold.getTree();
             blobWalk.addTree(tree);
             blobWalk.setRecursive(true);
-            blobWalk.setFilter(PathSuffixFilter.create(JAVA_SUFFIX));
+            blobWalk.setFilter(filter);
             return blobWalk;
         } catch (IOException e) {
         	throw new VersionControlException();
 		}
 	}
+	
+	@Override
+	public String getRevisionId() {
+		return objectId.name();
+	}
 
-	static class FunctionalCommit implements Predicate<RevCommit> {
-
-		private static final Set<String> MAINTENANCE_TOKENS = Stream.of("clean", "licens", "merg", 
-				"releas", "structur", "integr", "copyright", "document", "manual", "javadoc", "comment", "migrat",
-				"repositori", "code", "review", "polish", "upgrad", "style", "format", "organ", "todo")
-				.collect(Collectors.toSet());
-				
-		@Override
-		public boolean test(RevCommit commit) {
-			Set<String> commitTokens;
-			try {
-				commitTokens = Utils.preprocessString(commit.getFullMessage(), Utils.getAnalyzer(Source.VCS))
-						.stream().collect(Collectors.toSet());
-				if (commitTokens.size() < 3) {
-					return false;
-				} else {
-					commitTokens.retainAll(MAINTENANCE_TOKENS);
-					if (commitTokens.size() != 0) {
-						return false;
-					}
+	@Override
+	public Set<String> changedFiles(String sinceRevision, boolean includeHistory) throws VersionControlException {
+		Set<String> paths = new HashSet<>();
+		try (RevWalk revWalk = new RevWalk(git.getRepository());
+				DiffFormatter df = new DiffFormatter(DisabledOutputStream.INSTANCE)) 
+		{
+			df.setRepository(git.getRepository());
+			df.setPathFilter(PathSuffixFilter.create(JAVA_SUFFIX));
+			ObjectId sinceId = git.getRepository().resolve(sinceRevision);
+			if (sinceId == null) throw new VersionControlException();
+			RevCommit since = revWalk.parseCommit(sinceId);
+			RevCommit head = revWalk.parseCommit(objectId);
+			
+			df.setDetectRenames(true);
+			addPaths(df.scan(since.getTree(), head.getTree()), paths);
+			
+			if (includeHistory) {
+				// a file edited and reverted keeps its blob but gains commits
+				df.setDetectRenames(false);
+				revWalk.markStart(head);
+				revWalk.markUninteresting(since);
+				for (RevCommit commit : revWalk) {
+					RevTree parentTree = commit.getParentCount() == 0 ? null 
+							: revWalk.parseCommit(commit.getParent(0)).getTree();
+					addPaths(df.scan(parentTree, commit.getTree()), paths);
 				}
-			} catch(IOException e){
-				e.printStackTrace();
 			}
-			return true;
+			return paths;
+		} catch (IOException e) {
+			throw new VersionControlException();
 		}
-
 	}
 	
-	private void findBranches(RevCommit head, RevWalk revWalk) throws IOException{
-		Stack<RevCommit> stack = new Stack<>();
-		Set<String> visited = new HashSet<>();
+	private static void addPaths(List<DiffEntry> entries, Set<String> paths) {
+		for (DiffEntry entry : entries) {
+			if (entry.getChangeType() != ChangeType.ADD) paths.add(entry.getOldPath());
+			if (entry.getChangeType() != ChangeType.DELETE) paths.add(entry.getNewPath());
+		}
+	}
+
+	static final class FunctionalCommit {
+
+		private static final Set<String> MAINTENANCE_TOKENS = Stream.of("clean", "licens", "merg", 
+				"releas", "structur", "integr", "copyright", "document", "manual", "javadoc", "comment", "migrat",
+				"repositori", "code", "review", "polish", "upgrad", "style", "format", "organ", "todo")
+				.collect(Collectors.toSet());
 		
-		stack.push(head);
-		try (DiffFormatter df = new DiffFormatter(DisabledOutputStream.INSTANCE)){
-			df.setRepository(git.getRepository());
-			df.setDetectRenames(true);
-			df.setPathFilter(PathSuffixFilter.create("java"));
-			Set<RevCommit> cluster = new HashSet<>();
-			cluster.add(head);
-			while(!stack.isEmpty()){
-				RevCommit rc = stack.pop();
-				if (!visited.contains(rc.name())){
-					if (rc.getParentCount() == 0) {
-						//doDiff(rc, null, df);
-					} else if (rc.getParentCount() == 1){
-						RevCommit parent = revWalk.parseCommit(rc.getParent(0).getId());
-						//doDiff(rc, parent, df);
-						stack.push(parent);
-					} else if (rc.getParentCount() == 2) {
-						stack.push(revWalk.parseCommit(rc.getParent(1).getId()));
-						stack.push(revWalk.parseCommit(rc.getParent(0).getId()));
-					}
-					visited.add(rc.name());
-					cluster.add(rc);
-				} else {
-					//skip master && branches smaller than 2
-					if (!cluster.contains(head) && cluster.size() > 1 && cluster.size() <= 50){
-						for (RevCommit r : cluster){
-							clusterLookup.put(r.name(), cluster);
-						}
-					}
-					cluster = new HashSet<>();
-				}
+		private FunctionalCommit() {}
+		
+		/**
+		 * @param tokens analyzed commit message
+		 */
+		static boolean test(List<String> tokens) {
+			Set<String> commitTokens = new HashSet<>(tokens);
+			if (commitTokens.size() < 3) {
+				return false;
 			}
+			commitTokens.retainAll(MAINTENANCE_TOKENS);
+			return commitTokens.isEmpty();
 		}
+
 	}
 	
 	@Override
@@ -375,34 +663,4 @@ public final class GitVersionControl implements VersionControl<BlobWalk> {
 				+ ", objectId=" + objectId + ", git=" + git + "]";
 	}
 
-	private List<String> historicalStats(int beginLine, int endLine, String file2) {
-		List<String> commits = new ArrayList<>();
-		final ProcessBuilder pb = new ProcessBuilder();
-		pb.directory(srcDir.toFile());
-		pb.redirectErrorStream(true);
-		pb.command("git", "log", revision, "--", "-L" + beginLine + "," + endLine + ":" + file2,
-				"--follow", file2);
-
-		// pb.redirectOutput(Redirect.INHERIT);
-		Process gitLog = null;
-		try {
-			gitLog = pb.start();
-
-			// gitLog.waitFor();
-			BufferedReader reader = new BufferedReader(new InputStreamReader(gitLog.getInputStream()));
-			Pattern p = Pattern.compile("\\b[0-9a-f]{40}\\b");
-			String line = null;
-			while ((line = reader.readLine()) != null) {
-				Matcher m = p.matcher(line);
-				if (m.find()) {
-					commits.add(m.group());
-				}
-			}
-			return commits;
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		return commits;
-	}
-
 }
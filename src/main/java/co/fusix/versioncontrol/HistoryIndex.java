@@ -0,0 +1,351 @@
+package co.fusix.versioncontrol;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+
+import org.eclipse.jgit.diff.DiffConfig;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathSuffixFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.eclipse.jgit.util.io.DisabledOutputStream;
+
+/**
+ * Commit history of every Java file at a revision, computed with a single walk
+ * of the commit graph. Each file is followed through renames back to its
+ * creation, and, when line tracking is on, the edits of every commit against
+ * each of its parents are kept so the history of a line range can be answered
+ * without touching the repository again.
+ * <p>
+ * A commit is attributed to a file when its diff against the first parent
+ * touches the file; merges only when the file differs from every parent.
+ * Unlike {@link org.eclipse.jgit.revwalk.FollowFilter} walks, side branches are
+ * never simplified away.
+ */
+final class HistoryIndex {
+
+	private static final String JAVA_SUFFIX = "java";
+
+	private final Map<String, Lineage> lineages;
+	private final boolean trackLines;
+	private final int commitCount;
+
+	private HistoryIndex(Map<String, Lineage> lineages, boolean trackLines, int commitCount) {
+		this.lineages = lineages;
+		this.trackLines = trackLines;
+		this.commitCount = commitCount;
+	}
+
+	/**
+	 * @param filter commits it rejects are still followed for renames and line
+	 * movements but never recorded, may be null
+	 * @param denseIds gives the dense id the recorded commits are kept as
+	 */
+	static HistoryIndex build(Repository repository, AnyObjectId head, DiffConfig diffConfig,
+			boolean trackLines, RevFilter filter, ToIntFunction<RevCommit> denseIds) throws IOException
+	{
+		Map<String, Lineage> lineages = new HashMap<>();
+		Map<String, List<Lineage>> tracked = new HashMap<>();
+		int commitCount = 0;
+
+		try (RevWalk revWalk = new RevWalk(repository);
+				DiffFormatter df = new DiffFormatter(DisabledOutputStream.INSTANCE))
+		{
+			df.setRepository(repository);
+			df.setPathFilter(PathSuffixFilter.create(JAVA_SUFFIX));
+			df.setDetectRenames(true);
+			df.getRenameDetector().setRenameLimit(diffConfig.getRenameLimit());
+
+			RevCommit start = revWalk.parseCommit(head);
+			try (TreeWalk treeWalk = new TreeWalk(repository)) {
+				treeWalk.addTree(start.getTree());
+				treeWalk.setRecursive(true);
+				treeWalk.setFilter(PathSuffixFilter.create(JAVA_SUFFIX));
+				while (treeWalk.next()) {
+					Lineage lineage = new Lineage(trackLines ? treeWalk.getObjectId(0) : null);
+					lineages.put(treeWalk.getPathString(), lineage);
+					tracked.put(treeWalk.getPathString(), new ArrayList<>(Collections.singletonList(lineage)));
+				}
+			}
+
+			revWalk.sort(RevSort.TOPO);
+			revWalk.markStart(start);
+			for (RevCommit commit : revWalk) {
+				commitCount++;
+				boolean recorded = filter == null || filter.include(revWalk, commit);
+				RevTree parentTree = null;
+				Set<String> mergeChanges = null;
+				if (commit.getParentCount() > 0) {
+					parentTree = revWalk.parseCommit(commit.getParent(0)).getTree();
+				}
+				if (commit.getParentCount() > 1) {
+					mergeChanges = changedAgainstAllParents(repository, revWalk, commit);
+					if (mergeChanges.isEmpty()) continue;
+				}
+
+				List<List<DiffEntry>> otherParents = null;
+				for (DiffEntry entry : df.scan(parentTree, commit.getTree())) {
+					String path = entry.getChangeType() == ChangeType.DELETE ? entry.getOldPath() : entry.getNewPath();
+					if (mergeChanges != null && !mergeChanges.contains(path)) continue;
+
+					List<Lineage> following = tracked.get(path);
+					if (following == null) continue;
+
+					Change change = null;
+					if (trackLines) {
+						if (mergeChanges != null && otherParents == null) {
+							otherParents = new ArrayList<>();
+							for (int i = 1; i < commit.getParentCount(); i++) {
+								otherParents.add(df.scan(revWalk.parseCommit(commit.getParent(i)).getTree(), commit.getTree()));
+							}
+						}
+						change = change(df, entry, path, otherParents);
+					}
+					int recordedId = recorded ? denseIds.applyAsInt(commit) : -1;
+					for (Lineage lineage : following) {
+						lineage.add(recordedId, change);
+					}
+
+					if (entry.getChangeType() == ChangeType.RENAME) {
+						// continue following the file under its previous name
+						tracked.remove(path);
+						tracked.put(entry.getOldPath(), following);
+					} else if (entry.getChangeType() == ChangeType.COPY) {
+						// the copy continues with the history of its source, which is still followed as well
+						tracked.remove(path);
+						tracked.computeIfAbsent(entry.getOldPath(), p -> new ArrayList<>()).addAll(following);
+					}
+				}
+			}
+		}
+		return new HistoryIndex(lineages, trackLines, commitCount);
+	}
+
+	/**
+	 * @param otherParents the diffs against the parents after the first one,
+	 * null for commits that are not merges
+	 */
+	private static Change change(DiffFormatter df, DiffEntry entry, String path,
+			List<List<DiffEntry>> otherParents) throws IOException
+	{
+		int parentCount = otherParents == null ? 1 : otherParents.size() + 1;
+		ObjectId blob = blob(entry.getChangeType() == ChangeType.DELETE ? null : entry.getNewId());
+		ObjectId[] parents = new ObjectId[parentCount];
+		EditList[] edits = new EditList[parentCount];
+		parents[0] = blob(entry.getOldId());
+		edits[0] = entry.getChangeType() == ChangeType.DELETE ? new EditList() : df.toFileHeader(entry).toEditList();
+		for (int i = 1; i < parentCount; i++) {
+			// unchanged against this parent unless its diff says otherwise
+			parents[i] = blob;
+			edits[i] = new EditList();
+			for (DiffEntry other : otherParents.get(i - 1)) {
+				String otherPath = other.getChangeType() == ChangeType.DELETE ? other.getOldPath() : other.getNewPath();
+				if (!otherPath.equals(path)) continue;
+				parents[i] = blob(other.getOldId());
+				if (other.getChangeType() != ChangeType.DELETE) edits[i] = df.toFileHeader(other).toEditList();
+				break;
+			}
+		}
+		return new Change(blob, parents, edits);
+	}
+
+	/**
+	 * @return the blob, or null for the missing side of an addition or deletion
+	 */
+	private static ObjectId blob(AbbreviatedObjectId id) {
+		return id == null || !id.isComplete() || id.toObjectId().equals(ObjectId.zeroId()) ? null : id.toObjectId();
+	}
+
+	private static Set<String> changedAgainstAllParents(Repository repository, RevWalk revWalk,
+			RevCommit merge) throws IOException
+	{
+		Set<String> paths = new HashSet<>();
+		try (TreeWalk treeWalk = new TreeWalk(repository)) {
+			int parents = merge.getParentCount();
+			for (int i = 0; i < parents; i++) {
+				treeWalk.addTree(revWalk.parseCommit(merge.getParent(i)).getTree());
+			}
+			treeWalk.addTree(merge.getTree());
+			treeWalk.setRecursive(true);
+			treeWalk.setFilter(AndTreeFilter.create(PathSuffixFilter.create(JAVA_SUFFIX), TreeFilter.ANY_DIFF));
+			outer:
+			while (treeWalk.next()) {
+				for (int i = 0; i < parents; i++) {
+					if (treeWalk.idEqual(i, parents)) continue outer;
+				}
+				paths.add(treeWalk.getPathString());
+			}
+		}
+		return paths;
+	}
+
+	boolean tracksLines() {
+		return trackLines;
+	}
+
+	int getCommitCount() {
+		return commitCount;
+	}
+
+	/**
+	 * @return all commits that touched the file or its renamed ancestors
+	 */
+	CommitSet commits(String filePath) {
+		Lineage lineage = lineages.get(filePath);
+		if (lineage == null) return CommitSet.EMPTY;
+		return CommitSet.of(Arrays.copyOf(lineage.commits, lineage.size), lineage.size);
+	}
+
+	/**
+	 * Follows the 1-based, inclusive line range back through history, in the
+	 * manner of {@code git log -L}, and returns the commits that changed it.
+	 * Ranges are kept per version of the file and mapped into every parent of
+	 * a merge, so side branches are followed through their own edits. A merge
+	 * is returned when it changed the range against all of its parents.
+	 */
+	CommitSet commits(String filePath, int startLine, int endLine) {
+		if (!trackLines) throw new IllegalStateException("History index was built without line tracking.");
+		Lineage lineage = lineages.get(filePath);
+		if (lineage == null) return CommitSet.EMPTY;
+
+		Map<ObjectId, List<int[]>> ranges = new HashMap<>();
+		addRange(ranges, lineage.blob, startLine - 1, endLine - 1);
+		int[] commits = new int[lineage.size];
+		int count = 0;
+		// changes are in walk order, so a version is reached after all of its descendants
+		for (int i = 0; i < lineage.size; i++) {
+			Change change = lineage.changes.get(i);
+			List<int[]> versionRanges = change.blob == null ? null : ranges.get(change.blob);
+			if (versionRanges == null) continue;
+			versionRanges = new ArrayList<>(versionRanges);
+			boolean changed = true;
+			for (int p = 0; p < change.parents.length; p++) {
+				boolean touched = false;
+				for (int[] range : versionRanges) {
+					touched |= touches(change.edits[p], range[0], range[1]);
+					addRange(ranges, change.parents[p], 
+							map(change.edits[p], range[0], true), map(change.edits[p], range[1], false));
+				}
+				changed &= touched;
+			}
+			if (changed && lineage.commits[i] >= 0) commits[count++] = lineage.commits[i];
+		}
+		return CommitSet.of(commits, count);
+	}
+
+	/**
+	 * Adds a range of a version, merged with the ranges it overlaps.
+	 */
+	private static void addRange(Map<ObjectId, List<int[]>> ranges, ObjectId blob, int start, int end) {
+		if (blob == null || start > end) return;
+		List<int[]> versionRanges = ranges.computeIfAbsent(blob, b -> new ArrayList<>());
+		for (Iterator<int[]> it = versionRanges.iterator(); it.hasNext();) {
+			int[] range = it.next();
+			if (range[0] <= end && start <= range[1]) {
+				start = Math.min(start, range[0]);
+				end = Math.max(end, range[1]);
+				it.remove();
+			}
+		}
+		versionRanges.add(new int[] {start, end});
+	}
+
+	private static boolean touches(EditList edits, int start, int end) {
+		for (Edit edit : edits) {
+			if (edit.getLengthB() > 0) {
+				if (edit.getBeginB() <= end && edit.getEndB() - 1 >= start) return true;
+			} else if (edit.getBeginB() > start && edit.getBeginB() <= end) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Maps a line of the post-image to the pre-image. Lines inside an edit map
+	 * to the edge of the replaced region, so a range that was entirely
+	 * inserted collapses to an empty range.
+	 */
+	private static int map(EditList edits, int line, boolean start) {
+		int delta = 0;
+		for (Edit edit : edits) {
+			if (edit.getEndB() <= line) {
+				delta += edit.getLengthA() - edit.getLengthB();
+			} else if (edit.getBeginB() <= line) {
+				return start ? edit.getBeginA() : edit.getEndA() - 1;
+			} else {
+				break;
+			}
+		}
+		return line + delta;
+	}
+
+	@Override
+	public String toString() {
+		return "HistoryIndex [files=" + lineages.size() + ", commits=" + commitCount
+				+ ", trackLines=" + trackLines + "]";
+	}
+
+	private static final class Lineage {
+		private final ObjectId blob;
+		private int[] commits = new int[4];
+		private int size;
+		private final List<Change> changes = new ArrayList<>();
+
+		/**
+		 * @param blob the file at the indexed revision, null without line tracking
+		 */
+		private Lineage(ObjectId blob) {
+			this.blob = blob;
+		}
+
+		/**
+		 * @param commit dense id of the commit, -1 when it is not recorded
+		 * @param change null without line tracking
+		 */
+		private void add(int commit, Change change) {
+			if (size == commits.length) commits = Arrays.copyOf(commits, size * 2);
+			commits[size++] = commit;
+			changes.add(change);
+		}
+	}
+
+	/**
+	 * A version of a file made by a commit, with the versions of its parents
+	 * and the edits from each of them.
+	 */
+	private static final class Change {
+		private final ObjectId blob;
+		private final ObjectId[] parents;
+		private final EditList[] edits;
+
+		private Change(ObjectId blob, ObjectId[] parents, EditList[] edits) {
+			this.blob = blob;
+			this.parents = parents;
+			this.edits = edits;
+		}
+	}
+}
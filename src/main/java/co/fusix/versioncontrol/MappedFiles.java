@@ -0,0 +1,99 @@
+package co.fusix.versioncontrol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generations of a memory-mapped cache file. A file that is mapped cannot be
+ * replaced or deleted on every platform, so each write goes to a new
+ * generation, {@code <prefix>.<generation>.bin}, and readers map the newest
+ * one. Older generations are deleted when that succeeds; those still mapped,
+ * by this or another process, are left to a later write.
+ */
+final class MappedFiles {
+
+	private static final String SUFFIX = ".bin";
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private MappedFiles() {}
+
+	/**
+	 * @return the newest generation of the file, or null when none was written
+	 */
+	static Path latest(Path prefix) throws IOException {
+		long generation = generations(prefix).stream().mapToLong(Long::longValue).max().orElse(-1);
+		return generation < 0 ? null : file(prefix, generation);
+	}
+
+	/**
+	 * @return a read-only mapping of the file, which stays valid after the
+	 * channel is closed
+	 */
+	static ByteBuffer map(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
+	/**
+	 * Writes the buffer as the next generation of the file and deletes the
+	 * generations before it. When another process writes the same generation
+	 * first, its file is kept.
+	 */
+	static void write(Path prefix, ByteBuffer buffer) throws IOException {
+		Path dir = prefix.toAbsolutePath().getParent();
+		Files.createDirectories(dir);
+		List<Long> older = generations(prefix);
+		long generation = older.stream().mapToLong(Long::longValue).max().orElse(-1) + 1;
+		Path temp = Files.createTempFile(dir, prefix.getFileName().toString(), TEMP_SUFFIX);
+		try {
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				while (buffer.hasRemaining()) channel.write(buffer);
+			}
+			Files.move(temp, file(prefix, generation));
+		} catch (FileAlreadyExistsException e) {
+			// written concurrently
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+
+		for (long previous : older) {
+			try {
+				Files.deleteIfExists(file(prefix, previous));
+			} catch (IOException e) {
+				// still mapped
+			}
+		}
+	}
+
+	private static Path file(Path prefix, long generation) {
+		return prefix.resolveSibling(prefix.getFileName() + "." + generation + SUFFIX);
+	}
+
+	private static List<Long> generations(Path prefix) throws IOException {
+		List<Long> generations = new ArrayList<>();
+		Path dir = prefix.toAbsolutePath().getParent();
+		if (!Files.isDirectory(dir)) return generations;
+		String name = prefix.getFileName() + ".";
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, name + "*" + SUFFIX)) {
+			for (Path file : files) {
+				String fileName = file.getFileName().toString();
+				try {
+					generations.add(Long.parseLong(
+							fileName.substring(name.length(), fileName.length() - SUFFIX.length())));
+				} catch (NumberFormatException e) {
+					// not a generation
+				}
+			}
+		}
+		return generations;
+	}
+}
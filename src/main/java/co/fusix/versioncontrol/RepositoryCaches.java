@@ -0,0 +1,53 @@
+package co.fusix.versioncontrol;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.WindowCacheConfig;
+
+/**
+ * Sizes jgit's process-wide pack window cache and the per-reader delta base
+ * cache to the repository being read. The window cache is shared by every
+ * reader in the JVM, so it is only ever grown, never shrunk.
+ */
+final class RepositoryCaches {
+
+	private static final String PACK_SUFFIX = ".pack";
+	private static long installedLimit = new WindowCacheConfig().getPackedGitLimit();
+
+	private RepositoryCaches() {}
+
+	/**
+	 * @param readers number of readers expected to run concurrently
+	 */
+	static synchronized void configure(Repository repository, int readers) throws IOException {
+		long packBytes = 0;
+		int packs = 0;
+		Path packDir = repository.getDirectory().toPath().resolve("objects").resolve("pack");
+		if (Files.isDirectory(packDir)) {
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(packDir, "*" + PACK_SUFFIX)) {
+				for (Path pack : files) {
+					packBytes += Files.size(pack);
+					packs++;
+				}
+			}
+		}
+
+		WindowCacheConfig config = new WindowCacheConfig();
+		long maxMemory = Runtime.getRuntime().maxMemory();
+		long limit = Math.min(packBytes + packBytes / 4, maxMemory / 4);
+		if (limit <= installedLimit) return;
+
+		// every reader holds its own delta base cache
+		long deltaLimit = Math.min(packBytes / 16, maxMemory / (8L * Math.max(1, readers)));
+		config.setPackedGitLimit(limit);
+		config.setPackedGitOpenFiles(Math.max(config.getPackedGitOpenFiles(), 2 * packs));
+		config.setDeltaBaseCacheLimit((int) Math.max(config.getDeltaBaseCacheLimit(),
+				Math.min(deltaLimit, Integer.MAX_VALUE)));
+		config.install();
+		installedLimit = limit;
+	}
+}
@@ -1,6 +1,9 @@
 package co.fusix.versioncontrol;
 
 import java.io.Closeable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import co.fusix.component.Component;
@@ -12,6 +15,27 @@ public interface VersionControl<T>  extends Closeable{
 	void annotateAll(final Set<Component> components, Recentness recentness, 
 			Granularity granularity) throws VersionControlException;
 	
+	/**
+	 * Makes several annotations of the same files at once, blaming every file
+	 * once for all of them.
+	 */
+	void annotateAll(List<Annotation> annotations) throws VersionControlException;
+	
 	T workingTree() throws VersionControlException;
+	
+	T workingTree(Set<String> paths) throws VersionControlException;
+	
+	String getRevisionId();
+	
+	Set<String> changedFiles(String sinceRevision, boolean includeHistory) throws VersionControlException;
+	
+	/**
+	 * @return full message of every commit, keyed by commit id
+	 */
+	Map<String, String> getMessages(Set<String> commitIds) throws VersionControlException;
+	
+	default List<String> report() {
+		return Collections.emptyList();
+	}
 		
 }
@@ -0,0 +1,88 @@
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.custom.CustomAnalyzer;
+import org.junit.Test;
+
+import co.fusix.corpus.Source;
+import co.fusix.utils.Utils;
+
+/**
+ * The shared analyzers must produce the same tokens as the regex based
+ * analyzers existing indexes were built with.
+ */
+public class TestIdentifierTokenizer {
+
+	private static final String CAMEL_CASE = "(?<!(^|[A-Z]))(?=[A-Z])|(?<!^)(?=[A-Z][a-z])";
+	private static final String ALPHABET = "aAbBzZxXyYmM_09 \t\n.()<>{}\u00e9\u00c9\u00df\ud801\udc00\ud801\udc28";
+
+	private static Analyzer regexAnalyzer(Source source) throws IOException {
+		CustomAnalyzer.Builder builder = CustomAnalyzer.builder()
+				.addCharFilter("patternreplace", "pattern", CAMEL_CASE, "replacement", " ")
+				.withTokenizer("lowercase");
+		if (source == Source.CODE) {
+			builder.addTokenFilter("stop", "ignoreCase", "true", "words", "java_keywords.txt", "format", "snowball");
+		}
+		return builder.addTokenFilter("porterstem")
+				.addTokenFilter("stop", "ignoreCase", "true")
+				.build();
+	}
+
+	private static void assertSameTokens(Source source, String text) throws IOException {
+		try (Analyzer expected = regexAnalyzer(source)) {
+			assertEquals(text, Utils.preprocessString(text, expected),
+					Utils.preprocessString(text, Utils.getAnalyzer(source)));
+		}
+	}
+
+	@Test
+	public void testIdentifiers() throws IOException {
+		for (Source source : Source.values()) {
+			for (String text : new String[] {"", "a", "A", "fooBar", "FooBar", "XMLParser", "parseXML",
+					"getHTTPResponseCode", "snake_case_name", "CONSTANT_VALUE", "utf8Decoder", "a1b2C3",
+					"ABc", "AbC", "aBC", "public void print(List<Employee> employees) { e.toString(); }",
+					"The quick brown fox is running in the house"}) {
+				assertSameTokens(source, text);
+			}
+		}
+	}
+
+	@Test
+	public void testLongTokens() throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			text.append(i % 300 == 299 ? 'Q' : 'q');
+		}
+		assertSameTokens(Source.CODE, text.toString());
+		assertSameTokens(Source.VCS, text.toString() + " " + text.toString().toUpperCase());
+	}
+
+	@Test
+	public void testRandomText() throws IOException {
+		Random random = new Random(42);
+		for (int i = 0; i < 2000; i++) {
+			StringBuilder text = new StringBuilder();
+			int length = random.nextInt(i < 1990 ? 40 : 20000);
+			for (int j = 0; j < length; j++) {
+				text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+			}
+			assertSameTokens(i % 2 == 0 ? Source.CODE : Source.VCS, text.toString());
+		}
+	}
+
+	@Test
+	public void testQueries() throws IOException, URISyntaxException {
+		for (String query : Files.readAllLines(Paths.get(getClass().getResource("queries_short_ml.txt").toURI()),
+				StandardCharsets.UTF_8)) {
+			assertSameTokens(Source.CODE, query);
+			assertSameTokens(Source.VCS, query);
+		}
+	}
+}
@@ -0,0 +1,87 @@
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import co.fusix.component.Component;
+import co.fusix.corpus.Granularity;
+import co.fusix.exceptions.CorpusParserException;
+import co.fusix.parsers.MethodScanner;
+import co.fusix.parsers.Parser;
+import co.fusix.parsers.SimpleJavaParser;
+
+/**
+ * The scanner must find the methods javaparser finds, with the same paths
+ * and lines.
+ */
+public class TestMethodScanner {
+
+	private static final String TRICKY = "package p;\r\n"
+			+ "@interface Marker { String value() default \"{\"; class InAnnotation { void a() {} } }\r\n"
+			+ "public abstract class Tricky<T extends Comparable<? super T>> implements Runnable {\r\n"
+			+ "\tprivate final Runnable field = new Runnable() { public void run() { class Local { int b() { return '}'; } } } };\r\n"
+			+ "\tprivate int[] array = {1, 2}; static { System.out.println(\"}\"); }\r"
+			+ "\t/** doc } */ @SuppressWarnings({\"a\", \"b\"}) public <E extends T> java.util.Map<String, List<? extends E>> c(\r\n"
+			+ "\t\t\tfinal @Marker(\"x\") int x, String[] y, char z[], Object... rest) throws Exception { return null; }\r\n"
+			+ "\tabstract void d();\r\n"
+			+ "\tTricky() { Runnable r = () -> { }; }\r\n"
+			+ "\tinterface Inner { int e(); default int f() { return 1; } }\r\n"
+			+ "\tenum Kind { A { void g() {} }, B(\"}\") { void g() {} }; Kind() {} Kind(String s) {} void g() {} }\r\n"
+			+ "\tpublic void run() { String s = \"/* \\\" */\"; /* } */ // }\n"
+			+ "\t}\n"
+			+ "}\n";
+
+	private static Set<String> methods(Parser parser, byte[] source) throws CorpusParserException {
+		return parser.parse(new ByteArrayInputStream(source), "p/Tricky.java", Granularity.METHOD, false).stream()
+				.map(component -> component.getPath() + " " + component.getStartLine() + "-" + component.getEndLine())
+				.collect(Collectors.toCollection(TreeSet::new));
+	}
+
+	private static void assertSameMethods(String name, byte[] source) throws CorpusParserException {
+		assertEquals(name, methods(new SimpleJavaParser(null), source), methods(new MethodScanner(null), source));
+	}
+
+	@Test
+	public void testTricky() throws CorpusParserException {
+		assertSameMethods("tricky", TRICKY.getBytes(StandardCharsets.UTF_8));
+		assertEquals(9, methods(new MethodScanner(null), TRICKY.getBytes(StandardCharsets.UTF_8)).size());
+	}
+
+	@Test
+	public void testSources() throws IOException, CorpusParserException {
+		List<Path> files;
+		try (Stream<Path> paths = Files.walk(Paths.get("src/main/java"))) {
+			files = paths.filter(path -> path.toString().endsWith(".java")).collect(Collectors.toList());
+		}
+		for (Path file : files) {
+			assertSameMethods(file.toString(), Files.readAllBytes(file));
+		}
+	}
+
+	@Test
+	public void testContent() throws CorpusParserException {
+		Set<Component> components = new MethodScanner(null).parse(new ByteArrayInputStream(
+				TRICKY.getBytes(StandardCharsets.UTF_8)), "p/Tricky.java", Granularity.METHOD, true);
+		String content = components.stream()
+				.filter(component -> component.getPath().endsWith("::Tricky_void_run()"))
+				.map(Component::getContent).findFirst().orElse(null);
+		assertEquals("public void run() { String s = \"/* \\\" */\"; /* } */ // }\n\t}", content);
+	}
+
+	@Test
+	public void testUnbalanced() throws CorpusParserException {
+		String source = "class A { void a() { } void b() { if (x) { } class B { void c() {";
+		assertEquals(1, methods(new MethodScanner(null), source.getBytes(StandardCharsets.UTF_8)).size());
+	}
+}
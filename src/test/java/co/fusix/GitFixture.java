@@ -0,0 +1,108 @@
+package co.fusix;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.TimeZone;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.MergeCommand.FastForwardMode;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
+
+/**
+ * A git repository written file by file and committed at one hour intervals,
+ * for tests that need a small history of their own.
+ */
+public final class GitFixture implements Closeable {
+
+	private static final long HOUR = 3600 * 1000L;
+
+	private final Path dir;
+	private final Git git;
+	private long time = 1_500_000_000_000L;
+
+	public GitFixture(Path dir) throws GitAPIException {
+		this.dir = dir;
+		this.git = Git.init().setDirectory(dir.toFile()).call();
+	}
+
+	/**
+	 * @return the source of a class in package p with one method per value,
+	 * returning it, so changing a value changes one method
+	 */
+	public static String type(String name, int... values) {
+		StringBuilder source = new StringBuilder("package p;\n\npublic class " + name + " {\n");
+		for (int i = 0; i < values.length; i++) {
+			source.append("\n\tint size").append(i).append("() {\n\t\treturn ").append(values[i]).append(";\n\t}\n");
+		}
+		return source.append("}\n").toString();
+	}
+
+	public Path dir() {
+		return dir;
+	}
+
+	public Git git() {
+		return git;
+	}
+
+	public GitFixture write(String path, String content) throws IOException {
+		Path file = dir.resolve(path);
+		Files.createDirectories(file.getParent());
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+		return this;
+	}
+
+	public GitFixture remove(String path) throws IOException {
+		Files.delete(dir.resolve(path));
+		return this;
+	}
+
+	/**
+	 * Commits every file written or removed since the last commit.
+	 */
+	public RevCommit commit(String message) throws GitAPIException {
+		git.add().addFilepattern(".").call();
+		git.add().addFilepattern(".").setUpdate(true).call();
+		PersonIdent ident = ident();
+		return git.commit().setMessage(message).setAuthor(ident).setCommitter(ident).call();
+	}
+
+	/**
+	 * Creates a branch at the current commit and checks it out.
+	 */
+	public void branch(String name) throws GitAPIException {
+		git.checkout().setCreateBranch(true).setName(name).call();
+	}
+
+	public void checkout(String name) throws GitAPIException {
+		git.checkout().setName(name).call();
+	}
+
+	/**
+	 * Merges a branch that does not conflict with the current one, always
+	 * with a merge commit.
+	 */
+	public RevCommit merge(String branch, String message) throws IOException, GitAPIException {
+		git.merge().include(git.getRepository().resolve(branch))
+				.setFastForward(FastForwardMode.NO_FF)
+				.setCommit(false)
+				.call();
+		return commit(message);
+	}
+
+	private PersonIdent ident() {
+		time += HOUR;
+		return new PersonIdent("Fixture", "fixture@fusix.co", new Date(time), TimeZone.getTimeZone("UTC"));
+	}
+
+	@Override
+	public void close() {
+		git.close();
+	}
+}
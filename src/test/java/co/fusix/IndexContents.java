@@ -0,0 +1,71 @@
+package co.fusix;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+
+import co.fusix.component.Component;
+
+/**
+ * The documents of an index as text, to compare indexes built in different
+ * ways. Content is not stored, so documents are rebuilt from the postings.
+ */
+public final class IndexContents {
+
+	private static final String COMMIT_ID = "COMMIT_ID";
+
+	private IndexContents() {}
+
+	/**
+	 * @return one line per live document, sorted: its path or commit id, then
+	 * every field with its terms and their frequencies
+	 */
+	public static List<String> of(Path indexDir) throws IOException {
+		try (Directory dir = FSDirectory.open(indexDir);
+				DirectoryReader reader = DirectoryReader.open(dir))
+		{
+			Map<Integer, Map<String, Map<String, Integer>>> documents = new TreeMap<>();
+			Bits liveDocs = MultiFields.getLiveDocs(reader);
+			for (String field : MultiFields.getFields(reader)) {
+				Terms terms = MultiFields.getTerms(reader, field);
+				if (terms == null) continue;
+				TermsEnum termsEnum = terms.iterator();
+				BytesRef term;
+				while ((term = termsEnum.next()) != null) {
+					String text = term.utf8ToString();
+					PostingsEnum postings = termsEnum.postings(liveDocs, null, PostingsEnum.FREQS);
+					int doc;
+					while ((doc = postings.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+						documents.computeIfAbsent(doc, d -> new TreeMap<>())
+								.computeIfAbsent(field, f -> new TreeMap<>())
+								.put(text, postings.freq());
+					}
+				}
+			}
+			List<String> lines = new ArrayList<>();
+			for (Map.Entry<Integer, Map<String, Map<String, Integer>>> document : documents.entrySet()) {
+				Document stored = reader.document(document.getKey());
+				String id = stored.get(Component.Fields.PATH.name());
+				lines.add((id == null ? "commit " + stored.get(COMMIT_ID) : id) + " " + document.getValue());
+			}
+			Collections.sort(lines);
+			return lines;
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package co.fusix.corpus;
+
+import static co.fusix.GitFixture.type;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import co.fusix.GitFixture;
+import co.fusix.IndexContents;
+import co.fusix.versioncontrol.Recentness;
+
+/**
+ * Builds served from the annotation cache must index what a build without it
+ * indexes.
+ */
+public class TestAnnotationCache {
+
+	private static final Pattern HITS = Pattern.compile("Annotation cache \\[hits=(\\d+)");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static Corpus<List<String>> corpus(Path srcDir, Path indexDir, Path cacheDir, Recentness recentness) {
+		Configurations.Builder builder = Configurations.builder()
+				.srcDir(srcDir)
+				.indexDir(indexDir)
+				.source(Source.VCS)
+				.recentness(recentness);
+		if (cacheDir != null) builder.cacheDir(cacheDir).annotationCache(1 << 20);
+		return builder.build();
+	}
+
+	private static int hits(List<String> log) {
+		for (String line : log) {
+			Matcher matcher = HITS.matcher(line);
+			if (matcher.find()) return Integer.parseInt(matcher.group(1));
+		}
+		return 0;
+	}
+
+	/**
+	 * A file reverted to a blob annotated before gets the commits of its
+	 * edit and revert, not those cached for the blob.
+	 */
+	@Test
+	public void testUpdateAfterRevert() throws Exception {
+		for (Recentness recentness : Recentness.values()) {
+			try (GitFixture fixture = new GitFixture(folder.newFolder().toPath())) {
+				Path cacheDir = folder.newFolder().toPath();
+				Path cachedIndex = folder.newFolder().toPath();
+				Path coldIndex = folder.newFolder().toPath();
+				fixture.write("p/Widget.java", type("Widget", 1, 2, 3))
+						.write("p/Gadget.java", type("Gadget", 1, 2))
+						.commit("Add widget and gadget sizes");
+				try (Corpus<List<String>> cached = corpus(fixture.dir(), cachedIndex, cacheDir, recentness)) {
+					cached.create().call();
+					fixture.write("p/Widget.java", type("Widget", 1, 5, 3)).commit("Grow widget overflow size");
+					cached.update().call();
+					fixture.branch("side");
+					fixture.write("p/Gadget.java", type("Gadget", 7, 2)).commit("Shrink gadget border size");
+					fixture.write("p/Gadget.java", type("Gadget", 7, 8)).commit("Shrink gadget margin size");
+					fixture.checkout("master");
+					fixture.write("p/Widget.java", type("Widget", 1, 2, 3)).commit("Revert widget overflow size");
+					fixture.merge("side", "Merge gadget sizes");
+					cached.update().call();
+
+					try (Corpus<List<String>> cold = corpus(fixture.dir(), coldIndex, null, recentness)) {
+						cold.create().call();
+						assertEquals(recentness.toString(), IndexContents.of(coldIndex), IndexContents.of(cachedIndex));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testHitsEqualColdBuild() throws Exception {
+		for (Recentness recentness : Recentness.values()) {
+			try (GitFixture fixture = new GitFixture(folder.newFolder().toPath())) {
+				Path cacheDir = folder.newFolder().toPath();
+				Path cachedIndex = folder.newFolder().toPath();
+				Path coldIndex = folder.newFolder().toPath();
+				fixture.write("p/Widget.java", type("Widget", 1, 2, 3)).commit("Add widget sizes");
+				fixture.branch("side");
+				fixture.write("p/Widget.java", type("Widget", 4, 2, 3)).commit("Fix widget first size");
+				fixture.write("p/Widget.java", type("Widget", 4, 5, 3)).commit("Fix widget second size");
+				fixture.checkout("master");
+				fixture.write("p/Gadget.java", type("Gadget", 1)).commit("Add gadget size");
+				fixture.merge("side", "Merge widget sizes");
+
+				try (Corpus<List<String>> warm = corpus(fixture.dir(), folder.newFolder().toPath(), cacheDir, recentness);
+						Corpus<List<String>> cached = corpus(fixture.dir(), cachedIndex, cacheDir, recentness);
+						Corpus<List<String>> cold = corpus(fixture.dir(), coldIndex, null, recentness))
+				{
+					assertEquals(0, hits(warm.create().call()));
+					List<String> log = cached.create().call();
+					assertEquals(recentness + " " + log, 4, hits(log));
+					cold.create().call();
+					assertEquals(recentness.toString(), IndexContents.of(coldIndex), IndexContents.of(cachedIndex));
+				}
+			}
+		}
+	}
+}
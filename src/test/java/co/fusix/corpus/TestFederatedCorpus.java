@@ -0,0 +1,113 @@
+package co.fusix.corpus;
+
+import static co.fusix.GitFixture.type;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import co.fusix.GitFixture;
+import co.fusix.component.Component;
+
+/**
+ * A federated search must rank as one index holding every corpus does.
+ */
+public class TestFederatedCorpus {
+
+	private static final String WIDGETS = "package p;\n\npublic class Widget {\n\n\tint widgetSize() {\n\t\treturn 1;\n\t}\n"
+			+ "\n\tint widgetBorder(int size) {\n\t\treturn size + widgetSize();\n\t}\n}\n";
+	private static final String LABELS = "package p;\n\npublic class Label {\n\n\tString labelText(int size) {\n"
+			+ "\t\treturn \"widget label\" + size + size;\n\t}\n\n\tint labelWidth() {\n\t\treturn 2;\n\t}\n}\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static Corpus<List<String>> corpus(Path srcDir, Path indexDir) {
+		return Configurations.builder().srcDir(srcDir).indexDir(indexDir).build();
+	}
+
+	/**
+	 * @return the ranked paths with their scores, at a precision the order of
+	 * floating point additions cannot change
+	 */
+	private static List<String> ranks(List<Component> components) {
+		List<String> ranks = new ArrayList<>();
+		for (Component component : components) {
+			ranks.add(String.format("%s %.4f", component.getPath(), component.getScore()));
+		}
+		return ranks;
+	}
+
+	@Test
+	public void testTopKEqualsCombinedIndex() throws Exception {
+		try (GitFixture alpha = new GitFixture(folder.newFolder().toPath());
+				GitFixture beta = new GitFixture(folder.newFolder().toPath());
+				GitFixture combined = new GitFixture(folder.newFolder().toPath()))
+		{
+			alpha.write("p/Widget.java", WIDGETS).write("p/Gadget.java", type("Gadget", 4)).commit("Add widget");
+			beta.write("p/Label.java", LABELS).commit("Add label");
+			combined.write("alpha/p/Widget.java", WIDGETS).write("alpha/p/Gadget.java", type("Gadget", 4))
+					.write("beta/p/Label.java", LABELS).commit("Add widget and label");
+
+			Map<String, Corpus<List<String>>> corpora = new LinkedHashMap<>();
+			corpora.put("alpha", corpus(alpha.dir(), folder.newFolder().toPath()));
+			corpora.put("beta", corpus(beta.dir(), folder.newFolder().toPath()));
+			try (Corpus<List<String>> federated = Configurations.federated(corpora);
+					Corpus<List<String>> single = corpus(combined.dir(), folder.newFolder().toPath()))
+			{
+				federated.create().call();
+				single.create().call();
+				assertEquals(4, single.search("widget size", 0, 10).call().size());
+				for (String query : new String[] {"widget size", "size", "label width widget"}) {
+					for (int k = 1; k <= 5; k++) {
+						assertEquals(query + " " + k, ranks(single.search(query, 0, k).call()),
+								ranks(federated.search(query, 0, k).call()));
+					}
+					assertEquals(query, ranks(single.search(query, 1, 3).call()),
+							ranks(federated.search(query, 1, 3).call()));
+				}
+			}
+		}
+	}
+
+	/**
+	 * A query only one corpus matches is searched there alone.
+	 */
+	@Test
+	public void testSingleMatchingCorpus() throws Exception {
+		try (GitFixture alpha = new GitFixture(folder.newFolder().toPath());
+				GitFixture beta = new GitFixture(folder.newFolder().toPath()))
+		{
+			alpha.write("p/Widget.java", WIDGETS).commit("Add widget");
+			beta.write("p/Label.java", LABELS).commit("Add label");
+			Path alphaIndex = folder.newFolder().toPath();
+			Map<String, Corpus<List<String>>> corpora = new LinkedHashMap<>();
+			corpora.put("alpha", corpus(alpha.dir(), alphaIndex));
+			corpora.put("beta", corpus(beta.dir(), folder.newFolder().toPath()));
+			try (Corpus<List<String>> federated = Configurations.federated(corpora);
+					Corpus<List<String>> shard = corpus(alpha.dir(), alphaIndex))
+			{
+				federated.create().call();
+				List<String> expected = new ArrayList<>();
+				for (String rank : ranks(shard.search("border", 0, 5).call())) expected.add("alpha/" + rank);
+				assertEquals(1, expected.size());
+				assertEquals(expected, ranks(federated.search("border", 0, 5).call()));
+				assertEquals(Collections.emptyList(), federated.search("gadget", 0, 5).call());
+				assertEquals("FederatedCorpus [corpora=[alpha, beta], searched=1, skipped=3]", federated.toString());
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEmpty() {
+		new FederatedCorpus(Collections.emptyMap());
+	}
+}
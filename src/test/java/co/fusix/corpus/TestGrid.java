@@ -0,0 +1,112 @@
+package co.fusix.corpus;
+
+import static co.fusix.GitFixture.type;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import co.fusix.GitFixture;
+import co.fusix.IndexContents;
+import co.fusix.versioncontrol.Recentness;
+
+/**
+ * Every corpus of a grid, built together in one pass, must equal the same
+ * corpus built on its own.
+ */
+public class TestGrid {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static Corpus<List<String>> corpus(Path srcDir, Path indexDir, Consumer<Configurations.Builder> settings) {
+		Configurations.Builder builder = Configurations.builder().srcDir(srcDir).indexDir(indexDir);
+		settings.accept(builder);
+		return builder.build();
+	}
+
+	/**
+	 * Lines overwritten on the mainline and on a merged branch, so that each
+	 * recentness annotates different commits, and a maintenance commit.
+	 */
+	private void assertGridEqualsStandalone(Map<String, Consumer<Configurations.Builder>> targets) throws Exception {
+		try (GitFixture fixture = new GitFixture(folder.newFolder().toPath())) {
+			fixture.write("p/Widget.java", type("Widget", 1, 2)).commit("Add widget sizes");
+			fixture.branch("side");
+			fixture.write("p/Widget.java", type("Widget", 3, 2)).commit("Fix widget first size");
+			fixture.write("p/Widget.java", type("Widget", 3, 4)).commit("Fix widget second size");
+			fixture.checkout("master");
+			fixture.write("p/Gadget.java", type("Gadget", 1)).commit("Add gadget size");
+			fixture.merge("side", "Merge widget sizes");
+			fixture.branch("other");
+			fixture.write("p/Gadget.java", type("Gadget", 5)).commit("Polish gadget size");
+			fixture.write("p/Widget.java", type("Widget", 6, 4)).commit("Fix widget first size again");
+			fixture.write("p/Widget.java", type("Widget", 8, 4)).commit("Fix widget first size bug");
+			fixture.checkout("master");
+			fixture.write("p/Widget.java", type("Widget", 3, 4, 7)).commit("Add widget third size");
+			fixture.merge("other", "Merge gadget and widget fixes");
+			fixture.write("p/Widget.java", type("Widget", 8, 4, 9)).commit("Fix widget third size");
+			fixture.write("p/Widget.java", type("Widget", 8, 4, 10)).commit("Fix widget third size again");
+
+			List<Corpus<List<String>>> grid = new ArrayList<>();
+			List<Path> gridIndexes = new ArrayList<>();
+			try {
+				for (Consumer<Configurations.Builder> settings : targets.values()) {
+					Path index = folder.newFolder().toPath();
+					gridIndexes.add(index);
+					grid.add(corpus(fixture.dir(), index, settings));
+				}
+				Configurations.grid(grid).call();
+			} finally {
+				for (Corpus<List<String>> corpus : grid) corpus.close();
+			}
+
+			int i = 0;
+			for (Map.Entry<String, Consumer<Configurations.Builder>> target : targets.entrySet()) {
+				Path standaloneIndex = folder.newFolder().toPath();
+				try (Corpus<List<String>> standalone = corpus(fixture.dir(), standaloneIndex, target.getValue())) {
+					standalone.create().call();
+				}
+				assertEquals(target.getKey(), IndexContents.of(standaloneIndex), IndexContents.of(gridIndexes.get(i++)));
+			}
+		}
+	}
+
+	@Test
+	public void testCodeAndHistory() throws Exception {
+		Map<String, Consumer<Configurations.Builder>> targets = new LinkedHashMap<>();
+		targets.put("CODE METHOD", b -> b.source(Source.CODE));
+		targets.put("CODE FILE", b -> b.source(Source.CODE).granularity(Granularity.FILE));
+		for (Recentness recentness : Recentness.values()) {
+			targets.put("VCS METHOD " + recentness, b -> b.source(Source.VCS).recentness(recentness));
+			targets.put("VCS METHOD " + recentness + " filtered",
+					b -> b.source(Source.VCS).recentness(recentness).filtered());
+		}
+		targets.put("BOTH FILE RECENT_CR",
+				b -> b.source(Source.BOTH).granularity(Granularity.FILE).recentness(Recentness.RECENT_CR));
+		targets.put("VCS FILE RECENT_CR filtered",
+				b -> b.source(Source.VCS).granularity(Granularity.FILE).recentness(Recentness.RECENT_CR).filtered());
+		targets.put("VCS FILE commit documents",
+				b -> b.source(Source.VCS).granularity(Granularity.FILE).commitDocuments());
+		assertGridEqualsStandalone(targets);
+	}
+
+	@Test
+	public void testSharedBlame() throws Exception {
+		// only blamed targets, so every one reads the single blame of each file
+		Map<String, Consumer<Configurations.Builder>> targets = new LinkedHashMap<>();
+		targets.put("VCS METHOD RECENT_CR", b -> b.source(Source.VCS).recentness(Recentness.RECENT_CR));
+		targets.put("VCS METHOD RECENT_CR filtered",
+				b -> b.source(Source.VCS).recentness(Recentness.RECENT_CR).filtered());
+		targets.put("VCS METHOD RECENT filtered", b -> b.source(Source.VCS).recentness(Recentness.RECENT).filtered());
+		assertGridEqualsStandalone(targets);
+	}
+}
@@ -0,0 +1,95 @@
+package co.fusix.corpus;
+
+import static co.fusix.GitFixture.type;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import co.fusix.GitFixture;
+import co.fusix.component.Component;
+import co.fusix.index.FieldBoosts;
+
+/**
+ * A multi-field corpus searched with the boosts of one source must rank as
+ * a corpus built for that source alone.
+ */
+public class TestMultiField {
+
+	private static final String[] QUERIES = {"widget size", "size bug", "fix label size", "add knob size"};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static Corpus<List<String>> corpus(Path srcDir, Path indexDir, Consumer<Configurations.Builder> settings) {
+		Configurations.Builder builder = Configurations.builder().srcDir(srcDir).indexDir(indexDir);
+		settings.accept(builder);
+		return builder.build();
+	}
+
+	/**
+	 * @return the ranked paths with their scores, at a precision the order of
+	 * floating point additions cannot change; tied paths, which the indexes
+	 * may hold in different orders, are sorted
+	 */
+	private static List<String> ranks(List<Component> components) {
+		List<String> ranks = new ArrayList<>();
+		for (Component component : components) {
+			ranks.add(String.format("%.4f %s", component.getScore(), component.getPath()));
+		}
+		ranks.sort(Comparator.reverseOrder());
+		return ranks;
+	}
+
+	private void assertBoostsEqualSource(String name, Consumer<Configurations.Builder> settings) throws Exception {
+		try (GitFixture fixture = new GitFixture(folder.newFolder().toPath())) {
+			fixture.write("p/Widget.java", type("Widget", 1, 2, 3))
+					.write("p/Gadget.java", type("Gadget", 1, 2))
+					.write("p/Label.java", type("Label", 7))
+					.commit("Add widget, gadget and label sizes");
+			fixture.write("p/Widget.java", type("Widget", 1, 5, 3)).commit("Fix widget second size bug");
+			fixture.write("p/Gadget.java", type("Gadget", 4, 2))
+					.write("p/Knob.java", type("Knob", 6)).commit("Fix gadget and add knob");
+			fixture.write("p/Label.java", type("Label", 8)).commit("Fix label size bug");
+
+			try (Corpus<List<String>> multi = corpus(fixture.dir(), folder.newFolder().toPath(),
+						settings.andThen(b -> b.multiField()));
+					Corpus<List<String>> code = corpus(fixture.dir(), folder.newFolder().toPath(),
+						settings.andThen(b -> b.source(Source.CODE)));
+					Corpus<List<String>> history = corpus(fixture.dir(), folder.newFolder().toPath(),
+						settings.andThen(b -> b.source(Source.VCS))))
+			{
+				multi.create().call();
+				code.create().call();
+				history.create().call();
+				for (String query : QUERIES) {
+					List<String> codeRanks = ranks(code.search(query, 0, 10).call());
+					List<String> historyRanks = ranks(history.search(query, 0, 10).call());
+					assertFalse(name + " " + query, codeRanks.isEmpty() || historyRanks.isEmpty());
+					assertEquals(name + " CODE " + query, codeRanks,
+							ranks(multi.search(query, 0, 10, FieldBoosts.of(Source.CODE)).call()));
+					assertEquals(name + " VCS " + query, historyRanks,
+							ranks(multi.search(query, 0, 10, FieldBoosts.of(Source.VCS)).call()));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testMethod() throws Exception {
+		assertBoostsEqualSource("METHOD", b -> {});
+	}
+
+	@Test
+	public void testFile() throws Exception {
+		assertBoostsEqualSource("FILE", b -> b.granularity(Granularity.FILE));
+	}
+}
@@ -0,0 +1,111 @@
+package co.fusix.corpus;
+
+import static co.fusix.GitFixture.type;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import co.fusix.GitFixture;
+import co.fusix.IndexContents;
+
+/**
+ * Builds served from the parse cache must index what a build without it
+ * indexes.
+ */
+public class TestParseCache {
+
+	private static final Pattern HITS = Pattern.compile("Parse cache \\[hits=(\\d+)");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static Corpus<List<String>> corpus(Path srcDir, Path indexDir, Path cacheDir, Granularity granularity) {
+		Configurations.Builder builder = Configurations.builder()
+				.srcDir(srcDir)
+				.indexDir(indexDir)
+				.granularity(granularity);
+		if (cacheDir != null) builder.cacheDir(cacheDir).parseCache(1 << 20);
+		return builder.build();
+	}
+
+	private static int hits(List<String> log) {
+		for (String line : log) {
+			Matcher matcher = HITS.matcher(line);
+			if (matcher.find()) return Integer.parseInt(matcher.group(1));
+		}
+		return 0;
+	}
+
+	private static GitFixture fixture(Path dir) throws Exception {
+		GitFixture fixture = new GitFixture(dir);
+		fixture.write("p/Widget.java", type("Widget", 1, 2, 3))
+				.write("p/Gadget.java", type("Gadget", 4))
+				.write("p/Label.java", "package p;\n\npublic class Label {\n\n\tString label() {\n\t\treturn \"na\u00efve \u00bd\";\n\t}\n"
+						+ "\r\n\tString size() {\r\n\t\treturn \"\u00fcber\";\r\n\t}\n}\n")
+				.commit("Add widget, gadget and label");
+		return fixture;
+	}
+
+	@Test
+	public void testHitsEqualColdBuild() throws Exception {
+		for (Granularity granularity : new Granularity[] {Granularity.METHOD, Granularity.FILE}) {
+			try (GitFixture fixture = fixture(folder.newFolder().toPath())) {
+				Path cacheDir = folder.newFolder().toPath();
+				Path cachedIndex = folder.newFolder().toPath();
+				Path coldIndex = folder.newFolder().toPath();
+				try (Corpus<List<String>> warm = corpus(fixture.dir(), folder.newFolder().toPath(), cacheDir, granularity);
+						Corpus<List<String>> cached = corpus(fixture.dir(), cachedIndex, cacheDir, granularity);
+						Corpus<List<String>> cold = corpus(fixture.dir(), coldIndex, null, granularity))
+				{
+					assertEquals(0, hits(warm.create().call()));
+					List<String> log = cached.create().call();
+					assertEquals(granularity + " " + log, 3, hits(log));
+					cold.create().call();
+					assertEquals(granularity.toString(), IndexContents.of(coldIndex), IndexContents.of(cachedIndex));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Unreadable cache files are parsed again.
+	 */
+	@Test
+	public void testCorruptFiles() throws Exception {
+		try (GitFixture fixture = fixture(folder.newFolder().toPath())) {
+			Path cacheDir = folder.newFolder().toPath();
+			Path cachedIndex = folder.newFolder().toPath();
+			Path coldIndex = folder.newFolder().toPath();
+			try (Corpus<List<String>> warm = corpus(fixture.dir(), folder.newFolder().toPath(), cacheDir, Granularity.METHOD);
+					Corpus<List<String>> cached = corpus(fixture.dir(), cachedIndex, cacheDir, Granularity.METHOD);
+					Corpus<List<String>> cold = corpus(fixture.dir(), coldIndex, null, Granularity.METHOD))
+			{
+				warm.create().call();
+				List<Path> files;
+				try (Stream<Path> stream = Files.walk(cacheDir)) {
+					files = stream.filter(f -> f.toString().endsWith(".prs")).collect(Collectors.toList());
+				}
+				assertEquals(3, files.size());
+				for (Path file : files) {
+					byte[] bytes = Files.readAllBytes(file);
+					// keep the header, garble the entries
+					for (int i = 8; i < bytes.length; i++) bytes[i] ^= 0x5a;
+					Files.write(file, bytes);
+				}
+				assertEquals(0, hits(cached.create().call()));
+				cold.create().call();
+				assertEquals(IndexContents.of(coldIndex), IndexContents.of(cachedIndex));
+			}
+		}
+	}
+}
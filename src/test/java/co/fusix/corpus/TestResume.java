@@ -0,0 +1,108 @@
+package co.fusix.corpus;
+
+import static co.fusix.GitFixture.type;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import co.fusix.GitFixture;
+import co.fusix.IndexContents;
+import co.fusix.metrics.BuildListener;
+
+/**
+ * A build that fails and is resumed from its checkpoint must index what an
+ * uninterrupted build indexes.
+ */
+public class TestResume {
+
+	private static final int FILES = 8;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Fails the build once, when the given number of files are written.
+	 */
+	private static final class FailingListener implements BuildListener {
+		private final AtomicInteger writes = new AtomicInteger();
+		private final int failAt;
+
+		private FailingListener(int failAt) {
+			this.failAt = failAt;
+		}
+
+		@Override
+		public void file(Stage stage, String path, long nanos, long count) {
+			if (stage == Stage.WRITE && writes.incrementAndGet() == failAt) {
+				throw new IllegalStateException("Failing at " + path);
+			}
+		}
+	}
+
+	private static Corpus<List<String>> corpus(Path srcDir, Path indexDir, BuildListener listener,
+			Consumer<Configurations.Builder> settings) {
+		Configurations.Builder builder = Configurations.builder()
+				.srcDir(srcDir)
+				.indexDir(indexDir)
+				.checkpointInterval(0)
+				.listener(listener);
+		settings.accept(builder);
+		return builder.build();
+	}
+
+	private void assertResumeEqualsBuild(String name, Consumer<Configurations.Builder> settings) throws Exception {
+		try (GitFixture fixture = new GitFixture(folder.newFolder().toPath())) {
+			for (int i = 0; i < FILES; i++) {
+				fixture.write("p/Type" + i + ".java", type("Type" + i, i, i + 1)).commit("Add type " + i + " sizes");
+				if (i % 2 == 0) fixture.write("p/Type" + i + ".java", type("Type" + i, i, i + 2)).commit("Fix type " + i);
+			}
+			for (int failAt = 1; failAt < FILES; failAt += 3) {
+				Path resumedIndex = folder.newFolder().toPath();
+				Path builtIndex = folder.newFolder().toPath();
+				try (Corpus<List<String>> resumed = corpus(fixture.dir(), resumedIndex, new FailingListener(failAt), settings);
+						Corpus<List<String>> built = corpus(fixture.dir(), builtIndex, BuildListener.NONE, settings))
+				{
+					try {
+						resumed.create().call();
+						fail(name + " did not fail at " + failAt);
+					} catch (IllegalStateException e) {
+						// expected
+					}
+					List<String> log = resumed.create().call();
+					// files parsed in parallel may be written out of order, leaving nothing to resume
+					if (failAt > 1 && !name.endsWith("parallel")) {
+						assertTrue(name + " " + log, log.stream().anyMatch(l -> l.startsWith("Resuming after: ")));
+					}
+					built.create().call();
+					assertEquals(name + " failing at " + failAt, IndexContents.of(builtIndex), IndexContents.of(resumedIndex));
+					assertFalse(name + " left shards", Files.exists(resumedIndex.resolve("shards")));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testCode() throws Exception {
+		assertResumeEqualsBuild("CODE", b -> b.source(Source.CODE));
+		assertResumeEqualsBuild("CODE parallel", b -> b.source(Source.CODE).parseThreads(3));
+		assertResumeEqualsBuild("CODE sharded parallel", b -> b.source(Source.CODE).parseThreads(3).writeShards(2));
+	}
+
+	@Test
+	public void testHistory() throws Exception {
+		assertResumeEqualsBuild("VCS", b -> b.source(Source.VCS).granularity(Granularity.FILE));
+		assertResumeEqualsBuild("VCS commit documents",
+				b -> b.source(Source.VCS).granularity(Granularity.FILE).commitDocuments());
+	}
+}
@@ -0,0 +1,97 @@
+package co.fusix.corpus;
+
+import static co.fusix.GitFixture.type;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import co.fusix.GitFixture;
+import co.fusix.IndexContents;
+import co.fusix.versioncontrol.Recentness;
+
+/**
+ * An index updated revision by revision must equal one created at the last
+ * revision.
+ */
+public class TestUpdate {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static Corpus<List<String>> corpus(Path srcDir, Path indexDir, Consumer<Configurations.Builder> settings) {
+		Configurations.Builder builder = Configurations.builder().srcDir(srcDir).indexDir(indexDir);
+		settings.accept(builder);
+		return builder.build();
+	}
+
+	/**
+	 * Edits, additions, a deletion, a rename and a merge, each step followed
+	 * by an update compared with a fresh create.
+	 */
+	private void assertUpdatesEqualCreate(String name, Consumer<Configurations.Builder> settings) throws Exception {
+		try (GitFixture fixture = new GitFixture(folder.newFolder().toPath())) {
+			Path updatedIndex = folder.newFolder().toPath();
+			fixture.write("p/Widget.java", type("Widget", 1, 2, 3))
+					.write("p/Gadget.java", type("Gadget", 1, 2))
+					.write("p/Label.java", type("Label", 7))
+					.commit("Add widget, gadget and label sizes");
+			try (Corpus<List<String>> updated = corpus(fixture.dir(), updatedIndex, settings)) {
+				updated.create().call();
+				for (int step = 0; step < 4; step++) {
+					switch (step) {
+					case 0:
+						fixture.write("p/Widget.java", type("Widget", 1, 5, 3)).commit("Fix widget second size bug");
+						break;
+					case 1:
+						fixture.write("p/Knob.java", type("Knob", 4, 4)).commit("Add knob sizes");
+						fixture.write("p/Widget.java", type("Widget", 1, 5, 3, 9))
+								.write("p/Knob.java", type("Knob", 4, 6)).commit("Fix knob size and add widget size");
+						break;
+					case 2:
+						fixture.remove("p/Gadget.java").remove("p/Label.java")
+								.write("q/Label.java", type("Label", 7)).commit("Remove gadget and move label");
+						break;
+					default:
+						fixture.branch("side");
+						fixture.write("q/Label.java", type("Label", 8)).commit("Fix label size bug");
+						fixture.write("p/Knob.java", type("Knob", 5, 6)).commit("Fix knob first size");
+						fixture.checkout("master");
+						fixture.write("p/Widget.java", type("Widget", 2, 5, 3, 9)).commit("Fix widget first size");
+						fixture.merge("side", "Merge label and knob fixes");
+					}
+					updated.update().call();
+
+					Path createdIndex = folder.newFolder().toPath();
+					try (Corpus<List<String>> created = corpus(fixture.dir(), createdIndex, settings)) {
+						created.create().call();
+					}
+					assertEquals(name + " step " + step, IndexContents.of(createdIndex), IndexContents.of(updatedIndex));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testCode() throws Exception {
+		assertUpdatesEqualCreate("CODE METHOD", b -> b.source(Source.CODE));
+		assertUpdatesEqualCreate("CODE FILE", b -> b.source(Source.CODE).granularity(Granularity.FILE));
+	}
+
+	@Test
+	public void testHistory() throws Exception {
+		for (Recentness recentness : Recentness.values()) {
+			assertUpdatesEqualCreate("VCS METHOD " + recentness, b -> b.source(Source.VCS).recentness(recentness));
+			assertUpdatesEqualCreate("BOTH FILE " + recentness,
+					b -> b.source(Source.BOTH).granularity(Granularity.FILE).recentness(recentness));
+		}
+		assertUpdatesEqualCreate("VCS METHOD filtered", b -> b.source(Source.VCS).filtered());
+		assertUpdatesEqualCreate("VCS FILE commit documents",
+				b -> b.source(Source.VCS).granularity(Granularity.FILE).commitDocuments());
+	}
+}
@@ -0,0 +1,124 @@
+package co.fusix.index;
+
+import static co.fusix.GitFixture.type;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import co.fusix.GitFixture;
+import co.fusix.component.Component;
+import co.fusix.corpus.Configurations;
+import co.fusix.corpus.Corpus;
+import co.fusix.corpus.Granularity;
+import co.fusix.corpus.Source;
+
+/**
+ * Cached hits must never outlive the index they were searched in: a search
+ * after an update or a delete, or against a newer reader, ranks as an
+ * uncached search does.
+ */
+public class TestQueryCache {
+
+	private static final String[] QUERIES = {"widget size", "gadget", "knob size"};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static Corpus<List<String>> corpus(Path srcDir, Path indexDir, int queryCacheSize) {
+		return Configurations.builder().srcDir(srcDir).indexDir(indexDir).granularity(Granularity.FILE)
+				.queryCache(queryCacheSize).build();
+	}
+
+	/**
+	 * @return the ranked paths of every query with their scores
+	 */
+	private static List<String> ranks(Corpus<List<String>> corpus) throws Exception {
+		List<String> ranks = new ArrayList<>();
+		for (String query : QUERIES) {
+			for (Component component : corpus.search(query, 0, 10).call()) {
+				ranks.add(String.format("%s %s %.4f", query, component.getPath(), component.getScore()));
+			}
+		}
+		return ranks;
+	}
+
+	@Test
+	public void testVersion() {
+		QueryCache cache = new QueryCache(2);
+		Query query = new TermQuery(new Term("CONTENT", "widget"));
+		QueryCache.Hits hits = new QueryCache.Hits(new String[] {"p/Widget.java"}, new float[] {1}, 10);
+
+		assertNull(cache.get(query, 1, 10));
+		cache.put(query, 1, hits);
+		assertSame(hits, cache.get(query, 1, 10));
+		assertNull("newer reader", cache.get(query, 2, 10));
+		cache.put(query, 1, hits);
+		assertNull("put by a search of an older reader", cache.get(query, 2, 10));
+		cache.put(query, 2, hits);
+		assertSame(hits, cache.get(query, 2, 10));
+		cache.clear();
+		assertNull("cleared", cache.get(query, 2, 10));
+	}
+
+	@Test
+	public void testUpdateAndDelete() throws Exception {
+		try (GitFixture fixture = new GitFixture(folder.newFolder().toPath())) {
+			fixture.write("p/Widget.java", type("Widget", 1, 2))
+					.write("p/Gadget.java", type("Gadget", 1)).commit("Add widget and gadget sizes");
+			try (Corpus<List<String>> cached = corpus(fixture.dir(), folder.newFolder().toPath(), 8)) {
+				cached.create().call();
+				List<String> created = ranks(cached);
+				assertEquals(created, ranks(cached));
+
+				fixture.remove("p/Gadget.java").write("p/Knob.java", type("Knob", 3, 4))
+						.write("p/Widget.java", type("Widget", 1, 2, 5)).commit("Replace gadget with knob");
+				cached.update().call();
+				List<String> expected;
+				try (Corpus<List<String>> uncached = corpus(fixture.dir(), folder.newFolder().toPath(), 0)) {
+					uncached.create().call();
+					expected = ranks(uncached);
+				}
+				assertNotEquals(created, expected);
+				assertEquals("updated", expected, ranks(cached));
+
+				cached.delete().call();
+				assertEquals("deleted", new ArrayList<>(), ranks(cached));
+			}
+		}
+	}
+
+	@Test
+	public void testReaderVersion() throws Exception {
+		try (GitFixture fixture = new GitFixture(folder.newFolder().toPath())) {
+			fixture.write("p/Widget.java", type("Widget", 1, 2)).commit("Add widget sizes");
+			Path indexDir = folder.newFolder().toPath();
+			try (Corpus<List<String>> writer = corpus(fixture.dir(), indexDir, 0)) {
+				writer.create().call();
+				try (Index index = LuceneIndexWrapper.newReadableInstance(indexDir, Source.CODE, 8)) {
+					assertEquals(1, index.search("widget size", 0, 10).size());
+
+					fixture.write("p/Knob.java", type("Knob", 3)).commit("Add knob size");
+					writer.update().call();
+					index.refresh();
+					List<String> paths = new ArrayList<>();
+					for (Component component : index.search("widget size", 0, 10)) paths.add(component.getPath());
+					assertTrue(paths.toString(), paths.contains("p/Knob.java"));
+					assertEquals(2, paths.size());
+				}
+			}
+		}
+	}
+}
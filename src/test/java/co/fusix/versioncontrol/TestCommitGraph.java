@@ -0,0 +1,135 @@
+package co.fusix.versioncontrol;
+
+import static co.fusix.GitFixture.type;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import co.fusix.GitFixture;
+import co.fusix.component.Component;
+import co.fusix.component.GenericComponent;
+import co.fusix.corpus.Granularity;
+import co.fusix.metrics.BuildListener;
+
+public class TestCommitGraph {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Two merged branches: the walk from the head reaches the first through
+	 * the mainline, so only the second is a cluster.
+	 */
+	private static GitFixture branched(GitFixture fixture) throws Exception {
+		fixture.write("p/Widget.java", type("Widget", 1, 2)).commit("Add widget sizes");
+		fixture.branch("side");
+		fixture.write("p/Widget.java", type("Widget", 3, 2)).commit("Fix widget first size");
+		fixture.write("p/Widget.java", type("Widget", 3, 4)).commit("Fix widget second size");
+		fixture.checkout("master");
+		fixture.write("p/Gadget.java", type("Gadget", 1)).commit("Add gadget size");
+		fixture.merge("side", "Merge widget sizes");
+		fixture.branch("other");
+		fixture.write("p/Gadget.java", type("Gadget", 5)).commit("Fix gadget size");
+		fixture.write("p/Widget.java", type("Widget", 6, 4)).commit("Fix widget first size again");
+		fixture.checkout("master");
+		fixture.write("p/Widget.java", type("Widget", 3, 4, 7)).commit("Add widget third size");
+		fixture.merge("other", "Merge gadget size");
+		return fixture;
+	}
+
+	/**
+	 * Branch clusters are computed for RECENT_CR annotations only.
+	 */
+	@Test
+	public void testClustersAreLazy() throws Exception {
+		try (GitFixture fixture = branched(new GitFixture(folder.newFolder().toPath()))) {
+			for (Recentness recentness : Recentness.values()) {
+				List<String> messages = Collections.synchronizedList(new ArrayList<>());
+				BuildListener listener = new BuildListener() {
+					@Override
+					public void message(String message) {
+						messages.add(message);
+					}
+				};
+				try (GitVersionControl vc = GitVersionControl.builder(fixture.dir(), "HEAD")
+						.listener(listener).build())
+				{
+					Component component = new GenericComponent("p/Widget.java");
+					vc.annotateAll(Collections.singleton(component), recentness, Granularity.FILE);
+					assertEquals(recentness.toString(), recentness == Recentness.RECENT_CR
+							? Collections.singletonList("Clusters # 2") : Collections.emptyList(), messages);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Every commit with its author time and parents, by commit id.
+	 */
+	private static List<String> commits(CommitGraph graph) {
+		List<String> commits = new ArrayList<>();
+		for (int i = 0; i < graph.size(); i++) {
+			StringBuilder commit = new StringBuilder(graph.getId(i).name()).append(' ').append(graph.getAuthorTime(i));
+			for (int n = 0; n < graph.getParentCount(i); n++) {
+				commit.append(' ').append(graph.getId(graph.getParent(i, n)).name());
+			}
+			commits.add(commit.toString());
+		}
+		Collections.sort(commits);
+		return commits;
+	}
+
+	private static long generations(Path dir) throws IOException {
+		try (Stream<Path> files = Files.list(dir)) {
+			return files.count();
+		}
+	}
+
+	/**
+	 * A graph mapped from its file, and one extended with new commits, equal
+	 * a graph built from scratch.
+	 */
+	@Test
+	public void testPersisted() throws Exception {
+		try (GitFixture fixture = branched(new GitFixture(folder.newFolder().toPath()))) {
+			Repository repository = fixture.git().getRepository();
+			Path dir = folder.newFolder().toPath();
+			Path prefix = dir.resolve("graph");
+			ObjectId head = repository.resolve("HEAD");
+
+			CommitGraph written = CommitGraph.open(repository, head, prefix);
+			CommitGraph mapped = CommitGraph.open(repository, head, prefix);
+			List<String> expected = commits(CommitGraph.open(repository, head, null));
+			assertEquals(expected, commits(written));
+			assertEquals(expected, commits(mapped));
+			assertEquals(1, generations(dir));
+
+			List<String> before = expected;
+			fixture.write("p/Gadget.java", type("Gadget", 9)).commit("Fix gadget size again");
+			head = repository.resolve("HEAD");
+			CommitGraph extended = CommitGraph.open(repository, head, prefix);
+			expected = commits(CommitGraph.open(repository, head, null));
+			assertNotEquals(before, expected);
+			assertEquals(expected, commits(extended));
+			assertEquals(expected, commits(CommitGraph.open(repository, head, prefix)));
+			assertTrue(extended.indexOf(head) >= 0);
+			// the mapped generation is not overwritten, a new one replaces it
+			assertEquals(before, commits(mapped));
+			assertEquals(1, generations(dir));
+		}
+	}
+}
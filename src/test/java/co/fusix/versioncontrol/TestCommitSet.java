@@ -0,0 +1,78 @@
+package co.fusix.versioncontrol;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Union and intersection of commit sets must agree with {@link BitSet}.
+ */
+public class TestCommitSet {
+
+	private static CommitSet of(BitSet bits) {
+		int[] ids = bits.stream().toArray();
+		return CommitSet.of(ids, ids.length);
+	}
+
+	private static void assertSameIds(BitSet expected, CommitSet actual) {
+		assertArrayEquals(expected.stream().toArray(), actual.stream().toArray());
+		assertEquals(expected.cardinality(), actual.size());
+	}
+
+	/**
+	 * Sparse, dense and clustered sets, sharing some words and not others.
+	 */
+	private static BitSet random(Random random) {
+		BitSet bits = new BitSet();
+		int range = 1 << random.nextInt(14);
+		int count = random.nextInt(Math.min(range, 300) + 1);
+		int offset = random.nextBoolean() ? 0 : random.nextInt(1 << 16);
+		for (int i = 0; i < count; i++) bits.set(offset + random.nextInt(range));
+		return bits;
+	}
+
+	@Test
+	public void testOf() {
+		int[] ids = {130, -1, 5, 64, 5, 63, -7, 0};
+		assertArrayEquals(new int[] {0, 5, 63, 64, 130}, CommitSet.of(ids, ids.length).stream().toArray());
+		assertArrayEquals(new int[] {5, 64}, CommitSet.of(new int[] {64, 5, 0}, 2).stream().toArray());
+		assertSame(CommitSet.EMPTY, CommitSet.of(new int[] {-1, -2}, 2));
+	}
+
+	@Test
+	public void testOrAnd() {
+		Random random = new Random(25);
+		for (int i = 0; i < 2000; i++) {
+			BitSet a = random(random);
+			BitSet b = random(random);
+			CommitSet setA = of(a);
+			CommitSet setB = of(b);
+
+			BitSet union = (BitSet) a.clone();
+			union.or(b);
+			assertSameIds(union, setA.or(setB));
+			assertSameIds(union, setB.or(setA));
+
+			BitSet intersection = (BitSet) a.clone();
+			intersection.and(b);
+			assertSameIds(intersection, setA.and(setB));
+			assertSameIds(intersection, setB.and(setA));
+			assertSameIds(a, setA.and(setA));
+		}
+	}
+
+	@Test
+	public void testEmpty() {
+		CommitSet set = CommitSet.of(new int[] {1, 70}, 2);
+		assertSame(set, set.or(CommitSet.EMPTY));
+		assertSame(set, CommitSet.EMPTY.or(set));
+		assertSame(CommitSet.EMPTY, set.and(CommitSet.EMPTY));
+		assertSame(CommitSet.EMPTY, set.and(CommitSet.of(new int[] {2, 71}, 2)));
+		assertEquals(0, CommitSet.EMPTY.size());
+	}
+}
@@ -0,0 +1,69 @@
+package co.fusix.versioncontrol;
+
+import static co.fusix.GitFixture.type;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import co.fusix.GitFixture;
+
+/**
+ * A store mapped from its file, and one extended with new commits, must
+ * equal a store analyzed from scratch.
+ */
+public class TestCommitStore {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Every commit reachable from HEAD with its parent count and functional flag.
+	 */
+	private static List<String> commits(Git git, CommitStore store) throws Exception {
+		List<String> commits = new ArrayList<>();
+		for (RevCommit commit : git.log().call()) {
+			int index = store.indexOf(commit);
+			commits.add(commit.name() + ' ' + store.getParentCount(index) + ' ' + store.isFunctional(index));
+		}
+		Collections.sort(commits);
+		return commits;
+	}
+
+	@Test
+	public void testPersisted() throws Exception {
+		try (GitFixture fixture = new GitFixture(folder.newFolder().toPath())) {
+			fixture.write("p/Widget.java", type("Widget", 1, 2)).commit("Add widget sizes");
+			fixture.branch("side");
+			fixture.write("p/Widget.java", type("Widget", 3, 2)).commit("Fix widget first size");
+			fixture.checkout("master");
+			fixture.write("p/Gadget.java", type("Gadget", 1)).commit("Add gadget size");
+			fixture.merge("side", "Merge widget sizes");
+			Repository repository = fixture.git().getRepository();
+			Path prefix = folder.newFolder().toPath().resolve("commits");
+			ObjectId head = repository.resolve("HEAD");
+
+			List<String> expected = commits(fixture.git(), CommitStore.open(repository, head, null));
+			assertEquals(expected, commits(fixture.git(), CommitStore.open(repository, head, prefix)));
+			CommitStore mapped = CommitStore.open(repository, head, prefix);
+			assertEquals(expected, commits(fixture.git(), mapped));
+
+			fixture.write("p/Gadget.java", type("Gadget", 2)).commit("Fix gadget size bug");
+			head = repository.resolve("HEAD");
+			expected = commits(fixture.git(), CommitStore.open(repository, head, null));
+			assertEquals(expected, commits(fixture.git(), CommitStore.open(repository, head, prefix)));
+			assertEquals(expected, commits(fixture.git(), CommitStore.open(repository, head, prefix)));
+			assertEquals(expected.size() - 1, mapped.size());
+		}
+	}
+}
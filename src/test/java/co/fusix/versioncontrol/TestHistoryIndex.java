@@ -0,0 +1,152 @@
+package co.fusix.versioncontrol;
+
+import static co.fusix.GitFixture.type;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.eclipse.jgit.diff.DiffConfig;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.FollowFilter;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import co.fusix.GitFixture;
+
+/**
+ * The single-pass history index must find the commits the per-file walks it
+ * replaced found: a {@link FollowFilter} walk per file and {@code git log -L}
+ * per method.
+ */
+public class TestHistoryIndex {
+
+	private static final String[] FILES = {"p/Widget.java", "q/Gadget.java", "p/Label.java"};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Edits, an addition, renames with and without edits, and merges of
+	 * branches that changed the same file and different files.
+	 */
+	private static GitFixture history(GitFixture fixture) throws Exception {
+		fixture.write("p/Widget.java", type("Widget", 1, 2, 3))
+				.write("p/Gadget.java", type("Gadget", 1, 2))
+				.commit("Add widget and gadget sizes");
+		fixture.write("p/Widget.java", type("Widget", 1, 4, 3)).commit("Fix widget second size");
+		fixture.remove("p/Gadget.java").write("q/Gadget.java", type("Gadget", 1, 2)).commit("Move gadget");
+		fixture.branch("side");
+		fixture.write("p/Widget.java", type("Widget", 1, 4, 5)).commit("Fix widget third size");
+		fixture.write("q/Gadget.java", type("Gadget", 6, 2)).commit("Fix gadget first size");
+		fixture.checkout("master");
+		fixture.write("p/Widget.java", type("Widget", 7, 4, 3)).commit("Fix widget first size");
+		fixture.write("p/Label.java", type("Label", 1, 1)).commit("Add label sizes");
+		fixture.merge("side", "Merge widget and gadget fixes");
+		fixture.remove("p/Label.java").write("p/Label.java", type("Label", 1, 1)).commit("Touch label");
+		fixture.remove("q/Gadget.java").write("q/Gadget.java", type("Gadget", 6, 8)).commit("Fix gadget second size");
+		fixture.branch("other");
+		fixture.write("p/Label.java", type("Label", 2, 1)).commit("Fix label first size");
+		fixture.checkout("master");
+		fixture.write("p/Widget.java", type("Widget", 7, 9, 5)).commit("Fix widget second size again");
+		fixture.merge("other", "Merge label fix");
+		return fixture;
+	}
+
+	private static Set<String> names(CommitSet commits, List<ObjectId> ids) {
+		Set<String> names = new TreeSet<>();
+		commits.stream().forEach(id -> names.add(ids.get(id).name()));
+		return names;
+	}
+
+	private static Set<String> followed(Repository repository, ObjectId head, String path) throws IOException {
+		Set<String> names = new TreeSet<>();
+		try (RevWalk revWalk = new RevWalk(repository)) {
+			revWalk.setTreeFilter(FollowFilter.create(path, repository.getConfig().get(DiffConfig.KEY)));
+			revWalk.markStart(revWalk.parseCommit(head));
+			for (RevCommit commit : revWalk) names.add(commit.name());
+		}
+		return names;
+	}
+
+	private static Set<String> logL(GitFixture fixture, String path, int start, int end) throws Exception {
+		Process process = new ProcessBuilder("git", "log", "--format=%H", "-L" + start + "," + end + ":" + path)
+				.directory(fixture.dir().toFile())
+				.redirectErrorStream(true)
+				.start();
+		Set<String> names = new TreeSet<>();
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.matches("[0-9a-f]{40}")) names.add(line);
+			}
+		}
+		assertEquals(0, process.waitFor());
+		return names;
+	}
+
+	private static boolean hasGit() {
+		try {
+			return new ProcessBuilder("git", "--version").start().waitFor() == 0;
+		} catch (IOException | InterruptedException e) {
+			return false;
+		}
+	}
+
+	private static HistoryIndex build(Repository repository, ObjectId head, boolean trackLines, List<ObjectId> ids)
+			throws IOException
+	{
+		return HistoryIndex.build(repository, head, repository.getConfig().get(DiffConfig.KEY), trackLines, null,
+				commit -> {
+					ids.add(commit.copy());
+					return ids.size() - 1;
+				});
+	}
+
+	@Test
+	public void testFilesEqualFollowedWalks() throws Exception {
+		try (GitFixture fixture = history(new GitFixture(folder.newFolder().toPath()))) {
+			Repository repository = fixture.git().getRepository();
+			ObjectId head = repository.resolve("HEAD");
+			for (boolean trackLines : new boolean[] {false, true}) {
+				List<ObjectId> ids = new ArrayList<>();
+				HistoryIndex index = build(repository, head, trackLines, ids);
+				for (String path : FILES) {
+					assertEquals(path, followed(repository, head, path), names(index.commits(path), ids));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testMethodsEqualLogL() throws Exception {
+		assumeTrue(hasGit());
+		try (GitFixture fixture = history(new GitFixture(folder.newFolder().toPath()))) {
+			Repository repository = fixture.git().getRepository();
+			ObjectId head = repository.resolve("HEAD");
+			List<ObjectId> ids = new ArrayList<>();
+			HistoryIndex index = build(repository, head, true, ids);
+			for (String path : FILES) {
+				// the lines of every method of a type(...) source
+				int methods = path.endsWith("Widget.java") ? 3 : 2;
+				for (int i = 0; i < methods; i++) {
+					int start = 5 + 4 * i;
+					assertEquals(path + ":" + start, logL(fixture, path, start, start + 2),
+							names(index.commits(path, start, start + 2), ids));
+				}
+			}
+		}
+	}
+}